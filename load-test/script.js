@@ -18,7 +18,7 @@ export let options = {
     },
 };
 
-const BASE_URL = 'https://service.tinyurl.com'
+const BASE_URL = __ENV.BASE_URL || 'https://service.tinyurl.com'
 
 export default function() {
     let url = data[Math.floor(Math.random() * data.length)];
@@ -0,0 +1,61 @@
+package com.bufferstack.tinyurl.generator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeEncoderBenchmark {
+
+    private final CodeEncoder base62 = CodeEncoder.CodeEncoderBuilder.builder().build();
+    private final CodeEncoder shuffled = CodeEncoder.CodeEncoderBuilder.builder()
+            .withShuffleBits(35)
+            .withShuffleSalt(0x5DEECE66DL)
+            .build();
+    private final char[] buffer = new char[base62.maxLength()];
+    private final String code = base62.encode(1_234_567_890L);
+
+    private long id = 1_000_000_000L;
+
+    @Benchmark
+    public String stringValueOf() {
+        return String.valueOf(id++);
+    }
+
+    @Benchmark
+    public String encodeBase62() {
+        return base62.encode(id++);
+    }
+
+    @Benchmark
+    public String encodeShuffledBase62() {
+        return shuffled.encode(id++);
+    }
+
+    @Benchmark
+    public int encodeBase62IntoBuffer() {
+        return base62.encode(id++, buffer);
+    }
+
+    @Benchmark
+    public long parseLong() {
+        return Long.parseLong("1234567890");
+    }
+
+    @Benchmark
+    public long decodeBase62() {
+        return base62.decode(code);
+    }
+}
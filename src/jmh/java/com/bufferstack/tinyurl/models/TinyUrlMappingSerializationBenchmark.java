@@ -0,0 +1,46 @@
+package com.bufferstack.tinyurl.models;
+
+import com.bufferstack.tinyurl.utils.ObjectMapperFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TinyUrlMappingSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+    private final ObjectWriter objectWriter = objectMapper.writerFor(TinyUrlMapping.class);
+    private final TinyUrlMapping mapping = new TinyUrlMapping("1LY7VK",
+            "https://www.google.com/search?q=tinyurl&sourceid=chrome&ie=UTF-8", Instant.parse("2021-06-01T10:15:30Z"));
+
+    @Benchmark
+    public String writeValueAsString() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(mapping);
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(mapping);
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytesWithTypedWriter() throws JsonProcessingException {
+        return objectWriter.writeValueAsBytes(mapping);
+    }
+}
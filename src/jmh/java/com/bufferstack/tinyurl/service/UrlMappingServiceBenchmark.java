@@ -0,0 +1,164 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinyurl.cache.OffHeapUrlMappingStore;
+import com.bufferstack.tinyurl.cache.PeerUrlMappingCache;
+import com.bufferstack.tinyurl.cache.UrlMappingCache;
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.generator.IdentifierStream;
+import com.bufferstack.tinyurl.lsm.LsmUrlMappingStore;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.conf.RenderNameCase;
+import org.jooq.conf.RenderQuotedNames;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Measures {@link UrlMappingService#addLink} and {@link UrlMappingService#getLink} with mappings stored in an
+ * in-memory H2 database or in the embedded LSM store, as selected by {@code store}. With {@code cacheSize} set to
+ * {@code 0}, every lookup goes to the off-heap store when {@code offHeap} is set, and to the store otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlMappingServiceBenchmark {
+
+    private static final int PRELOADED_LINKS = 10_000;
+    private static final String FULL_URL = "https://www.google.com/search?q=tinyurl&sourceid=chrome&ie=UTF-8";
+
+    @Param({"100000", "0"})
+    private long cacheSize;
+
+    @Param({"false", "true"})
+    private boolean offHeap;
+
+    @Param({"POSTGRES", "LSM"})
+    private String store;
+
+    private Path offHeapDirectory;
+    private Path lsmDirectory;
+    private UrlMappingStore urlMappingStore;
+    private JdbcConnectionPool dataSource;
+    private UrlMappingWriter writer;
+    private UrlMappingService service;
+    private String[] codes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:tinyurl-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                "sa", "");
+        DSLContext dslContext = DSL.using(dataSource, SQLDialect.H2, new Settings()
+                .withRenderNameCase(RenderNameCase.UPPER)
+                .withRenderQuotedNames(RenderQuotedNames.NEVER));
+        dslContext.createTable(Tables.URL_MAPPING)
+                .columns(Tables.URL_MAPPING.fields())
+                .constraints(DSL.primaryKey(Tables.URL_MAPPING.BUCKET, Tables.URL_MAPPING.CODE))
+                .execute();
+
+        // H2 has no partitions to address directly, so look codes up in url_mapping by bucket instead.
+        UrlMappingPartitions partitions = new UrlMappingPartitions(16, false, "");
+        MeterRegistry registry = new SimpleMeterRegistry();
+        writer = new UrlMappingWriter(dslContext, partitions, false, 100, Duration.ofMillis(5), 10_000, 1, registry);
+        UrlMappingCache cache = new UrlMappingCache(cacheSize, 0, Duration.ofSeconds(5), registry);
+        offHeapDirectory = Files.createTempDirectory("tinyurl-off-heap");
+        CodeEncoder codeEncoder = CodeEncoder.CodeEncoderBuilder.builder().build();
+        OffHeapUrlMappingStore offHeapStore = new OffHeapUrlMappingStore(offHeap, offHeapDirectory.toString(), 1 << 16,
+                DataSize.ofMegabytes(16), codeEncoder, registry);
+        UrlMappingLookup lookup = new UrlMappingLookup(dslContext, partitions);
+        // Hits are counted but never flushed, as H2 has no equivalent of the PostgreSQL upsert into url_stats. The
+        // counter is not closed either, since closing it flushes.
+        UrlHitCounter hitCounter = new UrlHitCounter(dslContext, dslContext, "POSTGRES", true, Duration.ofDays(1), 1000,
+                100_000, Clock.systemUTC(), registry);
+        PeerUrlMappingCache peerCache = new PeerUrlMappingCache(null, null, false, "", "", "/tinyurl/peers", 100,
+                Duration.ofMillis(200), 0, registry);
+        lsmDirectory = Files.createTempDirectory("tinyurl-lsm");
+        // Writes are not forced to disk, which H2 in memory does not do either.
+        urlMappingStore = "LSM".equals(store)
+                ? LsmUrlMappingStore.LsmUrlMappingStoreBuilder.builder()
+                        .withDirectory(lsmDirectory.toString())
+                        .withMemtableBytes(DataSize.ofMegabytes(64).toBytes())
+                        .withMaxTables(4)
+                        .withTableBytes(DataSize.ofGigabytes(1).toBytes())
+                        .withFpp(0.01)
+                        .withSync(false)
+                        .withMeterRegistry(registry)
+                        .build()
+                : new PostgresUrlMappingStore(dslContext, dslContext, false, partitions, lookup, writer);
+        CodeFilter codeFilter = new CodeFilter(urlMappingStore, codeEncoder, null, false, 1_000_000, 0.01, 100_000_000,
+                "", Duration.ofSeconds(5), Duration.ofMinutes(1), Clock.systemUTC(), registry);
+        service = new UrlMappingService(urlMappingStore, new SequentialIdentifierStream(), codeEncoder, cache,
+                offHeapStore, new UrlDeduplicator(false, 0, registry), hitCounter, codeFilter, peerCache,
+                Clock.systemUTC());
+
+        codes = new String[PRELOADED_LINKS];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = service.addLink(FULL_URL).getCode();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException, IOException {
+        urlMappingStore.close();
+        writer.close();
+        dataSource.dispose();
+        FileSystemUtils.deleteRecursively(offHeapDirectory);
+        FileSystemUtils.deleteRecursively(lsmDirectory);
+    }
+
+    @Benchmark
+    public TinyUrlMapping addLink() {
+        return service.addLink(FULL_URL);
+    }
+
+    @Benchmark
+    public TinyUrlMapping getLink() {
+        return service.getLink(codes[ThreadLocalRandom.current().nextInt(codes.length)]);
+    }
+
+    private static class SequentialIdentifierStream implements IdentifierStream<Long> {
+
+        private final AtomicLong next = new AtomicLong(1_000_000L);
+
+        @Override
+        public Long next() {
+            return next.getAndIncrement();
+        }
+
+        @Override
+        public boolean ready() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.bufferstack.tinyurl.zookeeper;
+
+import com.bufferstack.tinyurl.generator.IdentifierStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ZkIdentifierStream#next()} against an in-process ZooKeeper server, so that block reservations pay a
+ * real (loopback) round-trip.
+ *
+ * <p>curator-test patches the ZooKeeper server classes with javassist, which needs {@code java.lang} opened on Java 17
+ * and later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+public class ZkIdentifierStreamBenchmark {
+
+    @Param({"1000", "100000"})
+    private int reservationSize;
+
+    private TestingServer zkServer;
+    private CuratorFramework zkClient;
+    private IdentifierStream<Long> identifierStream;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        zkServer = new TestingServer(true);
+        zkClient = CuratorFrameworkFactory.newClient(zkServer.getConnectString(), new ExponentialBackoffRetry(250, 3));
+        zkClient.start();
+        zkClient.blockUntilConnected();
+        identifierStream = ZkIdentifierStream.ZkIdentifierStreamBuilder.builder()
+                .withZkClient(zkClient)
+                .withReservationSize(reservationSize)
+                .withLowWaterMark(reservationSize / 4)
+                .withMeterRegistry(new SimpleMeterRegistry())
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        identifierStream.close();
+        zkClient.close();
+        zkServer.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Long next1Thread() {
+        return identifierStream.next();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long next4Threads() {
+        return identifierStream.next();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Long next16Threads() {
+        return identifierStream.next();
+    }
+}
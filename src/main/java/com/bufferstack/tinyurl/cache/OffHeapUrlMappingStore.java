@@ -0,0 +1,367 @@
+package com.bufferstack.tinyurl.cache;
+
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.utils.StageTimers;
+import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Off-heap tier of URL mappings, keyed by the identifier behind each code and kept in two memory-mapped files, so that
+ * holding tens of millions of links costs neither heap nor GC time, and a restarted pod finds them where it left them.
+ *
+ * <p>{@code index} is an open-addressing hash table with linear probing: a 64-byte header followed by
+ * {@code indexCapacity} 16-byte slots of {@code (identifier + 1, data offset)}, where a zero key marks a free slot.
+ * {@code data} is an append-only log of {@code (epoch second, nano, code length, URL length, code, UTF-8 URL)} records.
+ * Mappings never change once inserted, so entries are only ever added; once the index is three quarters full or the
+ * data file is full, further mappings are rejected and left to the heap cache and the database.
+ *
+ * <p>Which identifier a code stands for depends on the {@link CodeEncoder}'s settings, so the header records their
+ * {@link CodeEncoder#fingerprint() fingerprint} and a store written under other settings is discarded on open. Each
+ * record also keeps its code, and a record whose code is not the one asked for is treated as a miss rather than
+ * answered under the wrong code.
+ *
+ * <p>A single writer appends the record, advances the tail in the header and only then publishes the slot, writing its
+ * key with release semantics. Readers load the key with acquire semantics and take no locks. A process that dies
+ * mid-write therefore leaves at most an unreferenced record behind. Writers hold {@code writeLock} rather than a
+ * monitor, as a write can wait on a page fault, which would pin the carrier of a virtual thread. Pages are forced to
+ * disk on close; a node crash can lose mappings written since, which are then reloaded from the database.
+ */
+@Component
+public class OffHeapUrlMappingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapUrlMappingStore.class);
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long MAGIC = 0x54696E7955726C32L; // "TinyUrl2"
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int TAIL_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int ENCODER_OFFSET = 32;
+    private static final int SLOT_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 20;
+
+    private final boolean enabled;
+    private final long indexCapacity;
+    private final long maxEntries;
+    private final long dataCapacity;
+    private final long encoderFingerprint;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private MappedByteBuffer[] index;
+    private MappedByteBuffer[] data;
+    private volatile long tail;
+    private volatile long size;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter rejectedCounter;
+    private final Counter mismatchCounter;
+    private final Timer getTimer;
+
+    public OffHeapUrlMappingStore(@Value("${tinyurl.off-heap.enabled:false}") boolean enabled,
+                                  @Value("${tinyurl.off-heap.directory:/var/lib/tinyurl/off-heap}") String directory,
+                                  @Value("${tinyurl.off-heap.index-capacity:16777216}") long indexCapacity,
+                                  @Value("${tinyurl.off-heap.data-size:2GB}") DataSize dataSize,
+                                  CodeEncoder codeEncoder, MeterRegistry registry) {
+        if (Long.bitCount(indexCapacity) != 1) {
+            throw new IllegalArgumentException("Index capacity must be a power of two: " + indexCapacity);
+        }
+        this.enabled = enabled;
+        this.indexCapacity = indexCapacity;
+        this.maxEntries = indexCapacity / 4 * 3;
+        this.dataCapacity = dataSize.toBytes();
+        this.encoderFingerprint = codeEncoder.fingerprint();
+
+        if (enabled) {
+            open(Paths.get(directory));
+        }
+
+        hitCounter = Counter.builder("urlMapping.offHeap")
+                .tag("result", "hit")
+                .register(registry);
+        missCounter = Counter.builder("urlMapping.offHeap")
+                .tag("result", "miss")
+                .register(registry);
+        rejectedCounter = Counter.builder("urlMapping.offHeap")
+                .tag("result", "rejected")
+                .register(registry);
+        mismatchCounter = Counter.builder("urlMapping.offHeap")
+                .tag("result", "mismatch")
+                .register(registry);
+        getTimer = StageTimers.register(registry, "cache", "offHeap");
+        Gauge.builder("urlMapping.offHeap.entries", this, store -> store.size)
+                .register(registry);
+        Gauge.builder("urlMapping.offHeap.dataBytes", this, store -> store.tail)
+                .register(registry);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the mapping stored for {@code identifier} if it was stored under {@code code}, or {@code null} if there
+     * is none.
+     */
+    public TinyUrlMapping get(long identifier, String code) {
+        if (!enabled || identifier < 0) {
+            return null;
+        }
+        return getTimer.record(() -> find(identifier, code));
+    }
+
+    private TinyUrlMapping find(long identifier, String code) {
+        long key = identifier + 1;
+        long mask = indexCapacity - 1;
+        for (long slot = hash(key) & mask, probes = 0; probes < indexCapacity; slot = (slot + 1) & mask, probes++) {
+            MappedByteBuffer segment = index[segment(slotPosition(slot))];
+            int offset = offset(slotPosition(slot));
+            long stored = (long) LONGS.getAcquire(segment, offset);
+            if (stored == 0) {
+                break;
+            }
+            if (stored == key) {
+                TinyUrlMapping mapping = read(code, segment.getLong(offset + 8));
+                if (mapping == null) {
+                    mismatchCounter.increment();
+                } else {
+                    hitCounter.increment();
+                }
+                return mapping;
+            }
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    /**
+     * Stores {@code mapping} under {@code identifier} unless it is already there or the store is full.
+     */
+    public void put(long identifier, TinyUrlMapping mapping) {
+        if (!enabled || identifier < 0) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            append(identifier, mapping);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @VisibleForTesting
+    long size() {
+        return size;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            for (MappedByteBuffer segment : index) {
+                segment.force();
+            }
+            for (MappedByteBuffer segment : data) {
+                segment.force();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void append(long identifier, TinyUrlMapping mapping) {
+        long key = identifier + 1;
+        long mask = indexCapacity - 1;
+        long slot = hash(key) & mask;
+        while (true) {
+            long stored = index[segment(slotPosition(slot))].getLong(offset(slotPosition(slot)));
+            if (stored == key) {
+                return;
+            }
+            if (stored == 0) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        byte[] code = mapping.getCode().getBytes(StandardCharsets.US_ASCII);
+        byte[] url = mapping.getFullUrl().getBytes(StandardCharsets.UTF_8);
+        int length = align(RECORD_HEADER_BYTES + code.length + url.length);
+        long recordPosition = tail;
+        if ((recordPosition & SEGMENT_MASK) + length > SEGMENT_SIZE) {
+            recordPosition = (recordPosition | SEGMENT_MASK) + 1;
+        }
+        if (size >= maxEntries || length > SEGMENT_SIZE || recordPosition + length > dataCapacity) {
+            rejectedCounter.increment();
+            return;
+        }
+
+        MappedByteBuffer record = data[segment(recordPosition)];
+        int recordOffset = offset(recordPosition);
+        record.putLong(recordOffset, mapping.getCreatedAt().getEpochSecond());
+        record.putInt(recordOffset + 8, mapping.getCreatedAt().getNano());
+        record.putInt(recordOffset + 12, code.length);
+        record.putInt(recordOffset + 16, url.length);
+        record.put(recordOffset + RECORD_HEADER_BYTES, code);
+        record.put(recordOffset + RECORD_HEADER_BYTES + code.length, url);
+
+        tail = recordPosition + length;
+        size++;
+        index[0].putLong(TAIL_OFFSET, tail);
+        index[0].putLong(SIZE_OFFSET, size);
+
+        MappedByteBuffer segment = index[segment(slotPosition(slot))];
+        int offset = offset(slotPosition(slot));
+        segment.putLong(offset + 8, recordPosition);
+        LONGS.setRelease(segment, offset, key);
+    }
+
+    /**
+     * Reads the record at {@code recordPosition}, or returns {@code null} if it was stored under another code.
+     */
+    private TinyUrlMapping read(String code, long recordPosition) {
+        MappedByteBuffer record = data[segment(recordPosition)];
+        int recordOffset = offset(recordPosition);
+        int codeLength = record.getInt(recordOffset + 12);
+        if (codeLength != code.length()) {
+            return null;
+        }
+        for (int i = 0; i < codeLength; i++) {
+            if (record.get(recordOffset + RECORD_HEADER_BYTES + i) != code.charAt(i)) {
+                return null;
+            }
+        }
+        Instant createdAt = Instant.ofEpochSecond(record.getLong(recordOffset), record.getInt(recordOffset + 8));
+        byte[] url = new byte[record.getInt(recordOffset + 16)];
+        record.get(recordOffset + RECORD_HEADER_BYTES + codeLength, url);
+        return new TinyUrlMapping(code, new String(url, StandardCharsets.UTF_8), createdAt);
+    }
+
+    private void open(Path directory) {
+        Path indexPath = directory.resolve("index");
+        Path dataPath = directory.resolve("data");
+        long indexBytes = HEADER_BYTES + indexCapacity * SLOT_BYTES;
+        try {
+            Files.createDirectories(directory);
+            if (Files.exists(indexPath) && !compatible(indexPath, indexBytes)) {
+                logger.warn("Discarding off-heap store in {} built for a different format, index capacity or code"
+                        + " encoder", directory);
+                Files.delete(indexPath);
+                Files.deleteIfExists(dataPath);
+            }
+            index = map(indexPath, indexBytes);
+            data = map(dataPath, dataCapacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open off-heap store in " + directory, e);
+        }
+
+        MappedByteBuffer header = index[0];
+        if (header.getLong(MAGIC_OFFSET) == MAGIC) {
+            tail = header.getLong(TAIL_OFFSET);
+            size = header.getLong(SIZE_OFFSET);
+            logger.info("Opened off-heap store in {} with {} mappings", directory, size);
+        } else {
+            header.putLong(CAPACITY_OFFSET, indexCapacity);
+            header.putLong(TAIL_OFFSET, 0);
+            header.putLong(SIZE_OFFSET, 0);
+            header.putLong(ENCODER_OFFSET, encoderFingerprint);
+            header.putLong(MAGIC_OFFSET, MAGIC);
+            logger.info("Created off-heap store in {} for {} mappings", directory, maxEntries);
+        }
+    }
+
+    /**
+     * Returns whether the index file at {@code indexPath} can be reopened: it has the expected size and was written in
+     * this format, for this capacity and under the same code encoder settings. A file without a header, as left by a
+     * process that died while creating it, is empty and can be reused as well.
+     */
+    private boolean compatible(Path indexPath, long indexBytes) throws IOException {
+        if (Files.size(indexPath) != indexBytes) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+        }
+        long magic = header.getLong(MAGIC_OFFSET);
+        return magic == 0 || magic == MAGIC && header.getLong(CAPACITY_OFFSET) == indexCapacity
+                && header.getLong(ENCODER_OFFSET) == encoderFingerprint;
+    }
+
+    private static MappedByteBuffer[] map(Path path, long bytes) throws IOException {
+        int segments = (int) ((bytes + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] buffers = new MappedByteBuffer[segments];
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < segments; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, bytes - start));
+                buffers[i].order(ByteOrder.nativeOrder());
+            }
+        }
+        return buffers;
+    }
+
+    private static long slotPosition(long slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static int segment(long position) {
+        return (int) (position >>> SEGMENT_SHIFT);
+    }
+
+    private static int offset(long position) {
+        return (int) (position & SEGMENT_MASK);
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
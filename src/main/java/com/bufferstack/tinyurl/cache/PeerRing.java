@@ -0,0 +1,68 @@
+package com.bufferstack.tinyurl.cache;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent-hash ring assigning each code to one of a set of members. Every member is placed on the ring at
+ * {@code virtualNodes} points, and a code belongs to the member at the first point at or after the code's own hash.
+ * When a member joins or leaves, only the codes between its points and the points before them change owner.
+ */
+final class PeerRing {
+
+    static final PeerRing EMPTY = new PeerRing(new TreeSet<>(), 1);
+
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final int[] points;
+    private final String[] owners;
+    private final int members;
+
+    PeerRing(Collection<String> members, int virtualNodes) {
+        // Sorted, so that members colliding on a point resolve the same way on every instance.
+        TreeSet<String> sorted = new TreeSet<>(members);
+        TreeMap<Integer, String> ring = new TreeMap<>();
+        for (String member : sorted) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.putIfAbsent(hash(member + "#" + i), member);
+            }
+        }
+        this.members = sorted.size();
+        points = new int[ring.size()];
+        owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            owners[i] = point.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * Returns the member owning {@code code}, or {@code null} if the ring has no members.
+     */
+    String owner(String code) {
+        if (points.length == 0) {
+            return null;
+        }
+        int i = Arrays.binarySearch(points, hash(code));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    int members() {
+        return members;
+    }
+
+    private static int hash(String value) {
+        return HASH.hashString(value, StandardCharsets.UTF_8).asInt();
+    }
+}
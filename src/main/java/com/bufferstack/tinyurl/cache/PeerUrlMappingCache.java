@@ -0,0 +1,238 @@
+package com.bufferstack.tinyurl.cache;
+
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.nodes.PersistentNode;
+import org.apache.zookeeper.CreateMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * Spreads the mapping cache over all instances, groupcache-style, so that the mappings cached across the deployment
+ * grow with the number of replicas instead of every replica caching the same popular codes. Instances register under
+ * {@code path} in ZooKeeper with an ephemeral node and place each other on a {@link PeerRing}; every code is owned by
+ * one instance, which caches it in its {@link UrlMappingCache}. Other instances ask the owner for it over HTTP and keep
+ * only a small cache of what they fetched, for codes hot enough to be asked for again before they are evicted there.
+ *
+ * <p>Concurrent requests for the same code share a single fetch. When the owner cannot be reached, the code is loaded
+ * locally instead, so a failing peer costs latency but not availability; while membership changes settle, instances
+ * may briefly disagree on owners, which only means a code is cached on two instances.
+ *
+ * <p>The owner serves these requests without counting a hit, since the asking instance counts it. Requests therefore
+ * carry {@code secret}, shared by all instances, in the {@link #SECRET_HEADER} header, and the owner only answers those
+ * that do.
+ */
+@Component
+public class PeerUrlMappingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerUrlMappingCache.class);
+
+    public static final String SECRET_HEADER = "X-TinyUrl-Peer-Secret";
+
+    private final CuratorFramework curatorFramework;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final String selfUrl;
+    private final byte[] secret;
+    private final String path;
+    private final int virtualNodes;
+    private final Duration timeout;
+    private final Cache<String, TinyUrlMapping> hot;
+    private final SingleFlight<String, TinyUrlMapping> fetches;
+    private final HttpClient httpClient;
+
+    private volatile PeerRing ring = PeerRing.EMPTY;
+    private PersistentNode member;
+    private PathChildrenCache members;
+
+    private final Counter fetchedCounter;
+    private final Counter notFoundCounter;
+    private final Counter exceptionCounter;
+    private final Timer fetchTimer;
+
+    public PeerUrlMappingCache(CuratorFramework curatorFramework, ObjectMapper objectMapper,
+                               @Value("${tinyurl.peers.enabled:false}") boolean enabled,
+                               @Value("${tinyurl.peers.self-url:}") String selfUrl,
+                               @Value("${tinyurl.peers.secret:}") String secret,
+                               @Value("${tinyurl.peers.path:/tinyurl/peers}") String path,
+                               @Value("${tinyurl.peers.virtual-nodes:100}") int virtualNodes,
+                               @Value("${tinyurl.peers.timeout:200ms}") Duration timeout,
+                               @Value("${tinyurl.peers.hot-size:10000}") long hotSize,
+                               MeterRegistry registry) {
+        if (enabled && selfUrl.isEmpty()) {
+            throw new IllegalArgumentException("tinyurl.peers.self-url is required with tinyurl.peers.enabled");
+        }
+        if (enabled && secret.isEmpty()) {
+            throw new IllegalArgumentException("tinyurl.peers.secret is required with tinyurl.peers.enabled");
+        }
+        this.curatorFramework = curatorFramework;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.selfUrl = selfUrl;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.path = path;
+        this.virtualNodes = virtualNodes;
+        this.timeout = timeout;
+        this.hot = Caffeine.newBuilder()
+                .recordStats()
+                .maximumSize(hotSize)
+                .build();
+        this.httpClient = enabled ? HttpClient.newBuilder().connectTimeout(timeout).build() : null;
+
+        CaffeineCacheMetrics.monitor(registry, hot, "urlMappingPeerHot");
+        Gauge.builder("peerCache.members", this, cache -> cache.ring.members())
+                .register(registry);
+        fetchedCounter = Counter.builder("peerCache")
+                .tag("result", "fetched")
+                .register(registry);
+        notFoundCounter = Counter.builder("peerCache")
+                .tag("result", "notFound")
+                .register(registry);
+        fetches = new SingleFlight<>(Counter.builder("peerCache")
+                .tag("result", "coalesced")
+                .register(registry));
+        exceptionCounter = Counter.builder("peerCache")
+                .tag("result", "exception")
+                .register(registry);
+        fetchTimer = Timer.builder("peerCache.fetch")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        member = new PersistentNode(curatorFramework, CreateMode.EPHEMERAL, false,
+                path + "/" + URLEncoder.encode(selfUrl, StandardCharsets.UTF_8),
+                selfUrl.getBytes(StandardCharsets.UTF_8));
+        member.start();
+        members = new PathChildrenCache(curatorFramework, path, true);
+        members.getListenable().addListener((client, event) -> updateRing());
+        members.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+        updateRing();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (members != null) {
+            members.close();
+        }
+        if (member != null) {
+            member.close();
+        }
+    }
+
+    /**
+     * Returns the URL of the instance owning {@code code}, or {@code null} if it is this one, peering is disabled or
+     * no instance has registered yet.
+     */
+    public String owner(String code) {
+        String owner = ring.owner(code);
+        return owner == null || owner.equals(selfUrl) ? null : owner;
+    }
+
+    /**
+     * Returns whether a request carrying {@code secret} comes from another instance. Always {@code false} with peering
+     * disabled.
+     */
+    public boolean authorized(String secret) {
+        return enabled && secret != null
+                && MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the mapping of {@code code}, a code owned by the instance at {@code owner}, asking the owner for it
+     * unless this instance fetched it recently. Loads it with {@code fallback} if the owner cannot be reached. Returns
+     * {@code null} if the code does not exist.
+     */
+    public TinyUrlMapping get(String owner, String code, Function<String, TinyUrlMapping> fallback) {
+        TinyUrlMapping mapping = hot.getIfPresent(code);
+        if (mapping != null) {
+            return mapping;
+        }
+        return fetches.get(code, key -> {
+            TinyUrlMapping fetched = hot.getIfPresent(key);
+            if (fetched == null) {
+                fetched = fetchOrLoad(owner, key, fallback);
+                if (fetched != null) {
+                    hot.put(key, fetched);
+                }
+            }
+            return fetched;
+        });
+    }
+
+    private TinyUrlMapping fetchOrLoad(String owner, String code, Function<String, TinyUrlMapping> fallback) {
+        try {
+            return fetchTimer.recordCallable(() -> fetch(owner, code));
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.warn("Unable to fetch {} from {}, loading it locally: {}", code, owner, e.toString());
+            exceptionCounter.increment();
+            return fallback.apply(code);
+        }
+    }
+
+    private TinyUrlMapping fetch(String owner, String code) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(owner + "/tinyurl/" + UriUtils.encodePathSegment(code, StandardCharsets.UTF_8)
+                        + "/peer"))
+                .header(SECRET_HEADER, new String(secret, StandardCharsets.UTF_8))
+                .timeout(timeout)
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 404) {
+            notFoundCounter.increment();
+            return null;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Unexpected status " + response.statusCode());
+        }
+        JsonNode body = objectMapper.readTree(response.body());
+        fetchedCounter.increment();
+        return new TinyUrlMapping(body.get("code").asText(), body.get("fullUrl").asText(),
+                objectMapper.treeToValue(body.get("createdAt"), Instant.class));
+    }
+
+    private void updateRing() {
+        List<String> urls = members.getCurrentData().stream()
+                .map(ChildData::getData)
+                .map(data -> new String(data, StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+        ring = new PeerRing(urls, virtualNodes);
+        logger.info("Peer cache members: {}", urls);
+    }
+}
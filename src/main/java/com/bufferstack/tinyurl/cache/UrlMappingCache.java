@@ -0,0 +1,132 @@
+package com.bufferstack.tinyurl.cache;
+
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.utils.StageTimers;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded cache of URL mappings in front of the database. Mappings never change once inserted, so entries are only
+ * ever evicted for size (Caffeine's W-TinyLFU policy). Codes that were looked up and not found are remembered in a
+ * separate, short-lived cache so that repeated misses do not reach the database either.
+ */
+@Component
+public class UrlMappingCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final Cache<String, TinyUrlMapping> mappings;
+    private final Cache<String, Boolean> missing;
+    private final SingleFlight<String, TinyUrlMapping> loads;
+    private final Timer getTimer;
+    private final Timer getIfPresentTimer;
+
+    public UrlMappingCache(@Value("${tinyurl.cache.maximum-size:100000}") long maximumSize,
+                           @Value("${tinyurl.cache.maximum-weight-bytes:0}") long maximumWeightBytes,
+                           @Value("${tinyurl.cache.negative-ttl:5s}") Duration negativeTtl,
+                           MeterRegistry registry) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (maximumWeightBytes > 0) {
+            mappings = builder
+                    .maximumWeight(maximumWeightBytes)
+                    .<String, TinyUrlMapping>weigher((code, mapping) -> weigh(mapping))
+                    .build();
+        } else {
+            mappings = builder.maximumSize(maximumSize).build();
+        }
+        missing = Caffeine.newBuilder()
+                .recordStats()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(negativeTtl)
+                .build();
+
+        loads = new SingleFlight<>(Counter.builder("urlMapping.coalesced")
+                .register(registry));
+
+        getTimer = StageTimers.register(registry, "cache", "get");
+        getIfPresentTimer = StageTimers.register(registry, "cache", "getIfPresent");
+
+        CaffeineCacheMetrics.monitor(registry, mappings, "urlMapping");
+        CaffeineCacheMetrics.monitor(registry, missing, "urlMappingMissing");
+    }
+
+    /**
+     * Returns the cached mapping for {@code code}, loading it with {@code loader} on a miss. Returns {@code null} when
+     * the code is known not to exist, or when the loader returns {@code null}, in which case the miss is remembered.
+     *
+     * <p>Concurrent misses for the same code run the loader once and share its result; see {@link SingleFlight}. The
+     * loader runs outside the cache's own compute, which would hold a map lock (and pin a virtual thread to its
+     * carrier) for the duration of the database call. Only the lookup is timed as the {@code cache} stage; a load is
+     * timed by the stages it goes through.
+     */
+    public TinyUrlMapping get(String code, Function<String, TinyUrlMapping> loader) {
+        long start = System.nanoTime();
+        boolean knownMissing = isMissing(code);
+        TinyUrlMapping mapping = knownMissing ? null : mappings.getIfPresent(code);
+        getTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (knownMissing || mapping != null) {
+            return mapping;
+        }
+        return loads.get(code, key -> load(key, loader));
+    }
+
+    public TinyUrlMapping getIfPresent(String code) {
+        return getIfPresentTimer.record(() -> mappings.getIfPresent(code));
+    }
+
+    public boolean isMissing(String code) {
+        return missing.getIfPresent(code) != null;
+    }
+
+    public void putMissing(String code) {
+        missing.put(code, Boolean.TRUE);
+    }
+
+    public void put(TinyUrlMapping mapping) {
+        mappings.put(mapping.getCode(), mapping);
+        missing.invalidate(mapping.getCode());
+    }
+
+    /**
+     * Returns up to {@code limit} cached mappings, those the eviction policy would keep longest first.
+     */
+    public List<TinyUrlMapping> hottest(int limit) {
+        return mappings.policy().eviction()
+                .map(eviction -> List.copyOf(eviction.hottest(limit).values()))
+                .orElse(List.of());
+    }
+
+    /**
+     * Loads {@code code} unless a load that completed since the caller missed the cache already cached it.
+     */
+    private TinyUrlMapping load(String code, Function<String, TinyUrlMapping> loader) {
+        if (isMissing(code)) {
+            return null;
+        }
+        TinyUrlMapping mapping = mappings.getIfPresent(code);
+        if (mapping != null) {
+            return mapping;
+        }
+        mapping = loader.apply(code);
+        if (mapping == null) {
+            putMissing(code);
+        } else {
+            mappings.put(code, mapping);
+        }
+        return mapping;
+    }
+
+    private static int weigh(TinyUrlMapping mapping) {
+        return ENTRY_OVERHEAD_BYTES + mapping.getCode().length() + mapping.getFullUrl().length();
+    }
+}
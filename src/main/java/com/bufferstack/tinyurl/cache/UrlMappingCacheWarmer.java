@@ -0,0 +1,287 @@
+package com.bufferstack.tinyurl.cache;
+
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.service.UrlHitCounter;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the {@link UrlMappingCache} of a starting instance before it takes traffic, so that a rollout does not send
+ * every redirect of the new pods to the database at once.
+ *
+ * <p>The mappings come from {@code file} when there is one: a snapshot of the {@code size} entries the cache's
+ * eviction policy valued most, which every instance writes there every {@code snapshotInterval} and on shutdown.
+ * The file is meant to be on a volume shared by the instances; each replaces it atomically, so readers see one
+ * instance's snapshot whole. Without a snapshot the {@code size} codes with the most hits in {@code url_stats} are
+ * loaded from the store instead, when the {@link UrlHitCounter} keeps hit statistics at all. The instance reports
+ * itself not ready until {@code readyFraction} of the mappings are cached, or for at most {@code timeout}; loading
+ * goes on in the background either way.
+ */
+@Component
+public class UrlMappingCacheWarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlMappingCacheWarmer.class);
+
+    private static final long MAGIC = 0x54696E7957633031L; // "TinyWc01"
+    private static final int CHUNK_SIZE = 1000;
+
+    private final UrlMappingCache cache;
+    private final UrlMappingStore store;
+    private final UrlHitCounter hitCounter;
+    private final boolean enabled;
+    private final int size;
+    private final Path file;
+    private final Duration snapshotInterval;
+    private final double readyFraction;
+    private final Duration timeout;
+    private final Clock clock;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong loaded = new AtomicLong();
+    private volatile long target = -1;
+    private volatile Instant startedAt;
+    private volatile boolean done;
+
+    private final Counter exceptionCounter;
+    private final Timer snapshotWarmUpTimer;
+    private final Timer statsWarmUpTimer;
+    private final Timer snapshotTimer;
+
+    public UrlMappingCacheWarmer(UrlMappingCache cache, UrlMappingStore store, UrlHitCounter hitCounter,
+                                 @Value("${tinyurl.warm-up.enabled:false}") boolean enabled,
+                                 @Value("${tinyurl.warm-up.size:10000}") int size,
+                                 @Value("${tinyurl.warm-up.file:}") String file,
+                                 @Value("${tinyurl.warm-up.snapshot-interval:5m}") Duration snapshotInterval,
+                                 @Value("${tinyurl.warm-up.ready-fraction:0.9}") double readyFraction,
+                                 @Value("${tinyurl.warm-up.timeout:2m}") Duration timeout,
+                                 Clock clock, MeterRegistry registry) {
+        this.cache = cache;
+        this.store = store;
+        this.hitCounter = hitCounter;
+        this.enabled = enabled;
+        this.size = size;
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.snapshotInterval = snapshotInterval;
+        this.readyFraction = readyFraction;
+        this.timeout = timeout;
+        this.clock = clock;
+        this.executor = enabled ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        Gauge.builder("urlMapping.warmUp.loaded", loaded, AtomicLong::get)
+                .register(registry);
+        Gauge.builder("urlMapping.warmUp.target", this, warmer -> Math.max(warmer.target, 0))
+                .register(registry);
+        exceptionCounter = Counter.builder("urlMapping.warmUp")
+                .tag("result", "exception")
+                .register(registry);
+        snapshotWarmUpTimer = Timer.builder("urlMapping.warmUp")
+                .tag("source", "snapshot")
+                .register(registry);
+        statsWarmUpTimer = Timer.builder("urlMapping.warmUp")
+                .tag("source", "stats")
+                .register(registry);
+        snapshotTimer = Timer.builder("urlMapping.snapshot")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            startedAt = clock.instant();
+            executor.execute(this::warmUp);
+        }
+    }
+
+    /**
+     * Returns {@code true} once enough of the mappings are cached, loading has ended, or {@code timeout} has passed.
+     */
+    public boolean ready() {
+        if (!enabled || done) {
+            return true;
+        }
+        long expected = target;
+        if (expected >= 0 && loaded.get() >= Math.ceil(readyFraction * expected)) {
+            return true;
+        }
+        Instant started = startedAt;
+        return started != null && !clock.instant().isBefore(started.plus(timeout));
+    }
+
+    public long loaded() {
+        return loaded.get();
+    }
+
+    /**
+     * Returns the number of mappings being loaded, or {@code -1} while that is not known yet.
+     */
+    public long target() {
+        return target;
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        if (done) {
+            saveSnapshot();
+        }
+    }
+
+    @VisibleForTesting
+    void warmUp() {
+        long start = System.nanoTime();
+        try {
+            Timer timer = snapshotWarmUpTimer;
+            if (!loadSnapshot()) {
+                timer = statsWarmUpTimer;
+                loadHottestCodes();
+            }
+            long elapsed = System.nanoTime() - start;
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+            logger.info("Warmed the url mapping cache with {} of {} mappings in {} ms", loaded.get(), target,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } catch (RuntimeException e) {
+            logger.error("Unable to warm the url mapping cache", e);
+            exceptionCounter.increment();
+        }
+        done = true;
+        if (file != null && !executor.isShutdown()) {
+            executor.scheduleWithFixedDelay(this::saveSnapshot, snapshotInterval.toMillis(),
+                    snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean loadSnapshot() {
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readLong() != MAGIC) {
+                logger.warn("Ignoring cache snapshot {} in an unknown format", file);
+                return false;
+            }
+            Instant savedAt = Instant.ofEpochMilli(in.readLong());
+            int count = Math.min(in.readInt(), size);
+            target = count;
+            for (int i = 0; i < count; i++) {
+                String code = in.readUTF();
+                Instant createdAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                byte[] fullUrl = new byte[in.readInt()];
+                in.readFully(fullUrl);
+                put(new TinyUrlMapping(code, new String(fullUrl, StandardCharsets.UTF_8), createdAt));
+            }
+            logger.info("Loaded {} url mappings from cache snapshot {}, written at {}", count, file, savedAt);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read cache snapshot {}, loading the hottest codes instead", file, e);
+            exceptionCounter.increment();
+            loaded.set(0);
+            return false;
+        }
+    }
+
+    private void loadHottestCodes() {
+        if (!hitCounter.available()) {
+            logger.info("No cache snapshot to warm the url mapping cache from, and no hit statistics to fall back on");
+        }
+        List<String> codes = hitCounter.hottestCodes(size);
+        target = codes.size();
+        for (List<String> chunk : Lists.partition(codes, CHUNK_SIZE)) {
+            store.findAll(chunk).forEach(this::put);
+        }
+    }
+
+    private void put(TinyUrlMapping mapping) {
+        cache.put(mapping);
+        loaded.incrementAndGet();
+    }
+
+    /**
+     * Writes the hottest cached mappings to {@code file}, through a temporary file of its own so that instances
+     * writing at the same time do not interleave. An empty cache leaves the file as it is.
+     */
+    @VisibleForTesting
+    void saveSnapshot() {
+        if (file == null) {
+            return;
+        }
+        List<TinyUrlMapping> mappings = cache.hottest(size);
+        if (mappings.isEmpty()) {
+            return;
+        }
+        Path temporary = null;
+        long start = System.nanoTime();
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeLong(MAGIC);
+                out.writeLong(clock.millis());
+                out.writeInt(mappings.size());
+                for (TinyUrlMapping mapping : mappings) {
+                    byte[] fullUrl = mapping.getFullUrl().getBytes(StandardCharsets.UTF_8);
+                    out.writeUTF(mapping.getCode());
+                    out.writeLong(mapping.getCreatedAt().getEpochSecond());
+                    out.writeInt(mapping.getCreatedAt().getNano());
+                    out.writeInt(fullUrl.length);
+                    out.write(fullUrl);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to write cache snapshot {}", file, e);
+            exceptionCounter.increment();
+            deleteQuietly(temporary);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Unable to delete {}", path, e);
+        }
+    }
+}
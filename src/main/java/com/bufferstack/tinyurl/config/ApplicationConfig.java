@@ -1,11 +1,13 @@
 package com.bufferstack.tinyurl.config;
 
 import com.bufferstack.tinyurl.utils.ObjectMapperFactory;
+import com.bufferstack.tinyurl.generator.CodeEncoder;
 import com.bufferstack.tinyurl.generator.IdentifierStream;
 import com.bufferstack.tinyurl.generator.IdentifierStreamFactory;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.bufferstack.tinyurl.store.UrlMappingStoreFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.Clock;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
@@ -18,6 +20,7 @@ import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.web.servlet.error.ErrorMvcAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Component;
 import org.zalando.problem.ProblemModule;
 import org.zalando.problem.validation.ConstraintViolationProblemModule;
@@ -45,6 +48,22 @@ public class ApplicationConfig {
         return identifierStreamFactory.getIdentifierStream();
     }
 
+    @Bean
+    public UrlMappingStore urlMappingStore(UrlMappingStoreFactory urlMappingStoreFactory) {
+        return urlMappingStoreFactory.getUrlMappingStore();
+    }
+
+    @Bean
+    public CodeEncoder codeEncoder(@Value("${tinyurl.code.alphabet:" + CodeEncoder.DECIMAL + "}") String alphabet,
+                                   @Value("${tinyurl.code.shuffle-bits:0}") int shuffleBits,
+                                   @Value("${tinyurl.code.shuffle-salt:0}") long shuffleSalt) {
+        return CodeEncoder.CodeEncoderBuilder.builder()
+                .withAlphabet(alphabet)
+                .withShuffleBits(shuffleBits)
+                .withShuffleSalt(shuffleSalt)
+                .build();
+    }
+
     @Bean
     public Clock clock() {
         return Clock.systemUTC();
@@ -73,8 +92,12 @@ public class ApplicationConfig {
         return new ConstraintViolationProblemModule();
     }
 
+    /**
+     * Replaces the JSON converter Spring Boot would configure with one timing what it writes.
+     */
     @Bean
-    public MeterRegistry meterRegistry() {
-        return new SimpleMeterRegistry();
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                                   MeterRegistry registry) {
+        return new TimedMappingJackson2HttpMessageConverter(objectMapper, registry);
     }
 }
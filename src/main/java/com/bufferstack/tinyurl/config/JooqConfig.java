@@ -1,5 +1,6 @@
 package com.bufferstack.tinyurl.config;
 
+import com.zaxxer.hikari.HikariDataSource;
 import javax.sql.DataSource;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
@@ -10,24 +11,84 @@ import org.jooq.impl.DataSourceConnectionProvider;
 import org.jooq.impl.DefaultConfiguration;
 import org.jooq.impl.DefaultDSLContext;
 import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.autoconfigure.jooq.JooqExceptionTranslator;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
 import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
 
+/**
+ * Splits database access into a write side, on the primary configured under {@code spring.datasource}, and a read
+ * side with its own Hikari pool, pointed at a replica when {@code tinyurl.datasource.read.url} is set and at the
+ * primary otherwise. The read pool takes the {@code spring.datasource.hikari} settings of the write pool, except for
+ * those set under {@code tinyurl.datasource.read}. The write {@link DSLContext} is the primary bean; the read one is
+ * injected with {@code @Qualifier("read")}. Both pools are named, so Spring Boot exports their
+ * {@code hikaricp.connections.*} metrics (active, idle, pending, acquire time) tagged {@code pool=tinyurl-write} and
+ * {@code pool=tinyurl-read}.
+ */
 @Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
 public class JooqConfig {
 
     @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("tinyurl-write");
+        return dataSource;
+    }
+
+    @Bean
+    @Qualifier("read")
+    public HikariDataSource readDataSource(DataSourceProperties properties, Environment environment,
+                                           @Value("${tinyurl.datasource.read.url:}") String url,
+                                           @Value("${tinyurl.datasource.read.maximum-pool-size:0}") int poolSize) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        if (!url.isEmpty()) {
+            dataSource.setJdbcUrl(url);
+        }
+        dataSource.setPoolName("tinyurl-read");
+        if (poolSize > 0) {
+            dataSource.setMaximumPoolSize(poolSize);
+        }
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
     public DataSourceConnectionProvider connectionProvider(DataSource dataSource) {
         return new DataSourceConnectionProvider(new TransactionAwareDataSourceProxy(dataSource));
     }
 
     @Bean
+    @Qualifier("read")
+    public DataSourceConnectionProvider readConnectionProvider(@Qualifier("read") DataSource readDataSource) {
+        return new DataSourceConnectionProvider(new TransactionAwareDataSourceProxy(readDataSource));
+    }
+
+    @Bean
+    @Primary
     public DSLContext dsl(DataSourceConnectionProvider connectionProvider) {
         return new DefaultDSLContext(configuration(connectionProvider));
     }
 
+    @Bean
+    @Qualifier("read")
+    public DSLContext readDsl(@Qualifier("read") DataSourceConnectionProvider readConnectionProvider) {
+        return new DefaultDSLContext(configuration(readConnectionProvider));
+    }
+
     private DefaultConfiguration configuration(DataSourceConnectionProvider connectionProvider) {
         DefaultConfiguration config = new DefaultConfiguration();
         config.set(connectionProvider);
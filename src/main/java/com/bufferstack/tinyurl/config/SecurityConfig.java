@@ -1,5 +1,6 @@
 package com.bufferstack.tinyurl.config;
 
+import com.bufferstack.tinyurl.generator.CodeEncoder;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpMethod;
@@ -14,10 +15,14 @@ import org.zalando.problem.spring.web.advice.security.SecurityProblemSupport;
 @Import(SecurityProblemSupport.class)
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
+    private static final String ADMIN_PATHS = "/admin/**";
+
     private final SecurityProblemSupport problemSupport;
+    private final CodeEncoder codeEncoder;
 
-    public SecurityConfig(SecurityProblemSupport problemSupport) {
+    public SecurityConfig(SecurityProblemSupport problemSupport, CodeEncoder codeEncoder) {
         this.problemSupport = problemSupport;
+        this.codeEncoder = codeEncoder;
     }
 
     @Override
@@ -25,12 +30,27 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         web.ignoring()
                 .antMatchers(HttpMethod.OPTIONS, "/**")
                 .antMatchers("/swagger-ui.html")
-                .antMatchers("/tinyurl/**");
+                .antMatchers("/tinyurl/**")
+                .regexMatchers(HttpMethod.GET, "/" + codeEncoder.pattern() + "(\\?.*)?");
     }
 
+    /**
+     * Admin endpoints take the {@code spring.security.user} credentials over HTTP basic authentication; they are
+     * called by scripts, so they are exempt from CSRF protection.
+     */
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http
+                .authorizeRequests()
+                .antMatchers(ADMIN_PATHS).authenticated()
+                .anyRequest().permitAll()
+                .and()
+                .httpBasic()
+                .authenticationEntryPoint(problemSupport)
+                .and()
+                .csrf()
+                .ignoringAntMatchers(ADMIN_PATHS)
+                .and()
                 .exceptionHandling()
                 .authenticationEntryPoint(problemSupport)
                 .accessDeniedHandler(problemSupport);
@@ -0,0 +1,54 @@
+package com.bufferstack.tinyurl.config;
+
+import com.bufferstack.tinyurl.health.VirtualThreadPinningMonitor;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs Tomcat request handling, and with it the blocking jOOQ calls made on the request thread, on virtual threads
+ * instead of the platform thread pool.
+ */
+@Configuration
+@ConditionalOnProperty(name = "tinyurl.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutorCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Hikari creates its pool inside a {@code synchronized} block on the first {@code getConnection()} and, by default,
+     * connects to the database while doing so. That would pin the virtual thread serving the first request for the
+     * whole connection attempt, so the attempt is skipped and connections are only opened once the block is left.
+     */
+    @Bean
+    public static BeanPostProcessor hikariFailFastDisabler() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource) {
+                    ((HikariDataSource) bean).setInitializationFailTimeout(-1);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean(destroyMethod = "close")
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(
+            @Value("${tinyurl.virtual-threads.pinned-threshold:0ms}") Duration threshold,
+            MeterRegistry registry) {
+        VirtualThreadPinningMonitor monitor = new VirtualThreadPinningMonitor(threshold, registry);
+        monitor.start();
+        return monitor;
+    }
+}
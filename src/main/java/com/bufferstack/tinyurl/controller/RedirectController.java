@@ -0,0 +1,41 @@
+package com.bufferstack.tinyurl.controller;
+
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.service.UrlMappingService;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves short links as plain HTTP redirects. The status and {@code Location} header are written straight to the
+ * servlet response, so neither message converters nor exception handlers are involved, and a miss is a bare 404. Only
+ * paths made of the code alphabet ({@link CodeEncoder#pattern()}) are taken to be codes, so that {@code /favicon.ico}
+ * and the like are left to other handlers.
+ */
+@RestController
+public class RedirectController {
+
+    private final UrlMappingService urlMappingService;
+    private final int redirectStatus;
+
+    public RedirectController(UrlMappingService urlMappingService,
+                              @Value("${tinyurl.redirect.status:302}") int redirectStatus) {
+        this.urlMappingService = urlMappingService;
+        this.redirectStatus = redirectStatus;
+    }
+
+    @GetMapping("/{code:#{@codeEncoder.pattern()}}")
+    public void redirect(@PathVariable String code, HttpServletResponse response) {
+        TinyUrlMapping mapping = urlMappingService.findLink(code);
+        if (mapping == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setStatus(redirectStatus);
+        response.setHeader(HttpHeaders.LOCATION, mapping.getFullUrl());
+    }
+}
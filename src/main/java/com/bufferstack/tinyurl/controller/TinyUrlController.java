@@ -1,24 +1,58 @@
 package com.bufferstack.tinyurl.controller;
 
+import com.bufferstack.tinyurl.cache.PeerUrlMappingCache;
 import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.models.UrlStats;
 import com.bufferstack.tinyurl.service.UrlMappingService;
+import com.bufferstack.tinyurl.utils.StageTimers;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
 
 @RestController
 @RequestMapping("/tinyurl")
 public class TinyUrlController {
 
     private final UrlMappingService urlMappingService;
+    private final PeerUrlMappingCache peerCache;
+    private final ObjectMapper objectMapper;
+    private final int batchChunkSize;
+    private final Timer ndjsonTimer;
 
-    public TinyUrlController(UrlMappingService urlMappingService) {
+    public TinyUrlController(UrlMappingService urlMappingService, PeerUrlMappingCache peerCache,
+                             ObjectMapper objectMapper, @Value("${tinyurl.batch.chunk-size:500}") int batchChunkSize,
+                             MeterRegistry registry) {
         this.urlMappingService = urlMappingService;
+        this.peerCache = peerCache;
+        this.objectMapper = objectMapper;
+        this.batchChunkSize = batchChunkSize;
+        this.ndjsonTimer = StageTimers.register(registry, "serialize", "ndjson");
     }
 
     @PostMapping
@@ -30,4 +64,93 @@ public class TinyUrlController {
     public TinyUrlMapping getLink(@PathVariable String code) {
         return urlMappingService.getLink(code);
     }
+
+    @GetMapping(path = "/{code}/stats", produces = APPLICATION_JSON_VALUE)
+    public UrlStats getStats(@PathVariable String code) {
+        return urlMappingService.getStats(code);
+    }
+
+    /**
+     * Resolves a code this instance owns for another instance; see {@link PeerUrlMappingCache}. Requests without the
+     * peers' shared secret are forbidden, since no hit is counted here.
+     */
+    @GetMapping(path = "/{code}/peer", produces = APPLICATION_JSON_VALUE)
+    public TinyUrlMapping getOwnedLink(@PathVariable String code,
+                                       @RequestHeader(value = PeerUrlMappingCache.SECRET_HEADER, required = false)
+                                               String secret) {
+        if (!peerCache.authorized(secret)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+        return urlMappingService.getOwnedLink(code);
+    }
+
+    /**
+     * Shortens the URLs in the request body, which is either a JSON array or newline-delimited JSON. Each element is a
+     * URL string or an object with a {@code fullUrl} field. The body is read incrementally and shortened in chunks of
+     * {@code tinyurl.batch.chunk-size}; each chunk's mappings are written as NDJSON, in request order, and flushed as
+     * soon as its insert has committed.
+     */
+    @PostMapping(path = "/batch", consumes = { APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE })
+    public void addLinks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream())) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            List<String> chunk = new ArrayList<>(batchChunkSize);
+            while (token != null && token != JsonToken.END_ARRAY) {
+                chunk.add(readFullUrl(parser, token));
+                if (chunk.size() == batchChunkSize) {
+                    write(urlMappingService.addLinks(chunk), out);
+                    chunk.clear();
+                }
+                token = parser.nextToken();
+            }
+            if (!chunk.isEmpty()) {
+                write(urlMappingService.addLinks(chunk), out);
+            }
+        } catch (JsonProcessingException e) {
+            // Chunks already written stay committed; the error line tells the client where the stream stopped.
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            }
+            out.write(objectMapper.writeValueAsBytes(
+                    objectMapper.createObjectNode().put("message", e.getOriginalMessage())));
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Resolves several codes at once. Unknown codes are left out of the response.
+     */
+    @GetMapping(path = "/batch", params = "codes", produces = APPLICATION_JSON_VALUE)
+    public List<TinyUrlMapping> getLinks(@RequestParam List<String> codes) {
+        return urlMappingService.getLinks(codes);
+    }
+
+    private String readFullUrl(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (token == JsonToken.START_OBJECT) {
+            JsonNode fullUrl = parser.<JsonNode>readValueAsTree().get("fullUrl");
+            if (fullUrl != null && fullUrl.isTextual()) {
+                return fullUrl.asText();
+            }
+        }
+        throw new JsonParseException(parser, "Expected a URL string or an object with a fullUrl field");
+    }
+
+    private void write(List<TinyUrlMapping> mappings, OutputStream out) throws IOException {
+        for (TinyUrlMapping mapping : mappings) {
+            long start = System.nanoTime();
+            byte[] line = objectMapper.writeValueAsBytes(mapping);
+            ndjsonTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            out.write(line);
+            out.write('\n');
+        }
+        out.flush();
+    }
 }
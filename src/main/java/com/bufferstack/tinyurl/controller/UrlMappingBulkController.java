@@ -0,0 +1,61 @@
+package com.bufferstack.tinyurl.controller;
+
+import com.bufferstack.tinyurl.service.UrlMappingBulkTransfer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+
+/**
+ * Exports and imports every URL mapping through {@link UrlMappingBulkTransfer}. Exports are gzipped NDJSON; imports
+ * are gzipped when sent as {@code application/gzip} and plain NDJSON otherwise. Both require authentication, see
+ * {@code SecurityConfig}.
+ */
+@RestController
+@ConditionalOnProperty(value = "tinyurl.bulk.enabled", havingValue = "true")
+@RequestMapping("/admin/url-mappings")
+public class UrlMappingBulkController {
+
+    private static final String APPLICATION_GZIP_VALUE = "application/gzip";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UrlMappingBulkTransfer bulkTransfer;
+
+    public UrlMappingBulkController(UrlMappingBulkTransfer bulkTransfer) {
+        this.bulkTransfer = bulkTransfer;
+    }
+
+    @GetMapping(path = "/export", produces = APPLICATION_GZIP_VALUE)
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_GZIP_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"url_mapping.ndjson.gz\"");
+        GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream(), BUFFER_SIZE);
+        bulkTransfer.export(out);
+        out.finish();
+    }
+
+    @PostMapping(path = "/import", consumes = { APPLICATION_GZIP_VALUE, APPLICATION_NDJSON_VALUE })
+    public ResponseEntity<UrlMappingBulkTransfer.ImportResult> importMappings(HttpServletRequest request)
+            throws IOException {
+        InputStream in = request.getInputStream();
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.startsWith(APPLICATION_GZIP_VALUE)) {
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        UrlMappingBulkTransfer.ImportResult result = bulkTransfer.importFrom(in);
+        return ResponseEntity.status(result.getMessage() == null ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                .body(result);
+    }
+}
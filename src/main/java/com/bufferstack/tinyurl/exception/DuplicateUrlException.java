@@ -0,0 +1,8 @@
+package com.bufferstack.tinyurl.exception;
+
+public class DuplicateUrlException extends RuntimeException {
+
+    public DuplicateUrlException(String fullUrl) {
+        super("URL mapping already exists for: " + fullUrl);
+    }
+}
@@ -5,6 +5,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
@@ -24,4 +26,27 @@ public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionH
         ObjectNode errorPayload = objectMapper.createObjectNode().put("message", ex.getMessage());
         return handleExceptionInternal(ex, errorPayload, new HttpHeaders(), HttpStatus.NOT_FOUND, request);
     }
+
+    @ExceptionHandler(value = { StatsUnavailableException.class })
+    protected ResponseEntity<Object> handleStatsUnavailable(StatsUnavailableException ex, WebRequest request) {
+        ObjectNode errorPayload = objectMapper.createObjectNode().put("message", ex.getMessage());
+        return handleExceptionInternal(ex, errorPayload, new HttpHeaders(), HttpStatus.NOT_FOUND, request);
+    }
+
+    /**
+     * Reached through {@code SecurityProblemSupport} when a request to an authenticated path has no valid credentials.
+     */
+    @ExceptionHandler(value = { AuthenticationException.class })
+    protected ResponseEntity<Object> handleUnauthenticated(AuthenticationException ex, WebRequest request) {
+        ObjectNode errorPayload = objectMapper.createObjectNode().put("message", ex.getMessage());
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.WWW_AUTHENTICATE, "Basic realm=\"tinyurl\"");
+        return handleExceptionInternal(ex, errorPayload, headers, HttpStatus.UNAUTHORIZED, request);
+    }
+
+    @ExceptionHandler(value = { AccessDeniedException.class })
+    protected ResponseEntity<Object> handleAccessDenied(AccessDeniedException ex, WebRequest request) {
+        ObjectNode errorPayload = objectMapper.createObjectNode().put("message", ex.getMessage());
+        return handleExceptionInternal(ex, errorPayload, new HttpHeaders(), HttpStatus.FORBIDDEN, request);
+    }
 }
@@ -0,0 +1,8 @@
+package com.bufferstack.tinyurl.exception;
+
+public class StatsUnavailableException extends RuntimeException {
+
+    public StatsUnavailableException() {
+        super("Hit statistics are only kept with the POSTGRES url mapping store");
+    }
+}
@@ -0,0 +1,200 @@
+package com.bufferstack.tinyurl.generator;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Turns numeric identifiers into short codes over a configurable alphabet and back.
+ *
+ * <p>When {@code shuffleBits} is positive, the low {@code shuffleBits} bits of an identifier are run through a
+ * bijective permutation (xor with a salt, multiply by an odd constant, xor-shift, multiply) before encoding, so that
+ * consecutive identifiers do not produce consecutive codes. Identifiers below {@code 2^shuffleBits} stay below it, which
+ * keeps the code length bounded.
+ */
+public class CodeEncoder {
+
+    public static final long INVALID = -1L;
+
+    public static final String DECIMAL = "0123456789";
+
+    public static final String BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final long INVERSE = inverse(MULTIPLIER);
+
+    private final char[] alphabet;
+    private final int[] digits = new int[128];
+    private final int base;
+    private final int maxLength;
+
+    private final int shuffleBits;
+    private final int shuffleShift;
+    private final long shuffleMask;
+    private final long shuffleSalt;
+
+    private final ThreadLocal<char[]> buffers;
+
+    private CodeEncoder(String alphabet, int shuffleBits, long shuffleSalt) {
+        this.alphabet = alphabet.toCharArray();
+        this.base = this.alphabet.length;
+        this.maxLength = (int) Math.ceil(63 / (Math.log(base) / Math.log(2)));
+        this.buffers = ThreadLocal.withInitial(() -> new char[maxLength]);
+
+        Arrays.fill(digits, -1);
+        for (int i = 0; i < this.alphabet.length; i++) {
+            char c = this.alphabet[i];
+            if (c >= digits.length || digits[c] != -1) {
+                throw new IllegalArgumentException("Alphabet must consist of unique ASCII characters: " + alphabet);
+            }
+            digits[c] = i;
+        }
+
+        this.shuffleBits = shuffleBits;
+        this.shuffleShift = (shuffleBits + 1) / 2;
+        this.shuffleMask = shuffleBits == 0 ? 0L : -1L >>> (64 - shuffleBits);
+        this.shuffleSalt = shuffleSalt & shuffleMask;
+    }
+
+    public String encode(long id) {
+        char[] buffer = buffers.get();
+        int offset = encode(id, buffer);
+        return new String(buffer, offset, buffer.length - offset);
+    }
+
+    /**
+     * Writes the code for a non-negative {@code id} right-aligned into {@code buffer} and returns the offset of its first
+     * character. The buffer must hold at least {@link #maxLength()} characters.
+     */
+    public int encode(long id, char[] buffer) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Identifier must not be negative: " + id);
+        }
+        long value = shuffle(id);
+        int position = buffer.length;
+        do {
+            long quotient = value / base;
+            buffer[--position] = alphabet[(int) (value - quotient * base)];
+            value = quotient;
+        } while (value != 0);
+        return position;
+    }
+
+    /**
+     * Returns the identifier behind {@code code}, or {@link #INVALID} if the code cannot have been produced by this
+     * encoder.
+     */
+    public long decode(CharSequence code) {
+        int length = code.length();
+        if (length == 0 || length > maxLength) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            int digit = c < digits.length ? digits[c] : -1;
+            if (digit < 0 || value > (Long.MAX_VALUE - digit) / base) {
+                return INVALID;
+            }
+            value = value * base + digit;
+        }
+        return unshuffle(value);
+    }
+
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns a hash of the alphabet and shuffle settings, which together decide what identifier a code stands for, so
+     * that data keyed by identifier can tell whether it was written under the same settings.
+     */
+    public long fingerprint() {
+        return Hashing.murmur3_128().newHasher()
+                .putString(new String(alphabet), StandardCharsets.US_ASCII)
+                .putInt(shuffleBits)
+                .putLong(shuffleSalt)
+                .hash()
+                .asLong();
+    }
+
+    /**
+     * Returns a regular expression matching the non-empty strings over this encoder's alphabet, which every code it
+     * produces is, for routing and security rules that should only apply to codes.
+     */
+    public String pattern() {
+        StringBuilder pattern = new StringBuilder("[");
+        for (char c : alphabet) {
+            if (!Character.isLetterOrDigit(c)) {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append("]+").toString();
+    }
+
+    private long shuffle(long id) {
+        if (shuffleBits == 0) {
+            return id;
+        }
+        long low = (id & shuffleMask) ^ shuffleSalt;
+        low = (low * MULTIPLIER) & shuffleMask;
+        low ^= low >>> shuffleShift;
+        low = (low * MULTIPLIER) & shuffleMask;
+        return (id & ~shuffleMask) | low;
+    }
+
+    private long unshuffle(long value) {
+        if (shuffleBits == 0) {
+            return value;
+        }
+        long low = (value & shuffleMask) * INVERSE & shuffleMask;
+        low ^= low >>> shuffleShift;
+        low = (low * INVERSE & shuffleMask) ^ shuffleSalt;
+        return (value & ~shuffleMask) | low;
+    }
+
+    private static long inverse(long multiplier) {
+        long inverse = multiplier;
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - multiplier * inverse;
+        }
+        return inverse;
+    }
+
+    public static class CodeEncoderBuilder {
+
+        private String alphabet = BASE62;
+        private int shuffleBits;
+        private long shuffleSalt;
+
+        public static CodeEncoderBuilder builder() {
+            return new CodeEncoderBuilder();
+        }
+
+        public CodeEncoderBuilder withAlphabet(String alphabet) {
+            this.alphabet = alphabet;
+            return this;
+        }
+
+        public CodeEncoderBuilder withShuffleBits(int shuffleBits) {
+            this.shuffleBits = shuffleBits;
+            return this;
+        }
+
+        public CodeEncoderBuilder withShuffleSalt(long shuffleSalt) {
+            this.shuffleSalt = shuffleSalt;
+            return this;
+        }
+
+        public CodeEncoder build() {
+            if (alphabet == null || alphabet.length() < 2) {
+                throw new IllegalArgumentException("Alphabet must have at least two characters");
+            }
+            if (shuffleBits < 0 || shuffleBits > 63) {
+                throw new IllegalArgumentException("Shuffle bits must be between 0 and 63: " + shuffleBits);
+            }
+            return new CodeEncoder(alphabet, shuffleBits, shuffleSalt);
+        }
+    }
+}
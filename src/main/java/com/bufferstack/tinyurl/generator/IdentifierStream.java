@@ -1,8 +1,45 @@
 package com.bufferstack.tinyurl.generator;
 
-public interface IdentifierStream<T> {
+import java.util.ArrayList;
+import java.util.List;
+
+public interface IdentifierStream<T> extends AutoCloseable {
 
     T next();
 
+    /**
+     * Returns the next {@code count} identifiers. Implementations that hand out identifiers from reserved ranges
+     * override this to claim them in as few steps as possible.
+     */
+    default List<T> next(int count) {
+        List<T> identifiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            identifiers.add(next());
+        }
+        return identifiers;
+    }
+
     boolean ready();
+
+    /**
+     * Returns how many identifiers can still be handed out without reaching the coordinator, or {@code -1} when the
+     * stream does not hand them out from reserved ranges.
+     */
+    default long runway() {
+        return -1;
+    }
+
+    /**
+     * Makes sure that no identifier up to and including {@code identifier} is handed out from now on, because a
+     * mapping was added with it from elsewhere, such as an import.
+     *
+     * @throws UnsupportedOperationException if the stream cannot rule out handing out {@code identifier}
+     */
+    default void advancePast(long identifier) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot skip identifiers");
+    }
+
+    @Override
+    default void close() {
+    }
 }
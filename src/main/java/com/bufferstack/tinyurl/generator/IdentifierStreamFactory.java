@@ -1,7 +1,10 @@
 package com.bufferstack.tinyurl.generator;
 
 import com.bufferstack.tinyurl.zookeeper.ZkIdentifierStream;
+import com.bufferstack.tinyurl.zookeeper.ZkSnowflakeIdentifierStream;
 import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
 import org.apache.curator.framework.CuratorFramework;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -10,26 +13,65 @@ import org.springframework.stereotype.Component;
 public class IdentifierStreamFactory {
 
     private final int reservationSize;
+    private final int lowWaterMark;
+    private final int minReservationSize;
+    private final int maxReservationSize;
+    private final Duration reservationHeadroom;
+    private final int bufferBlocks;
+    private final String bufferFile;
+    private final long maxDriftMillis;
     private final String identifierStreamName;
     private final CuratorFramework zkClient;
+    private final Clock clock;
     private final MeterRegistry registry;
 
     public IdentifierStreamFactory(@Value("${tinyurl.reservation-size:0}") int reservationSize,
+                                   @Value("${tinyurl.reservation-low-water-mark:0}") int lowWaterMark,
+                                   @Value("${tinyurl.reservation-min-size:0}") int minReservationSize,
+                                   @Value("${tinyurl.reservation-max-size:0}") int maxReservationSize,
+                                   @Value("${tinyurl.reservation-headroom:0s}") Duration reservationHeadroom,
+                                   @Value("${tinyurl.reservation-buffer-blocks:0}") int bufferBlocks,
+                                   @Value("${tinyurl.reservation-buffer-file:}") String bufferFile,
+                                   @Value("${tinyurl.snowflake.max-drift-millis:5000}") long maxDriftMillis,
                                    @Value("${tinyurl.identifier-stream}") String identifierStreamName,
-                                   CuratorFramework zkClient, MeterRegistry registry) {
+                                   CuratorFramework zkClient, Clock clock, MeterRegistry registry) {
         this.reservationSize = reservationSize;
+        this.lowWaterMark = lowWaterMark;
+        this.minReservationSize = minReservationSize;
+        this.maxReservationSize = maxReservationSize;
+        this.reservationHeadroom = reservationHeadroom;
+        this.bufferBlocks = bufferBlocks;
+        this.bufferFile = bufferFile;
+        this.maxDriftMillis = maxDriftMillis;
         this.identifierStreamName = identifierStreamName;
         this.zkClient = zkClient;
+        this.clock = clock;
         this.registry = registry;
     }
 
     public IdentifierStream<?> getIdentifierStream() {
         if ("ZK".equalsIgnoreCase(identifierStreamName)) {
-            return ZkIdentifierStream.ZkIdentifierStreamBuilder.builder()
+            return new TimedIdentifierStream<>(ZkIdentifierStream.ZkIdentifierStreamBuilder.builder()
                     .withReservationSize(reservationSize)
+                    .withLowWaterMark(lowWaterMark)
+                    .withMinReservationSize(minReservationSize)
+                    .withMaxReservationSize(maxReservationSize)
+                    .withHeadroom(reservationHeadroom)
+                    .withBufferBlocks(bufferBlocks)
+                    .withBufferFile(bufferFile)
+                    .withClock(clock)
                     .withZkClient(zkClient)
                     .withMeterRegistry(registry)
-                    .build();
+                    .build(), registry);
+        }
+
+        if ("SNOWFLAKE".equalsIgnoreCase(identifierStreamName)) {
+            return new TimedIdentifierStream<>(ZkSnowflakeIdentifierStream.ZkSnowflakeIdentifierStreamBuilder.builder()
+                    .withZkClient(zkClient)
+                    .withClock(clock)
+                    .withMaxDriftMillis(maxDriftMillis)
+                    .withMeterRegistry(registry)
+                    .build(), registry);
         }
 
         throw new RuntimeException("Unable to build an identifier stream " + identifierStreamName);
@@ -0,0 +1,53 @@
+package com.bufferstack.tinyurl.generator;
+
+import com.bufferstack.tinyurl.utils.StageTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+
+/**
+ * Times the identifiers taken from another stream as the {@code identifier} stage of {@link StageTimers}. Most are
+ * handed out from memory, so the tail of this timer shows the callers that waited for a block or a lease.
+ */
+public class TimedIdentifierStream<T> implements IdentifierStream<T> {
+
+    private final IdentifierStream<T> identifierStream;
+    private final Timer nextTimer;
+    private final Timer nextBatchTimer;
+
+    public TimedIdentifierStream(IdentifierStream<T> identifierStream, MeterRegistry registry) {
+        this.identifierStream = identifierStream;
+        nextTimer = StageTimers.register(registry, "identifier", "next");
+        nextBatchTimer = StageTimers.register(registry, "identifier", "nextBatch");
+    }
+
+    @Override
+    public T next() {
+        return nextTimer.record(() -> identifierStream.next());
+    }
+
+    @Override
+    public List<T> next(int count) {
+        return nextBatchTimer.record(() -> identifierStream.next(count));
+    }
+
+    @Override
+    public boolean ready() {
+        return identifierStream.ready();
+    }
+
+    @Override
+    public long runway() {
+        return identifierStream.runway();
+    }
+
+    @Override
+    public void advancePast(long identifier) {
+        identifierStream.advancePast(identifier);
+    }
+
+    @Override
+    public void close() {
+        identifierStream.close();
+    }
+}
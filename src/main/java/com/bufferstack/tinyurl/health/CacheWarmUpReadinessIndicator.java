@@ -0,0 +1,29 @@
+package com.bufferstack.tinyurl.health;
+
+import com.bufferstack.tinyurl.cache.UrlMappingCacheWarmer;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CacheWarmUpReadinessIndicator extends AbstractHealthIndicator {
+
+    public CacheWarmUpReadinessIndicator(UrlMappingCacheWarmer cacheWarmer) {
+        this.cacheWarmer = cacheWarmer;
+    }
+
+    private final UrlMappingCacheWarmer cacheWarmer;
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        long target = cacheWarmer.target();
+        if (target >= 0) {
+            builder.withDetail("loaded", cacheWarmer.loaded()).withDetail("target", target);
+        }
+        if (cacheWarmer.ready()) {
+            builder.up();
+        } else {
+            builder.down();
+        }
+    }
+}
@@ -16,6 +16,10 @@ public class IdentifierStreamReadinessIndicator extends AbstractHealthIndicator
 
     @Override
     protected void doHealthCheck(Health.Builder builder) throws Exception {
+        long runway = identifierStream.runway();
+        if (runway >= 0) {
+            builder.withDetail("runway", runway);
+        }
         if (identifierStream.ready()) {
             builder.up();
         } else {
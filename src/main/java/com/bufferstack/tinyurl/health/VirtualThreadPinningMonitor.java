@@ -0,0 +1,80 @@
+package com.bufferstack.tinyurl.health;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the JFR events emitted when a virtual thread blocks while pinned to its carrier (inside a
+ * {@code synchronized} block or a native frame) and publishes them as {@code virtualThreads.pinned}. A count that stays
+ * at zero under load shows that the blocking paths park their virtual thread rather than its carrier. The first time
+ * a call site pins, its stack trace is logged.
+ */
+public class VirtualThreadPinningMonitor implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String SUBMIT_FAILED_EVENT = "jdk.VirtualThreadSubmitFailed";
+    private static final int LOGGED_FRAMES = 12;
+
+    private final RecordingStream recordingStream = new RecordingStream();
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+
+    private final Timer pinnedTimer;
+    private final Counter submitFailedCounter;
+
+    public VirtualThreadPinningMonitor(Duration threshold, MeterRegistry registry) {
+        pinnedTimer = Timer.builder("virtualThreads.pinned")
+                .description("Time virtual threads spent blocked while pinned to their carrier")
+                .register(registry);
+        submitFailedCounter = Counter.builder("virtualThreads.submitFailed")
+                .register(registry);
+
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.enable(SUBMIT_FAILED_EVENT);
+        recordingStream.onEvent(PINNED_EVENT, this::pinned);
+        recordingStream.onEvent(SUBMIT_FAILED_EVENT, event -> submitFailedCounter.increment());
+    }
+
+    public void start() {
+        recordingStream.startAsync();
+    }
+
+    @Override
+    public void close() {
+        recordingStream.close();
+    }
+
+    private void pinned(RecordedEvent event) {
+        pinnedTimer.record(event.getDuration());
+
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return;
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        if (reportedSites.add(describe(frames.get(0)))) {
+            logger.warn("Virtual thread pinned for {} at\n\t{}", event.getDuration(), frames.stream()
+                    .limit(LOGGED_FRAMES)
+                    .map(VirtualThreadPinningMonitor::describe)
+                    .collect(Collectors.joining("\n\t")));
+        }
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+}
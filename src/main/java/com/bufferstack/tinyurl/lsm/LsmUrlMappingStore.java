@@ -0,0 +1,788 @@
+package com.bufferstack.tinyurl.lsm;
+
+import com.bufferstack.tinyurl.exception.DuplicateUrlException;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.store.UrlMappingRow;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+
+/**
+ * Embedded log-structured store of URL mappings, for deployments that serve redirects without a database. It holds
+ * two kinds of keys: {@code 'c' + code} mapping to {@code (epoch second, nano, UTF-8 full URL)}, and
+ * {@code 'h' + full URL hash} mapping to the code holding the hash.
+ *
+ * <p>Writes are serialized: each is appended to the {@link WriteAheadLog} and put into the memtable, a sorted in-memory
+ * map, and once the memtable holds {@code memtableBytes} it is swapped for an empty one, along with the log, and
+ * written out as a new {@link SsTable} by a background thread, so that the disk only ever sees sequential writes and
+ * writes do not wait for it. The full memtable stays readable until its table replaces it; a write that fills the next
+ * memtable before then waits for it. A mapping's record is logged before its hash's, so a write cut short cannot leave
+ * a hash pointing at a missing mapping. Point lookups take no locks: they read the memtables and then the tables,
+ * newest first, most of which a lookup skips after checking their Bloom filter. Once more than {@code maxTables} tables
+ * are smaller than {@code tableBytes}, a background thread merges them into tables of up to {@code tableBytes}, which
+ * are not merged again. Mappings never change or go away, so tables never hold conflicting values for a key, and a
+ * table can be read without regard to which tables are newer, which is why a write that would put an existing code
+ * again is refused whole.
+ */
+public class LsmUrlMappingStore implements UrlMappingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LsmUrlMappingStore.class);
+
+    private static final byte CODE = 'c';
+    private static final byte HASH = 'h';
+    private static final String TABLE_SUFFIX = ".sst";
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long memtableBytes;
+    private final int maxTables;
+    private final long tableBytes;
+    private final double fpp;
+    private final boolean sync;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition flushed = writeLock.newCondition();
+    private final ExecutorService compactor;
+
+    private volatile State state;
+    private volatile long memtableSize;
+    private WriteAheadLog log;
+    private WriteAheadLog immutableLog;
+    private long immutableSequence;
+    private long nextSequence;
+    private boolean flushing;
+    private Exception flushFailure;
+    private boolean compacting;
+
+    private final Timer flushTimer;
+    private final Counter flushExceptionCounter;
+    private final Timer compactionTimer;
+    private final Counter compactionExceptionCounter;
+
+    LsmUrlMappingStore(Path directory, long memtableBytes, int maxTables, long tableBytes, double fpp, boolean sync,
+                       MeterRegistry registry) {
+        this.directory = directory;
+        this.memtableBytes = memtableBytes;
+        this.maxTables = maxTables;
+        this.tableBytes = Math.min(tableBytes, SsTable.MAX_BYTES / 2);
+        this.fpp = fpp;
+        this.sync = sync;
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lsm-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("lsmStore.tables", this, store -> store.state == null ? 0 : store.state.tables.size())
+                .register(registry);
+        Gauge.builder("lsmStore.memtableBytes", this, store -> store.memtableSize)
+                .register(registry);
+        flushTimer = Timer.builder("lsmStore.flush")
+                .register(registry);
+        flushExceptionCounter = Counter.builder("lsmStore.flush")
+                .tag("result", "exception")
+                .register(registry);
+        compactionTimer = Timer.builder("lsmStore.compaction")
+                .register(registry);
+        compactionExceptionCounter = Counter.builder("lsmStore.compaction")
+                .tag("result", "exception")
+                .register(registry);
+    }
+
+    /**
+     * Opens the tables in {@code directory} and replays the write-ahead logs left behind into a new table.
+     */
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        List<SsTable> tables = new ArrayList<>();
+        List<Path> logs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.endsWith(TABLE_SUFFIX)) {
+                    tables.add(SsTable.open(file, sequence(name, "", TABLE_SUFFIX)));
+                } else if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX)) {
+                    logs.add(file);
+                }
+            }
+        }
+        tables.sort(Comparator.comparingLong(SsTable::sequence).reversed());
+        logs.sort(Comparator.comparingLong(file -> sequence(file.getFileName().toString(), LOG_PREFIX, LOG_SUFFIX)));
+        nextSequence = Stream.concat(tables.stream().map(SsTable::sequence),
+                logs.stream().map(file -> sequence(file.getFileName().toString(), LOG_PREFIX, LOG_SUFFIX)))
+                .mapToLong(Long::longValue).max().orElse(0) + 1;
+
+        state = new State(newMemtable(), null, tables);
+        for (Path file : logs) {
+            WriteAheadLog.replay(file, this::putInMemtable);
+        }
+        if (!state.memtable.isEmpty()) {
+            SsTable table = writeTable(state.memtable, nextSequence++);
+            state = new State(newMemtable(), null, prepend(table, state.tables));
+            memtableSize = 0;
+        }
+        for (Path file : logs) {
+            Files.delete(file);
+        }
+        log = new WriteAheadLog(logPath(nextSequence++), sync);
+        logger.info("Opened LSM store in {} with {} tables", directory, state.tables.size());
+        compactIfNeeded();
+    }
+
+    @Override
+    public TinyUrlMapping find(String code) {
+        byte[] value = get(codeKey(code));
+        return value == null ? null : toMapping(code, value);
+    }
+
+    @Override
+    public List<TinyUrlMapping> findAll(Collection<String> codes) {
+        List<TinyUrlMapping> mappings = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            TinyUrlMapping mapping = find(code);
+            if (mapping != null) {
+                mappings.add(mapping);
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Always current, since writes are visible as soon as they return.
+     */
+    @Override
+    public TinyUrlMapping findByHash(byte[] fullUrlHash, boolean current) {
+        byte[] code = get(hashKey(fullUrlHash));
+        return code == null ? null : find(new String(code, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void insert(String code, String fullUrl, byte[] fullUrlHash, OffsetDateTime createdAt) {
+        Set<String> skipped = insertAll(List.of(new UrlMappingRow(code, fullUrl, fullUrlHash, createdAt)));
+        if (!skipped.isEmpty()) {
+            throw new DuplicateUrlException(fullUrl);
+        }
+    }
+
+    @Override
+    public Set<String> insertAll(List<UrlMappingRow> rows) {
+        Set<String> skipped = new HashSet<>();
+        List<byte[]> keys = new ArrayList<>(rows.size() * 2);
+        List<byte[]> values = new ArrayList<>(rows.size() * 2);
+        writeLock.lock();
+        try {
+            Set<String> codes = new HashSet<>();
+            for (UrlMappingRow row : rows) {
+                if (!codes.add(row.getCode()) || get(codeKey(row.getCode())) != null) {
+                    throw new DuplicateKeyException("A mapping with code " + row.getCode() + " already exists");
+                }
+            }
+            Set<ByteBuffer> claimed = new HashSet<>();
+            for (UrlMappingRow row : rows) {
+                byte[] hashKey = row.getFullUrlHash() == null ? null : hashKey(row.getFullUrlHash());
+                if (hashKey != null && (!claimed.add(ByteBuffer.wrap(hashKey)) || get(hashKey) != null)) {
+                    skipped.add(row.getCode());
+                    continue;
+                }
+                keys.add(codeKey(row.getCode()));
+                values.add(codeValue(row));
+                if (hashKey != null) {
+                    keys.add(hashKey);
+                    values.add(row.getCode().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            if (!keys.isEmpty()) {
+                write(keys, values);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return skipped;
+    }
+
+    /**
+     * Reads the memtable and the tables as they were when the scan started. A memtable flushed meanwhile is still
+     * readable, and a table compacted away keeps its mapping, which outlives the file.
+     */
+    @Override
+    public void scan(Consumer<TinyUrlMapping> consumer) {
+        State current = state;
+        scan(current.memtable.entrySet().iterator(), consumer);
+        if (current.immutable != null) {
+            scan(current.immutable.entrySet().iterator(), consumer);
+        }
+        scan(merge(current.tables), consumer);
+    }
+
+    /**
+     * Scans everything, as mappings are not ordered by creation time.
+     */
+    @Override
+    public void scanCreatedSince(Instant since, Consumer<TinyUrlMapping> consumer) {
+        scan(mapping -> {
+            if (!mapping.getCreatedAt().isBefore(since)) {
+                consumer.accept(mapping);
+            }
+        });
+    }
+
+    /**
+     * Always {@code false}: the store is only ever opened by one instance.
+     */
+    @Override
+    public boolean shared() {
+        return false;
+    }
+
+    /**
+     * Writes the memtables out, so that a restart does not need to replay the logs, and stops compacting.
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            compactor.shutdown();
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            try {
+                // A flush still running past the wait leaves its log behind, to be replayed on the next start.
+                if (state.immutable != null && !flushing) {
+                    SsTable table = writeTable(state.immutable, immutableSequence);
+                    state = new State(state.memtable, null, prepend(table, state.tables));
+                    Files.delete(immutableLog.path());
+                    immutableLog = null;
+                }
+                if (!state.memtable.isEmpty()) {
+                    SsTable table = writeTable(state.memtable, nextSequence++);
+                    state = new State(newMemtable(), state.immutable, prepend(table, state.tables));
+                    memtableSize = 0;
+                }
+                log.close();
+                Files.deleteIfExists(log.path());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @VisibleForTesting
+    int tables() {
+        return state.tables.size();
+    }
+
+    /**
+     * Waits for the flush and the compaction in progress, if any.
+     */
+    @VisibleForTesting
+    void awaitBackgroundWork() throws InterruptedException {
+        while (true) {
+            writeLock.lock();
+            try {
+                if (!flushing && !compacting) {
+                    return;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private byte[] get(byte[] key) {
+        State current = state;
+        byte[] value = current.memtable.get(key);
+        if (value != null) {
+            return value;
+        }
+        if (current.immutable != null) {
+            value = current.immutable.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        for (SsTable table : current.tables) {
+            value = table.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private void write(List<byte[]> keys, List<byte[]> values) {
+        try {
+            if (memtableSize >= memtableBytes) {
+                rotate();
+            }
+            log.append(keys, values);
+            for (int i = 0; i < keys.size(); i++) {
+                putInMemtable(keys.get(i), values.get(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void putInMemtable(byte[] key, byte[] value) {
+        state.memtable.put(key, value);
+        memtableSize += key.length + value.length;
+    }
+
+    /**
+     * Starts a new memtable and log, and has the compactor thread write the full memtable out. The previous one must
+     * have been written out first; when its flush is still running the caller waits for it, and when it failed the
+     * caller retries it once and fails in turn if it fails again, before anything was logged.
+     */
+    private void rotate() throws IOException {
+        if (state.immutable != null) {
+            if (!flushing) {
+                compactor.execute(this::flushImmutable);
+                flushing = true;
+            }
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            if (state.immutable != null) {
+                throw new IllegalStateException("Unable to flush the memtable of the LSM store in " + directory,
+                        flushFailure);
+            }
+        }
+        WriteAheadLog previous = log;
+        log = new WriteAheadLog(logPath(nextSequence++), sync);
+        previous.close();
+        immutableLog = previous;
+        immutableSequence = nextSequence++;
+        state = new State(newMemtable(), state.memtable, state.tables);
+        memtableSize = 0;
+        compactor.execute(this::flushImmutable);
+        flushing = true;
+    }
+
+    /**
+     * Writes the immutable memtable out and replaces it with its table, then deletes its log. Runs on the compactor
+     * thread, and only one at a time, so the memtable and its log cannot change underneath.
+     */
+    private void flushImmutable() {
+        SsTable table;
+        try {
+            table = writeTable(state.immutable, immutableSequence);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to flush the memtable of the LSM store in {}", directory, e);
+            flushExceptionCounter.increment();
+            writeLock.lock();
+            try {
+                flushing = false;
+                flushFailure = e;
+                flushed.signalAll();
+            } finally {
+                writeLock.unlock();
+            }
+            return;
+        }
+        Path previous = immutableLog.path();
+        writeLock.lock();
+        try {
+            state = new State(state.memtable, null, prepend(table, state.tables));
+            immutableLog = null;
+            flushing = false;
+            flushFailure = null;
+            flushed.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            Files.delete(previous);
+        } catch (IOException e) {
+            logger.warn("Unable to delete flushed log {}", previous, e);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Writes {@code memtable} out as the table numbered {@code sequence}, and syncs the directory so that the table is
+     * there after a crash once the log holding the same writes is deleted.
+     */
+    private SsTable writeTable(ConcurrentSkipListMap<byte[], byte[]> memtable, long sequence) throws IOException {
+        SsTable table;
+        try {
+            table = flushTimer.recordCallable(() -> SsTable.write(tablePath(sequence), sequence,
+                    memtable.entrySet().iterator(), memtable.size(), fpp));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        syncDirectory();
+        return table;
+    }
+
+    /**
+     * Forces the renames of new tables to disk, which syncing the tables themselves does not.
+     */
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void compactIfNeeded() {
+        writeLock.lock();
+        try {
+            if (compacting || compactor.isShutdown() || candidates(state.tables).size() <= maxTables) {
+                return;
+            }
+            compacting = true;
+            compactor.execute(this::compactRound);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs one round of compaction and queues the next, behind any flush queued meanwhile, until few enough tables
+     * are left. The tables those flushes add are merged in the later rounds.
+     */
+    private void compactRound() {
+        try {
+            compactionTimer.record(this::compact);
+        } catch (RuntimeException e) {
+            logger.error("Unable to compact LSM store in {}", directory, e);
+            compactionExceptionCounter.increment();
+            writeLock.lock();
+            try {
+                compacting = false;
+            } finally {
+                writeLock.unlock();
+            }
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (compactor.isShutdown() || candidates(state.tables).size() <= maxTables) {
+                compacting = false;
+            } else {
+                compactor.execute(this::compactRound);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Merges the tables smaller than {@code tableBytes} into as few tables as fit in {@code tableBytes} each.
+     */
+    private void compact() {
+        List<SsTable> inputs = candidates(state.tables);
+        PeekingIterator<Map.Entry<byte[], byte[]>> merged = Iterators.peekingIterator(merge(inputs));
+        long expectedEntries = inputs.stream().mapToLong(SsTable::count).sum();
+        List<SsTable> outputs = new ArrayList<>();
+        try {
+            while (merged.hasNext()) {
+                long sequence;
+                writeLock.lock();
+                try {
+                    sequence = nextSequence++;
+                } finally {
+                    writeLock.unlock();
+                }
+                outputs.add(SsTable.write(tablePath(sequence), sequence, limit(merged, tableBytes), expectedEntries,
+                        fpp));
+            }
+            syncDirectory();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        writeLock.lock();
+        try {
+            List<SsTable> tables = new ArrayList<>(state.tables);
+            tables.removeAll(inputs);
+            tables.addAll(outputs);
+            tables.sort(Comparator.comparingLong(SsTable::sequence).reversed());
+            state = new State(state.memtable, state.immutable, tables);
+        } finally {
+            writeLock.unlock();
+        }
+        // Lookups still reading an input keep its mapping, which outlives the file.
+        for (SsTable input : inputs) {
+            try {
+                Files.delete(input.path());
+            } catch (IOException e) {
+                logger.warn("Unable to delete compacted table {}", input.path(), e);
+            }
+        }
+        logger.info("Compacted {} tables into {}", inputs.size(), outputs.size());
+    }
+
+    private List<SsTable> candidates(List<SsTable> tables) {
+        return tables.stream().filter(table -> table.sizeBytes() < tableBytes).collect(Collectors.toList());
+    }
+
+    /**
+     * Merges the tables into one iteration in key order. Keys held by several tables, which only happens when a table
+     * or log was written out twice around a crash, are returned once.
+     */
+    private static Iterator<Map.Entry<byte[], byte[]>> merge(List<SsTable> tables) {
+        Comparator<PeekingIterator<Map.Entry<byte[], byte[]>>> byKey =
+                (left, right) -> Arrays.compareUnsigned(left.peek().getKey(), right.peek().getKey());
+        PriorityQueue<PeekingIterator<Map.Entry<byte[], byte[]>>> heads = new PriorityQueue<>(byKey);
+        for (SsTable table : tables) {
+            PeekingIterator<Map.Entry<byte[], byte[]>> iterator = Iterators.peekingIterator(table.iterator());
+            if (iterator.hasNext()) {
+                heads.add(iterator);
+            }
+        }
+        return new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (heads.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                PeekingIterator<Map.Entry<byte[], byte[]>> head = heads.poll();
+                Map.Entry<byte[], byte[]> entry = head.next();
+                if (head.hasNext()) {
+                    heads.add(head);
+                }
+                while (!heads.isEmpty() && Arrays.equals(heads.peek().peek().getKey(), entry.getKey())) {
+                    PeekingIterator<Map.Entry<byte[], byte[]>> duplicate = heads.poll();
+                    duplicate.next();
+                    if (duplicate.hasNext()) {
+                        heads.add(duplicate);
+                    }
+                }
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Passes the mappings among {@code entries}, which are in key order, to {@code consumer}; code keys sort before
+     * hash keys, so it stops at the first hash key.
+     */
+    private static void scan(Iterator<Map.Entry<byte[], byte[]>> entries, Consumer<TinyUrlMapping> consumer) {
+        while (entries.hasNext()) {
+            Map.Entry<byte[], byte[]> entry = entries.next();
+            byte[] key = entry.getKey();
+            if (key[0] != CODE) {
+                return;
+            }
+            consumer.accept(toMapping(new String(key, 1, key.length - 1, StandardCharsets.UTF_8), entry.getValue()));
+        }
+    }
+
+    /**
+     * Returns the entries of {@code entries} up to and including the one reaching {@code bytes}, leaving the rest.
+     */
+    private static Iterator<Map.Entry<byte[], byte[]>> limit(Iterator<Map.Entry<byte[], byte[]>> entries,
+                                                             long bytes) {
+        return new Iterator<>() {
+
+            private long written;
+
+            @Override
+            public boolean hasNext() {
+                return written < bytes && entries.hasNext();
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<byte[], byte[]> entry = entries.next();
+                written += 8 + entry.getKey().length + entry.getValue().length;
+                return entry;
+            }
+        };
+    }
+
+    private Path tablePath(long sequence) {
+        return directory.resolve(String.format("%019d%s", sequence, TABLE_SUFFIX));
+    }
+
+    private Path logPath(long sequence) {
+        return directory.resolve(String.format("%s%019d%s", LOG_PREFIX, sequence, LOG_SUFFIX));
+    }
+
+    private static long sequence(String name, String prefix, String suffix) {
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static ConcurrentSkipListMap<byte[], byte[]> newMemtable() {
+        return new ConcurrentSkipListMap<>(Arrays::compareUnsigned);
+    }
+
+    private static byte[] codeKey(String code) {
+        byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+        byte[] key = new byte[bytes.length + 1];
+        key[0] = CODE;
+        System.arraycopy(bytes, 0, key, 1, bytes.length);
+        return key;
+    }
+
+    private static byte[] hashKey(byte[] fullUrlHash) {
+        byte[] key = new byte[fullUrlHash.length + 1];
+        key[0] = HASH;
+        System.arraycopy(fullUrlHash, 0, key, 1, fullUrlHash.length);
+        return key;
+    }
+
+    private static byte[] codeValue(UrlMappingRow row) {
+        byte[] fullUrl = row.getFullUrl().getBytes(StandardCharsets.UTF_8);
+        Instant createdAt = row.getCreatedAt().toInstant();
+        return ByteBuffer.allocate(12 + fullUrl.length)
+                .putLong(createdAt.getEpochSecond())
+                .putInt(createdAt.getNano())
+                .put(fullUrl)
+                .array();
+    }
+
+    private static TinyUrlMapping toMapping(String code, byte[] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        Instant createdAt = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+        return new TinyUrlMapping(code, new String(value, 12, value.length - 12, StandardCharsets.UTF_8), createdAt);
+    }
+
+    private static List<SsTable> prepend(SsTable table, List<SsTable> tables) {
+        List<SsTable> prepended = new ArrayList<>(tables.size() + 1);
+        prepended.add(table);
+        prepended.addAll(tables);
+        return prepended;
+    }
+
+    /**
+     * The memtable, the full memtable being written out if any, and the tables, newest first, replaced as a whole so
+     * that lookups see them consistently.
+     */
+    private static final class State {
+
+        private final ConcurrentSkipListMap<byte[], byte[]> memtable;
+        private final ConcurrentSkipListMap<byte[], byte[]> immutable;
+        private final List<SsTable> tables;
+
+        private State(ConcurrentSkipListMap<byte[], byte[]> memtable, ConcurrentSkipListMap<byte[], byte[]> immutable,
+                      List<SsTable> tables) {
+            this.memtable = memtable;
+            this.immutable = immutable;
+            this.tables = tables;
+        }
+    }
+
+    public static class LsmUrlMappingStoreBuilder {
+
+        private Path directory;
+        private long memtableBytes;
+        private int maxTables;
+        private long tableBytes;
+        private double fpp;
+        private boolean sync;
+        private MeterRegistry registry;
+
+        public static LsmUrlMappingStoreBuilder builder() {
+            return new LsmUrlMappingStoreBuilder();
+        }
+
+        public LsmUrlMappingStoreBuilder withDirectory(String directory) {
+            this.directory = Paths.get(directory);
+            return this;
+        }
+
+        public LsmUrlMappingStoreBuilder withMemtableBytes(long memtableBytes) {
+            this.memtableBytes = memtableBytes;
+            return this;
+        }
+
+        public LsmUrlMappingStoreBuilder withMaxTables(int maxTables) {
+            this.maxTables = maxTables;
+            return this;
+        }
+
+        public LsmUrlMappingStoreBuilder withTableBytes(long tableBytes) {
+            this.tableBytes = tableBytes;
+            return this;
+        }
+
+        public LsmUrlMappingStoreBuilder withFpp(double fpp) {
+            this.fpp = fpp;
+            return this;
+        }
+
+        public LsmUrlMappingStoreBuilder withSync(boolean sync) {
+            this.sync = sync;
+            return this;
+        }
+
+        public LsmUrlMappingStoreBuilder withMeterRegistry(MeterRegistry registry) {
+            this.registry = registry;
+            return this;
+        }
+
+        public UrlMappingStore build() {
+            LsmUrlMappingStore store =
+                    new LsmUrlMappingStore(directory, memtableBytes, maxTables, tableBytes, fpp, sync, registry);
+            try {
+                store.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to open LSM store in " + directory, e);
+            }
+            return store;
+        }
+    }
+}
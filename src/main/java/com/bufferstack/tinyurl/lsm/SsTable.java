@@ -0,0 +1,233 @@
+package com.bufferstack.tinyurl.lsm;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable table of key-value pairs sorted by key, in one memory-mapped file. The file holds the records as
+ * {@code (key length, key, value length, value)}, then a sparse index of every {@link #INDEX_INTERVAL}th key and its
+ * record offset, then a Bloom filter of all keys, and ends with {@code (index offset, Bloom filter offset, record
+ * count, magic)}. Index and Bloom filter are read onto the heap when the table is opened.
+ *
+ * <p>A point lookup of a key the table does not hold usually ends at the Bloom filter. Otherwise it binary searches
+ * the index in memory and scans at most {@link #INDEX_INTERVAL} records of the mapped file, which, for a table in the
+ * page cache, involves no system call.
+ */
+final class SsTable {
+
+    static final int INDEX_INTERVAL = 16;
+    static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    private static final long MAGIC = 0x54696E794C736D31L; // "TinyLsm1"
+    private static final int FOOTER_BYTES = 8 + 8 + 4 + 8;
+
+    private final Path path;
+    private final long sequence;
+    private final MappedByteBuffer buffer;
+    private final int dataEnd;
+    private final int count;
+    private final byte[][] indexKeys;
+    private final int[] indexOffsets;
+    private final BloomFilter<byte[]> bloomFilter;
+
+    private SsTable(Path path, long sequence) throws IOException {
+        this.path = path;
+        this.sequence = sequence;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int footer = buffer.capacity() - FOOTER_BYTES;
+        if (footer < 0 || buffer.getLong(footer + 20) != MAGIC) {
+            throw new IOException("Not a table: " + path);
+        }
+        int indexOffset = (int) buffer.getLong(footer);
+        int bloomOffset = (int) buffer.getLong(footer + 8);
+        dataEnd = indexOffset;
+        count = buffer.getInt(footer + 16);
+
+        List<byte[]> keys = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        for (int position = indexOffset; position < bloomOffset; ) {
+            byte[] key = new byte[buffer.getInt(position)];
+            buffer.get(position + 4, key);
+            offsets.add(buffer.getInt(position + 4 + key.length));
+            keys.add(key);
+            position += 8 + key.length;
+        }
+        indexKeys = keys.toArray(new byte[0][]);
+        indexOffsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+
+        byte[] bloom = new byte[footer - bloomOffset];
+        buffer.get(bloomOffset, bloom);
+        bloomFilter = BloomFilter.readFrom(new ByteArrayInputStream(bloom), Funnels.byteArrayFunnel());
+    }
+
+    static SsTable open(Path path, long sequence) throws IOException {
+        return new SsTable(path, sequence);
+    }
+
+    /**
+     * Writes the {@code entries}, which must be sorted by key, to a new table at {@code path}. The table is written to
+     * a temporary file that is forced to disk and then renamed, so {@code path} only ever holds a complete table.
+     */
+    static SsTable write(Path path, long sequence, Iterator<Map.Entry<byte[], byte[]>> entries, long expectedEntries,
+                         double fpp) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        BloomFilter<byte[]> bloomFilter =
+                BloomFilter.create(Funnels.byteArrayFunnel(), Math.max(expectedEntries, 1), fpp);
+        List<byte[]> indexKeys = new ArrayList<>();
+        List<Integer> indexOffsets = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            int count = 0;
+            while (entries.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = entries.next();
+                if (count % INDEX_INTERVAL == 0) {
+                    indexKeys.add(entry.getKey());
+                    indexOffsets.add(out.size());
+                }
+                out.writeInt(entry.getKey().length);
+                out.write(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+                bloomFilter.put(entry.getKey());
+                count++;
+            }
+            long indexOffset = out.size();
+            for (int i = 0; i < indexKeys.size(); i++) {
+                out.writeInt(indexKeys.get(i).length);
+                out.write(indexKeys.get(i));
+                out.writeInt(indexOffsets.get(i));
+            }
+            long bloomOffset = out.size();
+            bloomFilter.writeTo(out);
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeInt(count);
+            out.writeLong(MAGIC);
+            out.flush();
+            // DataOutputStream stops counting at Integer.MAX_VALUE, beyond which offsets no longer fit the format.
+            if (out.size() >= MAX_BYTES) {
+                throw new IOException("Table too large: " + path);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(path, sequence);
+    }
+
+    /**
+     * Returns the value of {@code key}, or {@code null} if the table does not hold it.
+     */
+    byte[] get(byte[] key) {
+        if (!bloomFilter.mightContain(key)) {
+            return null;
+        }
+        int low = 0;
+        int high = indexKeys.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(indexKeys[middle], key) <= 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (block < 0) {
+            return null;
+        }
+        int position = indexOffsets[block];
+        for (int i = 0; i < INDEX_INTERVAL && position < dataEnd; i++) {
+            int keyLength = buffer.getInt(position);
+            int comparison = compare(position + 4, keyLength, key);
+            int valueOffset = position + 4 + keyLength;
+            int valueLength = buffer.getInt(valueOffset);
+            if (comparison == 0) {
+                byte[] value = new byte[valueLength];
+                buffer.get(valueOffset + 4, value);
+                return value;
+            }
+            if (comparison > 0) {
+                return null;
+            }
+            position = valueOffset + 4 + valueLength;
+        }
+        return null;
+    }
+
+    /**
+     * Iterates over the records in key order, copying each onto the heap.
+     */
+    Iterator<Map.Entry<byte[], byte[]>> iterator() {
+        return new Iterator<>() {
+
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < dataEnd;
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                byte[] key = new byte[buffer.getInt(position)];
+                buffer.get(position + 4, key);
+                byte[] value = new byte[buffer.getInt(position + 4 + key.length)];
+                buffer.get(position + 8 + key.length, value);
+                position += 8 + key.length + value.length;
+                return new AbstractMap.SimpleImmutableEntry<>(key, value);
+            }
+        };
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long sizeBytes() {
+        return buffer.capacity();
+    }
+
+    private int compare(int offset, int length, byte[] key) {
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.compareUnsigned(buffer.get(offset + i), key[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+}
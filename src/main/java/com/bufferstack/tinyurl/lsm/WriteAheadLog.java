@@ -0,0 +1,109 @@
+package com.bufferstack.tinyurl.lsm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of the writes held in the memtable, replayed into a new memtable after a restart. Each record is
+ * {@code (key length, key, value length, value, CRC32C)}; replay stops at the first record that is incomplete or
+ * fails its checksum, which is where a write was cut short, and truncates the log there.
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean sync;
+
+    WriteAheadLog(Path path, boolean sync) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.sync = sync;
+    }
+
+    /**
+     * Appends the records in one write, forcing them to disk first when the log syncs. Records are written in order,
+     * so a write cut short keeps a prefix of them.
+     */
+    void append(List<byte[]> keys, List<byte[]> values) throws IOException {
+        int size = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            size += 12 + keys.get(i).length + values.get(i).length;
+        }
+        ByteBuffer records = ByteBuffer.allocate(size);
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i < keys.size(); i++) {
+            int start = records.position();
+            records.putInt(keys.get(i).length).put(keys.get(i)).putInt(values.get(i).length).put(values.get(i));
+            crc.reset();
+            crc.update(records.array(), start, records.position() - start);
+            records.putInt((int) crc.getValue());
+        }
+        records.flip();
+        while (records.hasRemaining()) {
+            channel.write(records);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Passes every complete record of the log at {@code path} to {@code consumer}, in order, and truncates whatever
+     * follows the last of them.
+     */
+    static void replay(Path path, BiConsumer<byte[], byte[]> consumer) throws IOException {
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32C crc = new CRC32C();
+        int valid = 0;
+        while (log.remaining() >= 4) {
+            int start = log.position();
+            int keyLength = log.getInt();
+            if (keyLength < 0 || log.remaining() < keyLength + 4) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            log.get(key);
+            int valueLength = log.getInt();
+            if (valueLength < 0 || log.remaining() < valueLength + 4) {
+                break;
+            }
+            byte[] value = new byte[valueLength];
+            log.get(value);
+            crc.reset();
+            crc.update(log.array(), start, log.position() - start);
+            if (log.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            consumer.accept(key, value);
+            valid = log.position();
+        }
+        if (valid < log.capacity()) {
+            logger.warn("Truncating {} bytes of incomplete records at the end of {}", log.capacity() - valid, path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+    }
+}
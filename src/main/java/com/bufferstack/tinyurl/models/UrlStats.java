@@ -0,0 +1,28 @@
+package com.bufferstack.tinyurl.models;
+
+import java.time.Instant;
+
+public class UrlStats {
+
+    private String code;
+    private long hits;
+    private Instant updatedAt;
+
+    public UrlStats(String code, long hits, Instant updatedAt) {
+        this.code = code;
+        this.hits = hits;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
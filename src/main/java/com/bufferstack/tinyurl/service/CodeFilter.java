@@ -0,0 +1,427 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bloom filter of every existing code, so that lookups of codes that were never issued, which is what scanners send,
+ * are answered without touching the caches or the database.
+ *
+ * <p>The filter grows as a scalable Bloom filter: a series of Guava filters, each holding twice as many codes as the
+ * one before at half its false-positive probability, so that the combined probability stays below {@code fpp} however
+ * many codes there are. Codes added by this instance are put into the filter as they are created. On startup the
+ * filter is read back from {@code file} when there is one, and otherwise built by scanning every code in the
+ * {@link UrlMappingStore}; until then it rejects nothing. Afterwards, if other instances insert into the store as
+ * well, codes created since the last refresh, minus {@code refreshOverlap} to cover clock skew and transactions
+ * committing late, are read every {@code refreshInterval}.
+ *
+ * <p>Until that refresh, a code created by another instance is only let through because identifiers are issued in
+ * increasing order: a code the filter rejects but whose identifier is above the highest it has seen, by at most
+ * {@code unseenWindow}, may be one of those, and is looked up in the store. The window bounds how many of the codes
+ * scanners make up are let through; it should cover the identifiers all instances issue in a refresh interval, and the
+ * blocks they hold in reserve. Imported mappings keep their old creation time and may have low identifiers,
+ * so an import instead bumps the version of a ZooKeeper node, and every instance streams all codes again at its next
+ * refresh after seeing the version change.
+ */
+@Component
+public class CodeFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CodeFilter.class);
+
+    private static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(StandardCharsets.UTF_8);
+    private static final long MAGIC = 0x54696E7942663032L; // "TinyBf02"
+    private static final String IMPORTS_PATH = "/tinyurlImports";
+    private static final int NO_IMPORTS = -1;
+
+    private final UrlMappingStore store;
+    private final CodeEncoder codeEncoder;
+    private final CuratorFramework zkClient;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final long unseenWindow;
+    private final Path file;
+    private final Duration refreshInterval;
+    private final Duration refreshOverlap;
+    private final Clock clock;
+    private final ScheduledExecutorService refresher;
+
+    private volatile Stage[] stages;
+    private volatile boolean ready;
+    private final AtomicLong highestIdentifier = new AtomicLong(CodeEncoder.INVALID);
+    private Instant watermark;
+    private int importsVersion = NO_IMPORTS;
+
+    private final Counter rejectedCounter;
+    private final Counter unseenCounter;
+    private final Counter falsePositiveCounter;
+    private final Counter exceptionCounter;
+    private final Timer rebuildTimer;
+    private final Timer refreshTimer;
+
+    public CodeFilter(UrlMappingStore store, CodeEncoder codeEncoder, CuratorFramework zkClient,
+                      @Value("${tinyurl.code-filter.enabled:false}") boolean enabled,
+                      @Value("${tinyurl.code-filter.expected-insertions:10000000}") long expectedInsertions,
+                      @Value("${tinyurl.code-filter.fpp:0.01}") double fpp,
+                      @Value("${tinyurl.code-filter.unseen-window:100000000}") long unseenWindow,
+                      @Value("${tinyurl.code-filter.file:}") String file,
+                      @Value("${tinyurl.code-filter.refresh-interval:5s}") Duration refreshInterval,
+                      @Value("${tinyurl.code-filter.refresh-overlap:1m}") Duration refreshOverlap,
+                      Clock clock, MeterRegistry registry) {
+        this.store = store;
+        this.codeEncoder = codeEncoder;
+        this.zkClient = zkClient;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.unseenWindow = unseenWindow;
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.refreshInterval = refreshInterval;
+        this.refreshOverlap = refreshOverlap;
+        this.clock = clock;
+        this.stages = enabled ? newStages() : null;
+        this.refresher = enabled ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "code-filter");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        Gauge.builder("codeFilter.size", this, CodeFilter::size)
+                .register(registry);
+        Gauge.builder("codeFilter.expectedFpp", this, CodeFilter::expectedFpp)
+                .register(registry);
+        rejectedCounter = Counter.builder("codeFilter")
+                .tag("result", "rejected")
+                .register(registry);
+        unseenCounter = Counter.builder("codeFilter")
+                .tag("result", "unseen")
+                .register(registry);
+        falsePositiveCounter = Counter.builder("codeFilter")
+                .tag("result", "falsePositive")
+                .register(registry);
+        exceptionCounter = Counter.builder("codeFilter")
+                .tag("result", "exception")
+                .register(registry);
+        rebuildTimer = Timer.builder("codeFilter.rebuild")
+                .register(registry);
+        refreshTimer = Timer.builder("codeFilter.refresh")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            refresher.execute(this::initialize);
+        }
+    }
+
+    /**
+     * Returns {@code false} if {@code code} certainly does not exist, and {@code true} if it may, which includes codes
+     * of identifiers just above any the filter has seen.
+     */
+    public boolean mightContain(String code) {
+        if (!ready) {
+            return true;
+        }
+        for (Stage stage : stages) {
+            if (stage.filter.mightContain(code)) {
+                return true;
+            }
+        }
+        long identifier = identifierOf(code);
+        long highest = highestIdentifier.get();
+        if (identifier > highest && identifier - highest <= unseenWindow) {
+            unseenCounter.increment();
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    public void put(String code) {
+        if (!enabled) {
+            return;
+        }
+        long identifier = identifierOf(code);
+        if (identifier > highestIdentifier.get()) {
+            highestIdentifier.accumulateAndGet(identifier, Math::max);
+        }
+        Stage[] current = stages;
+        Stage last = current[current.length - 1];
+        if (last.filter.put(code) && last.codes.incrementAndGet() >= capacity(current.length - 1)) {
+            grow(current);
+        }
+    }
+
+    /**
+     * Records that a code the filter let through did not exist.
+     */
+    public void recordFalsePositive() {
+        if (ready) {
+            falsePositiveCounter.increment();
+        }
+    }
+
+    /**
+     * Tells every instance's filter that mappings were added with creation times its refresh would not read, so that
+     * they all stream every code again at their next refresh.
+     */
+    public void codesImported() {
+        if (!enabled || !store.shared()) {
+            return;
+        }
+        try {
+            zkClient.create().orSetData().forPath(IMPORTS_PATH);
+        } catch (Exception e) {
+            logger.error("Unable to announce imported codes; other instances learn of them when they rebuild", e);
+            exceptionCounter.increment();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        refresher.shutdown();
+        refresher.awaitTermination(10, TimeUnit.SECONDS);
+        if (ready) {
+            save();
+        }
+    }
+
+    @VisibleForTesting
+    boolean ready() {
+        return ready;
+    }
+
+    @VisibleForTesting
+    void initialize() {
+        try {
+            if (load()) {
+                refresh();
+            } else {
+                rebuild();
+            }
+            ready = true;
+            save();
+            if (store.shared()) {
+                refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshInterval.toMillis(),
+                        refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Unable to build the code filter, retrying in {}", refreshInterval, e);
+            exceptionCounter.increment();
+            refresher.schedule(this::initialize, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @VisibleForTesting
+    void refresh() {
+        int version = currentImportsVersion();
+        if (version != importsVersion) {
+            logger.info("Codes were imported, streaming every code into the code filter again");
+            rebuild();
+            return;
+        }
+        Instant start = clock.instant();
+        Instant since = watermark.minus(refreshOverlap);
+        refreshTimer.record(() -> store.scanCreatedSince(since, mapping -> put(mapping.getCode())));
+        watermark = start;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            logger.error("Unable to refresh the code filter", e);
+            exceptionCounter.increment();
+        }
+    }
+
+    private void rebuild() {
+        Instant start = clock.instant();
+        importsVersion = currentImportsVersion();
+        rebuildTimer.record(() -> store.scan(mapping -> put(mapping.getCode())));
+        watermark = start;
+        logger.info("Built code filter of {} codes in {} ms", size(),
+                Duration.between(start, clock.instant()).toMillis());
+    }
+
+    /**
+     * Returns the version of the node bumped by {@link #codesImported()}, or the last one seen if ZooKeeper cannot be
+     * reached, so that an outage delays a rebuild rather than the refresh.
+     */
+    private int currentImportsVersion() {
+        if (!store.shared()) {
+            return NO_IMPORTS;
+        }
+        try {
+            Stat stat = zkClient.checkExists().forPath(IMPORTS_PATH);
+            return stat == null ? NO_IMPORTS : stat.getVersion();
+        } catch (Exception e) {
+            logger.warn("Unable to check for imported codes", e);
+            exceptionCounter.increment();
+            return importsVersion;
+        }
+    }
+
+    /**
+     * Returns the identifier behind {@code code}, or {@link CodeEncoder#INVALID} if {@code code} is not the canonical
+     * encoding of one.
+     */
+    private long identifierOf(String code) {
+        long identifier = codeEncoder.decode(code);
+        if (identifier == CodeEncoder.INVALID || !code.equals(codeEncoder.encode(identifier))) {
+            return CodeEncoder.INVALID;
+        }
+        return identifier;
+    }
+
+    private synchronized void grow(Stage[] current) {
+        if (stages != current) {
+            return;
+        }
+        Stage[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = newStage(current.length);
+        stages = grown;
+        logger.info("Grew code filter to {} stages", grown.length);
+    }
+
+    private boolean load() {
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readLong() != MAGIC) {
+                logger.warn("Ignoring code filter file {} in an unknown format", file);
+                return false;
+            }
+            Instant savedWatermark = Instant.ofEpochMilli(in.readLong());
+            long savedHighestIdentifier = in.readLong();
+            int savedImportsVersion = in.readInt();
+            Stage[] loaded = new Stage[in.readInt()];
+            for (int i = 0; i < loaded.length; i++) {
+                long codes = in.readLong();
+                loaded[i] = new Stage(BloomFilter.readFrom(in, FUNNEL), codes);
+            }
+            stages = loaded;
+            watermark = savedWatermark;
+            highestIdentifier.accumulateAndGet(savedHighestIdentifier, Math::max);
+            importsVersion = savedImportsVersion;
+            logger.info("Loaded code filter of {} codes from {}, created at {}", size(), file, savedWatermark);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read code filter file {}, rebuilding it", file, e);
+            return false;
+        }
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Stage[] current = stages;
+        Instant savedWatermark = watermark;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeLong(MAGIC);
+                out.writeLong(savedWatermark.toEpochMilli());
+                out.writeLong(highestIdentifier.get());
+                out.writeInt(importsVersion);
+                out.writeInt(current.length);
+                for (Stage stage : current) {
+                    out.writeLong(stage.codes.get());
+                    stage.filter.writeTo(out);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to write code filter file {}", file, e);
+        }
+    }
+
+    private long size() {
+        Stage[] current = stages;
+        return current == null ? 0 : Arrays.stream(current).mapToLong(stage -> stage.codes.get()).sum();
+    }
+
+    private double expectedFpp() {
+        Stage[] current = stages;
+        if (current == null) {
+            return 0;
+        }
+        double none = 1;
+        for (Stage stage : current) {
+            none *= 1 - stage.filter.expectedFpp();
+        }
+        return 1 - none;
+    }
+
+    private long capacity(int stage) {
+        return expectedInsertions << stage;
+    }
+
+    private Stage[] newStages() {
+        return new Stage[] { newStage(0) };
+    }
+
+    /**
+     * Stage {@code i} holds {@code expectedInsertions * 2^i} codes at a false-positive probability of
+     * {@code fpp / 2^(i + 1)}, which sum to less than {@code fpp}.
+     */
+    private Stage newStage(int stage) {
+        return new Stage(BloomFilter.create(FUNNEL, capacity(stage), fpp / (2L << stage)), 0);
+    }
+
+    /**
+     * A filter and the number of codes put into it, counting those that changed no bits as duplicates.
+     */
+    private static final class Stage {
+
+        private final BloomFilter<CharSequence> filter;
+        private final AtomicLong codes;
+
+        private Stage(BloomFilter<CharSequence> filter, long codes) {
+            this.filter = filter;
+            this.codes = new AtomicLong(codes);
+        }
+    }
+}
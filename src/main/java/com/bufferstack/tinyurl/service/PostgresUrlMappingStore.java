@@ -0,0 +1,185 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinuyrl.jooq.tables.UrlMapping;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.store.UrlMappingRow;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.ResultQuery;
+import org.jooq.impl.DSL;
+
+/**
+ * Stores mappings in the partitioned {@code url_mapping} table. Lookups go to the read pool, and to the primary as
+ * well for codes the read pool does not have when {@code primaryFallback} is set; codes not found in the partitions
+ * are looked up in the legacy table while a migration is running. Inserts go through {@link UrlMappingWriter}.
+ */
+public class PostgresUrlMappingStore implements UrlMappingStore {
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final DSLContext dslContext;
+    private final DSLContext readDslContext;
+    private final boolean primaryFallback;
+    private final UrlMappingPartitions partitions;
+    private final UrlMappingLookup lookup;
+    private final UrlMappingWriter writer;
+
+    public PostgresUrlMappingStore(DSLContext dslContext, DSLContext readDslContext, boolean primaryFallback,
+                                   UrlMappingPartitions partitions, UrlMappingLookup lookup, UrlMappingWriter writer) {
+        this.dslContext = dslContext;
+        this.readDslContext = readDslContext;
+        this.primaryFallback = primaryFallback;
+        this.partitions = partitions;
+        this.lookup = lookup;
+        this.writer = writer;
+    }
+
+    @Override
+    public TinyUrlMapping find(String code) {
+        TinyUrlMapping mapping = find(readDslContext, code);
+        if (mapping == null && primaryFallback) {
+            mapping = find(dslContext, code);
+        }
+        return mapping;
+    }
+
+    @Override
+    public List<TinyUrlMapping> findAll(Collection<String> codes) {
+        List<TinyUrlMapping> mappings = findAll(readDslContext, codes);
+        if (primaryFallback && mappings.size() < codes.size()) {
+            Set<String> missing = new HashSet<>(codes);
+            mappings.forEach(mapping -> missing.remove(mapping.getCode()));
+            mappings = new ArrayList<>(mappings);
+            mappings.addAll(findAll(dslContext, missing));
+        }
+        return mappings;
+    }
+
+    /**
+     * Reads the hash from the read pool unless {@code current}, in which case it is read from the primary; a replica
+     * lagging behind only turns a hit into a conflict on insert, which is then resolved on the primary.
+     */
+    @Override
+    public TinyUrlMapping findByHash(byte[] fullUrlHash, boolean current) {
+        DSLContext context = current ? dslContext : readDslContext;
+        Record hash = context
+                .select()
+                .from(Tables.URL_MAPPING_HASH)
+                .where(Tables.URL_MAPPING_HASH.FULL_URL_HASH.eq(fullUrlHash))
+                .fetchOne();
+        return hash == null ? null : find(context, hash.get(Tables.URL_MAPPING_HASH.CODE));
+    }
+
+    @Override
+    public void insert(String code, String fullUrl, byte[] fullUrlHash, OffsetDateTime createdAt) {
+        writer.insert(code, fullUrl, fullUrlHash, createdAt);
+    }
+
+    @Override
+    public Set<String> insertAll(List<UrlMappingRow> rows) {
+        return writer.insertAll(rows);
+    }
+
+    /**
+     * Reads the table from the read pool through a cursor fetching {@value #FETCH_SIZE} rows at a time, in a
+     * transaction since PostgreSQL only honours the fetch size within one. While a migration is running, the legacy
+     * table is read first, so a row the backfill moves meanwhile is seen twice rather than missed.
+     */
+    @Override
+    public void scan(Consumer<TinyUrlMapping> consumer) {
+        readDslContext.transaction(configuration -> {
+            DSLContext context = configuration.dsl();
+            UrlMapping legacyTable = partitions.legacyTable();
+            if (legacyTable != null) {
+                scan(context.select(legacyTable.CODE, legacyTable.FULL_URL, legacyTable.CREATED_AT)
+                        .from(legacyTable), consumer);
+            }
+            scan(context.select(Tables.URL_MAPPING.CODE, Tables.URL_MAPPING.FULL_URL, Tables.URL_MAPPING.CREATED_AT)
+                    .from(Tables.URL_MAPPING), consumer);
+        });
+    }
+
+    /**
+     * Reads only the partitioned table, which every mapping created since the migration started is written to.
+     */
+    @Override
+    public void scanCreatedSince(Instant since, Consumer<TinyUrlMapping> consumer) {
+        OffsetDateTime createdSince = OffsetDateTime.ofInstant(since, ZoneOffset.UTC);
+        readDslContext.transaction(configuration -> scan(configuration.dsl()
+                .select(Tables.URL_MAPPING.CODE, Tables.URL_MAPPING.FULL_URL, Tables.URL_MAPPING.CREATED_AT)
+                .from(Tables.URL_MAPPING)
+                .where(Tables.URL_MAPPING.CREATED_AT.ge(createdSince)), consumer));
+    }
+
+    @Override
+    public boolean shared() {
+        return true;
+    }
+
+    private TinyUrlMapping find(DSLContext context, String code) {
+        TinyUrlMapping mapping = lookup.find(context, code);
+        UrlMapping legacyTable = partitions.legacyTable();
+        if (mapping == null && legacyTable != null) {
+            mapping = toMapping(context
+                    .select(legacyTable.CODE, legacyTable.FULL_URL, legacyTable.CREATED_AT)
+                    .from(legacyTable)
+                    .where(legacyTable.CODE.eq(code))
+                    .fetchOne());
+        }
+        return mapping;
+    }
+
+    /**
+     * Reads {@code codes} from the partitioned table, restricted to their buckets so that only the partitions holding
+     * them are scanned.
+     */
+    private List<TinyUrlMapping> findAll(DSLContext context, Collection<String> codes) {
+        Short[] buckets = codes.stream().map(partitions::bucket).distinct().toArray(Short[]::new);
+        List<TinyUrlMapping> mappings = context
+                .select()
+                .from(Tables.URL_MAPPING)
+                .where(Tables.URL_MAPPING.BUCKET.eq(DSL.any(buckets))
+                        .and(Tables.URL_MAPPING.CODE.eq(DSL.any(codes.toArray(new String[0])))))
+                .fetch(PostgresUrlMappingStore::toMapping);
+        UrlMapping legacyTable = partitions.legacyTable();
+        if (legacyTable != null && mappings.size() < codes.size()) {
+            Set<String> missing = new HashSet<>(codes);
+            mappings.forEach(mapping -> missing.remove(mapping.getCode()));
+            mappings = new ArrayList<>(mappings);
+            mappings.addAll(context
+                    .select(legacyTable.CODE, legacyTable.FULL_URL, legacyTable.CREATED_AT)
+                    .from(legacyTable)
+                    .where(legacyTable.CODE.eq(DSL.any(missing.toArray(new String[0]))))
+                    .fetch(PostgresUrlMappingStore::toMapping));
+        }
+        return mappings;
+    }
+
+    private static <R extends Record> void scan(ResultQuery<R> query, Consumer<TinyUrlMapping> consumer) {
+        try (Cursor<R> cursor = query.fetchSize(FETCH_SIZE).fetchLazy()) {
+            for (R record : cursor) {
+                consumer.accept(toMapping(record));
+            }
+        }
+    }
+
+    private static TinyUrlMapping toMapping(Record record) {
+        if (record == null) {
+            return null;
+        }
+        return new TinyUrlMapping(record.get(Tables.URL_MAPPING.CODE), record.get(Tables.URL_MAPPING.FULL_URL),
+                record.get(Tables.URL_MAPPING.CREATED_AT).toInstant());
+    }
+}
@@ -0,0 +1,136 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.utils.UrlNormalizer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Finds the existing mapping for a URL that has been shortened before, so that re-submitting it neither consumes an
+ * identifier nor inserts a row. URLs are identified by the MD5 digest of their normalized form, which is what the
+ * unique {@code full_url_hash} index holds; recently seen digests are answered from memory.
+ *
+ * <p>Every lookup counts towards {@code urlMapping.dedup}: a {@code hit} when an existing mapping was found, a
+ * {@code miss} otherwise, and a {@code conflict} when a miss lost the insert race to a concurrent request for the same
+ * URL. {@code urlMapping.dedup.ratio} is the share of lookups that ended up returning an existing mapping.
+ */
+@Component
+public class UrlDeduplicator {
+
+    private final boolean enabled;
+    private final Cache<ByteBuffer, TinyUrlMapping> recentUrls;
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(UrlDeduplicator::md5);
+
+    private final Counter recentHitCounter;
+    private final Counter databaseHitCounter;
+    private final Counter missCounter;
+    private final Counter conflictCounter;
+
+    public UrlDeduplicator(@Value("${tinyurl.dedup.enabled:false}") boolean enabled,
+                           @Value("${tinyurl.dedup.recent-size:100000}") long recentSize,
+                           MeterRegistry registry) {
+        this.enabled = enabled;
+        this.recentUrls = Caffeine.newBuilder()
+                .recordStats()
+                .maximumSize(recentSize)
+                .build();
+
+        CaffeineCacheMetrics.monitor(registry, recentUrls, "recentUrl");
+        recentHitCounter = Counter.builder("urlMapping.dedup")
+                .tag("result", "hit").tag("source", "recent")
+                .register(registry);
+        databaseHitCounter = Counter.builder("urlMapping.dedup")
+                .tag("result", "hit").tag("source", "database")
+                .register(registry);
+        missCounter = Counter.builder("urlMapping.dedup")
+                .tag("result", "miss")
+                .register(registry);
+        conflictCounter = Counter.builder("urlMapping.dedup")
+                .tag("result", "conflict")
+                .register(registry);
+        Gauge.builder("urlMapping.dedup.ratio", this, UrlDeduplicator::ratio)
+                .register(registry);
+    }
+
+    /**
+     * Returns the digest identifying {@code fullUrl}, or {@code null} when deduplication is disabled.
+     */
+    public byte[] fingerprint(String fullUrl) {
+        if (!enabled) {
+            return null;
+        }
+        return digests.get().digest(UrlNormalizer.normalize(fullUrl).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the mapping already stored for {@code fingerprint}, consulting {@code loader} when it has not been seen
+     * recently, or {@code null} if the URL has not been shortened before.
+     */
+    public TinyUrlMapping find(byte[] fingerprint, Function<byte[], TinyUrlMapping> loader) {
+        TinyUrlMapping mapping = recentUrls.getIfPresent(ByteBuffer.wrap(fingerprint));
+        if (mapping != null) {
+            recentHitCounter.increment();
+            return mapping;
+        }
+        mapping = loader.apply(fingerprint);
+        if (mapping == null) {
+            missCounter.increment();
+            return null;
+        }
+        databaseHitCounter.increment();
+        remember(fingerprint, mapping);
+        return mapping;
+    }
+
+    /**
+     * Returns the mapping recently remembered for {@code fingerprint}, or {@code null} without consulting the database.
+     * Used for bulk shortening, which leaves older duplicates to the {@code full_url_hash} index.
+     */
+    public TinyUrlMapping findRecent(byte[] fingerprint) {
+        TinyUrlMapping mapping = recentUrls.getIfPresent(ByteBuffer.wrap(fingerprint));
+        if (mapping != null) {
+            recentHitCounter.increment();
+        } else {
+            missCounter.increment();
+        }
+        return mapping;
+    }
+
+    /**
+     * Records that a URL reported missing by {@link #find} or {@link #findRecent} was inserted concurrently under
+     * {@code mapping}.
+     */
+    public void conflicted(byte[] fingerprint, TinyUrlMapping mapping) {
+        conflictCounter.increment();
+        remember(fingerprint, mapping);
+    }
+
+    public void remember(byte[] fingerprint, TinyUrlMapping mapping) {
+        recentUrls.put(ByteBuffer.wrap(fingerprint), mapping);
+    }
+
+    private double ratio() {
+        double hits = recentHitCounter.count() + databaseHitCounter.count();
+        double lookups = hits + missCounter.count();
+        return lookups == 0 ? 0 : (hits + conflictCounter.count()) / lookups;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinuyrl.jooq.tables.records.UrlStatsRecord;
+import com.bufferstack.tinyurl.exception.StatsUnavailableException;
+import com.bufferstack.tinyurl.models.UrlStats;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.InsertValuesStep3;
+import org.jooq.Record2;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts resolved codes and adds the counts to {@code url_stats} in the background. A hit increments the
+ * {@link LongAdder} of its code, which is lock-free, spreads contending threads over separate cells and allocates
+ * nothing once the code has been seen in the current interval. Every {@code flushInterval} a single flusher thread
+ * takes each counter's sum with {@link LongAdder#sumThenReset()}, which loses no concurrent increments, and adds it to
+ * the stored totals with multi-row upserts of at most {@code flushBatchSize} codes; counts whose upsert failed are put
+ * back and retried with the next flush.
+ *
+ * <p>Counters of codes that saw no hits over an interval are dropped to bound memory; an increment racing with its
+ * counter being dropped may go uncounted. At most {@code maxCodes} codes are counted per interval, and hits on further
+ * codes are only reported in {@code urlHitCounter.dropped}. Counts not yet flushed are lost if the process dies.
+ *
+ * <p>{@code url_stats} lives in PostgreSQL, so with any other url mapping store no hits are counted and there are no
+ * statistics to read.
+ */
+@Component
+public class UrlHitCounter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlHitCounter.class);
+
+    private static final Field<Long> EXCLUDED_HITS = DSL.field(DSL.name("EXCLUDED", "HITS"), Long.class);
+
+    private final DSLContext dslContext;
+    private final DSLContext readDslContext;
+    private final boolean available;
+    private final boolean enabled;
+    private final int flushBatchSize;
+    private final int maxCodes;
+    private final Clock clock;
+    private final ConcurrentHashMap<String, LongAdder> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private final Counter droppedCounter;
+    private final Counter flushedCounter;
+    private final Counter exceptionCounter;
+    private final Timer flushTimer;
+
+    public UrlHitCounter(DSLContext dslContext, @Qualifier("read") DSLContext readDslContext,
+                         @Value("${tinyurl.url-mapping-store:POSTGRES}") String urlMappingStoreName,
+                         @Value("${tinyurl.stats.enabled:true}") boolean enabled,
+                         @Value("${tinyurl.stats.flush-interval:10s}") Duration flushInterval,
+                         @Value("${tinyurl.stats.flush-batch-size:1000}") int flushBatchSize,
+                         @Value("${tinyurl.stats.max-codes:100000}") int maxCodes,
+                         Clock clock, MeterRegistry registry) {
+        this.dslContext = dslContext;
+        this.readDslContext = readDslContext;
+        this.available = "POSTGRES".equalsIgnoreCase(urlMappingStoreName);
+        this.enabled = enabled && available;
+        this.flushBatchSize = flushBatchSize;
+        this.maxCodes = maxCodes;
+        this.clock = clock;
+
+        Gauge.builder("urlHitCounter.codes", pending, Map::size)
+                .register(registry);
+        droppedCounter = Counter.builder("urlHitCounter.dropped")
+                .register(registry);
+        flushedCounter = Counter.builder("urlHitCounter.flushed")
+                .register(registry);
+        exceptionCounter = Counter.builder("urlHitCounter.flush")
+                .tag("result", "exception")
+                .register(registry);
+        flushTimer = Timer.builder("urlHitCounter.flush")
+                .register(registry);
+
+        if (this.enabled) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "url-hit-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    public void record(String code) {
+        if (!enabled) {
+            return;
+        }
+        LongAdder hits = pending.get(code);
+        if (hits == null) {
+            if (pending.size() >= maxCodes) {
+                droppedCounter.increment();
+                return;
+            }
+            hits = pending.computeIfAbsent(code, key -> new LongAdder());
+        }
+        hits.increment();
+    }
+
+    /**
+     * Returns whether there are statistics to read, which takes the PostgreSQL url mapping store.
+     */
+    public boolean available() {
+        return available;
+    }
+
+    /**
+     * Returns the stored totals of {@code code} plus the hits this instance has not flushed yet.
+     *
+     * @throws StatsUnavailableException if there are no statistics to read
+     */
+    public UrlStats stats(String code) {
+        if (!available) {
+            throw new StatsUnavailableException();
+        }
+        Record2<Long, OffsetDateTime> stored = readDslContext
+                .select(Tables.URL_STATS.HITS, Tables.URL_STATS.UPDATED_AT)
+                .from(Tables.URL_STATS)
+                .where(Tables.URL_STATS.CODE.eq(code))
+                .fetchOne();
+        LongAdder unflushed = pending.get(code);
+        long hits = (stored == null ? 0 : stored.value1()) + (unflushed == null ? 0 : unflushed.sum());
+        return new UrlStats(code, hits, stored == null ? null : stored.value2().toInstant());
+    }
+
+    /**
+     * Returns up to {@code limit} codes with the most stored hits, most first, or none if there are no statistics to
+     * read.
+     */
+    public List<String> hottestCodes(int limit) {
+        if (!available) {
+            return List.of();
+        }
+        return readDslContext
+                .select(Tables.URL_STATS.CODE)
+                .from(Tables.URL_STATS)
+                .orderBy(Tables.URL_STATS.HITS.desc())
+                .limit(limit)
+                .fetch(Tables.URL_STATS.CODE);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    @VisibleForTesting
+    void flush() {
+        Map<String, Long> hits = new HashMap<>();
+        pending.forEach((code, counter) -> {
+            long count = counter.sumThenReset();
+            if (count == 0 && pending.remove(code, counter)) {
+                count = counter.sumThenReset();
+            }
+            if (count > 0) {
+                hits.put(code, count);
+            }
+        });
+        if (hits.isEmpty()) {
+            return;
+        }
+
+        OffsetDateTime now = OffsetDateTime.now(clock);
+        List<List<Map.Entry<String, Long>>> chunks = Lists.partition(new ArrayList<>(hits.entrySet()), flushBatchSize);
+        flushTimer.record(() -> {
+            for (int i = 0; i < chunks.size(); i++) {
+                try {
+                    upsert(chunks.get(i), now);
+                } catch (RuntimeException e) {
+                    logger.error("Unable to flush hits of {} codes, retrying with the next flush",
+                            hits.size() - i * flushBatchSize, e);
+                    exceptionCounter.increment();
+                    chunks.subList(i, chunks.size()).forEach(chunk -> chunk.forEach(entry -> pending
+                            .computeIfAbsent(entry.getKey(), key -> new LongAdder()).add(entry.getValue())));
+                    return;
+                }
+                chunks.get(i).forEach(entry -> flushedCounter.increment(entry.getValue()));
+            }
+        });
+    }
+
+    private void upsert(List<Map.Entry<String, Long>> hits, OffsetDateTime now) {
+        InsertValuesStep3<UrlStatsRecord, String, Long, OffsetDateTime> insert = dslContext
+                .insertInto(Tables.URL_STATS,
+                        Tables.URL_STATS.CODE, Tables.URL_STATS.HITS, Tables.URL_STATS.UPDATED_AT);
+        for (Map.Entry<String, Long> entry : hits) {
+            insert = insert.values(entry.getKey(), entry.getValue(), now);
+        }
+        insert.onConflict(Tables.URL_STATS.CODE)
+                .doUpdate()
+                .set(Tables.URL_STATS.HITS, Tables.URL_STATS.HITS.plus(EXCLUDED_HITS))
+                .set(Tables.URL_STATS.UPDATED_AT, now)
+                .execute();
+    }
+}
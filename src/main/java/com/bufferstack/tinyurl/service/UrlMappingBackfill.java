@@ -0,0 +1,176 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinuyrl.jooq.tables.UrlMapping;
+import com.bufferstack.tinuyrl.jooq.tables.records.UrlMappingHashRecord;
+import com.bufferstack.tinuyrl.jooq.tables.records.UrlMappingRecord;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.InsertValuesStep2;
+import org.jooq.InsertValuesStep4;
+import org.jooq.Record4;
+import org.jooq.Result;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves rows from the unpartitioned table named by {@code tinyurl.partitioning.legacy-table} into the partitioned
+ * {@code url_mapping} while the service keeps serving. Each chunk of {@code chunkSize} rows is locked with
+ * {@code for update skip locked}, copied into its partition (and its full URL hash into {@code url_mapping_hash}) and
+ * deleted from the legacy table in one transaction, so several instances can run the backfill side by side and a
+ * restarted one simply carries on with what is left. Throughput is capped at {@code rowsPerSecond} to bound the extra
+ * load on the primary.
+ */
+@Component
+@ConditionalOnProperty(value = "tinyurl.partitioning.backfill.enabled", havingValue = "true")
+public class UrlMappingBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlMappingBackfill.class);
+
+    private static final Field<byte[]> LEGACY_FULL_URL_HASH = DSL.field(DSL.name("FULL_URL_HASH"), byte[].class);
+
+    private final DSLContext dslContext;
+    private final UrlMappingPartitions partitions;
+    private final int chunkSize;
+    private final RateLimiter rateLimiter;
+    private final Duration retryDelay;
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private final Counter movedCounter;
+    private final Counter exceptionCounter;
+    private final Timer chunkTimer;
+
+    public UrlMappingBackfill(DSLContext dslContext, UrlMappingPartitions partitions,
+                              @Value("${tinyurl.partitioning.backfill.chunk-size:1000}") int chunkSize,
+                              @Value("${tinyurl.partitioning.backfill.rows-per-second:5000}") double rowsPerSecond,
+                              @Value("${tinyurl.partitioning.backfill.retry-delay:10s}") Duration retryDelay,
+                              MeterRegistry registry) {
+        if (partitions.legacyTable() == null) {
+            throw new IllegalStateException("tinyurl.partitioning.legacy-table must name the table to backfill from");
+        }
+        this.dslContext = dslContext;
+        this.partitions = partitions;
+        this.chunkSize = chunkSize;
+        this.rateLimiter = RateLimiter.create(rowsPerSecond);
+        this.retryDelay = retryDelay;
+        this.worker = new Thread(this::run, "url-mapping-backfill");
+        worker.setDaemon(true);
+
+        movedCounter = Counter.builder("urlMapping.backfill")
+                .tag("result", "moved")
+                .register(registry);
+        exceptionCounter = Counter.builder("urlMapping.backfill")
+                .tag("result", "exception")
+                .register(registry);
+        chunkTimer = Timer.builder("urlMapping.backfill.chunk")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(Duration.ofSeconds(10).toMillis());
+    }
+
+    private void run() {
+        logger.info("Backfilling url_mapping from {}", partitions.legacyTable().getName());
+        long moved = 0;
+        while (running) {
+            try {
+                int chunk = chunkTimer.record(this::moveChunk);
+                if (chunk == 0) {
+                    logger.info("Backfill from {} is complete after moving {} rows",
+                            partitions.legacyTable().getName(), moved);
+                    return;
+                }
+                moved += chunk;
+                movedCounter.increment(chunk);
+                rateLimiter.acquire(chunk);
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                logger.error("Unable to move a chunk of url mappings, retrying in {}", retryDelay, e);
+                exceptionCounter.increment();
+                try {
+                    Thread.sleep(retryDelay.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code chunkSize} rows and returns how many were moved.
+     */
+    @VisibleForTesting
+    int moveChunk() {
+        UrlMapping legacyTable = partitions.legacyTable();
+        return dslContext.transactionResult(configuration -> {
+            DSLContext context = configuration.dsl();
+            Result<Record4<String, String, OffsetDateTime, byte[]>> rows = context
+                    .select(legacyTable.CODE, legacyTable.FULL_URL, legacyTable.CREATED_AT,
+                            LEGACY_FULL_URL_HASH)
+                    .from(legacyTable)
+                    .limit(chunkSize)
+                    .forUpdate()
+                    .skipLocked()
+                    .fetch();
+            if (rows.isEmpty()) {
+                return 0;
+            }
+
+            InsertValuesStep4<UrlMappingRecord, Short, String, String, OffsetDateTime> mappings = context
+                    .insertInto(Tables.URL_MAPPING, Tables.URL_MAPPING.BUCKET, Tables.URL_MAPPING.CODE,
+                            Tables.URL_MAPPING.FULL_URL, Tables.URL_MAPPING.CREATED_AT);
+            for (Record4<String, String, OffsetDateTime, byte[]> row : rows) {
+                String code = row.get(legacyTable.CODE);
+                mappings = mappings.values(partitions.bucket(code), code, row.get(legacyTable.FULL_URL),
+                        row.get(legacyTable.CREATED_AT));
+            }
+            mappings.onConflictDoNothing().execute();
+
+            List<Record4<String, String, OffsetDateTime, byte[]>> hashed = rows.stream()
+                    .filter(row -> row.get(LEGACY_FULL_URL_HASH) != null)
+                    .collect(Collectors.toList());
+            if (!hashed.isEmpty()) {
+                InsertValuesStep2<UrlMappingHashRecord, byte[], String> hashes = context
+                        .insertInto(Tables.URL_MAPPING_HASH,
+                                Tables.URL_MAPPING_HASH.FULL_URL_HASH, Tables.URL_MAPPING_HASH.CODE);
+                for (Record4<String, String, OffsetDateTime, byte[]> row : hashed) {
+                    hashes = hashes.values(row.get(LEGACY_FULL_URL_HASH), row.get(legacyTable.CODE));
+                }
+                hashes.onConflictDoNothing().execute();
+            }
+
+            context.deleteFrom(legacyTable)
+                    .where(legacyTable.CODE.eq(DSL.any(rows.getValues(legacyTable.CODE).toArray(new String[0]))))
+                    .execute();
+            return rows.size();
+        });
+    }
+}
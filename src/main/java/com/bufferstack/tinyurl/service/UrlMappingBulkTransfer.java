@@ -0,0 +1,276 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.generator.IdentifierStream;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.store.UrlMappingRow;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copies every URL mapping out of the store as newline-delimited JSON, one {@link TinyUrlMapping} per line, and back
+ * in, for migrations, backups and seeding a new region. Both directions stream: an export holds only the rows the
+ * store's cursor has fetched, and an import reads {@code chunkSize} lines, inserts them with one multi-row statement
+ * and only then reads on, so a client sending faster than the store accepts is held back by the connection rather
+ * than buffered.
+ *
+ * <p>Imported mappings keep their code and creation time. Codes the store already holds are skipped, so an import cut
+ * short can be repeated, as are mappings whose full URL another code already holds when deduplication is enabled.
+ * Other instances' {@link CodeFilter}s do not read codes this old on refresh, so an import that added any tells them to
+ * stream every code again.
+ *
+ * <p>Every code must be one the {@link CodeEncoder} could have produced, and before a chunk is inserted the
+ * {@link IdentifierStream} is advanced past the largest identifier in it, so that no instance generates an imported
+ * code once its stream has learned of the advance; a write meeting one before then is retried with a fresh code by
+ * {@link UrlMappingService}. A stream that cannot advance, or a code that does not decode, stops the import. Imports
+ * run one at a time, as the stream only needs advancing past identifiers larger than any it was advanced past before;
+ * they hold a lock rather than a monitor, since they block on the request body.
+ */
+@Component
+@ConditionalOnProperty(value = "tinyurl.bulk.enabled", havingValue = "true")
+public class UrlMappingBulkTransfer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlMappingBulkTransfer.class);
+
+    private static final long PROGRESS_INTERVAL = 100_000;
+
+    private final UrlMappingStore store;
+    private final IdentifierStream<Long> identifierStream;
+    private final CodeEncoder codeEncoder;
+    private final UrlDeduplicator deduplicator;
+    private final CodeFilter codeFilter;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    private final Counter exportedCounter;
+    private final Counter importedCounter;
+    private final Counter skippedCounter;
+    private final Timer chunkTimer;
+
+    private final ReentrantLock importLock = new ReentrantLock();
+    private long advancedPast = -1;
+
+    public UrlMappingBulkTransfer(UrlMappingStore store, IdentifierStream<Long> identifierStream,
+                                  CodeEncoder codeEncoder, UrlDeduplicator deduplicator, CodeFilter codeFilter,
+                                  ObjectMapper objectMapper, @Value("${tinyurl.bulk.chunk-size:1000}") int chunkSize,
+                                  MeterRegistry registry) {
+        this.store = store;
+        this.identifierStream = identifierStream;
+        this.codeEncoder = codeEncoder;
+        this.deduplicator = deduplicator;
+        this.codeFilter = codeFilter;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+
+        exportedCounter = Counter.builder("urlMapping.bulk")
+                .tag("operation", "export").tag("result", "exported")
+                .register(registry);
+        importedCounter = Counter.builder("urlMapping.bulk")
+                .tag("operation", "import").tag("result", "imported")
+                .register(registry);
+        skippedCounter = Counter.builder("urlMapping.bulk")
+                .tag("operation", "import").tag("result", "skipped")
+                .register(registry);
+        chunkTimer = Timer.builder("urlMapping.bulk.chunk")
+                .tag("operation", "import")
+                .register(registry);
+    }
+
+    /**
+     * Writes every mapping to {@code out} and returns how many were written.
+     */
+    public long export(OutputStream out) throws IOException {
+        logger.info("Exporting url mappings");
+        long[] exported = new long[1];
+        try {
+            store.scan(mapping -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(mapping));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                exportedCounter.increment();
+                if (++exported[0] % PROGRESS_INTERVAL == 0) {
+                    logger.info("Exported {} url mappings", exported[0]);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        logger.info("Export complete after {} url mappings", exported[0]);
+        return exported[0];
+    }
+
+    /**
+     * Inserts the mappings read from {@code in}. Input that is not a sequence of mapping objects with valid codes stops
+     * the import at the chunk holding it, with the chunks before it committed, as does a chunk whose identifiers the
+     * stream cannot rule out or whose codes were generated meanwhile; the result then carries the reason.
+     */
+    public ImportResult importFrom(InputStream in) throws IOException {
+        importLock.lock();
+        try {
+            return importLocked(in);
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    private ImportResult importLocked(InputStream in) throws IOException {
+        logger.info("Importing url mappings");
+        ImportResult result = new ImportResult();
+        List<TinyUrlMapping> chunk = new ArrayList<>(chunkSize);
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                chunk.add(readMapping(parser, token));
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, result);
+            }
+        } catch (JsonProcessingException e) {
+            logger.warn("Import stopped at line {}", e.getLocation() == null ? -1 : e.getLocation().getLineNr(), e);
+            result.message = e.getOriginalMessage();
+        } catch (UnsupportedOperationException | IllegalArgumentException | IllegalStateException
+                 | DuplicateKeyException e) {
+            logger.warn("Import stopped after {} url mappings", result.read, e);
+            result.message = e.getMessage();
+        } finally {
+            if (result.imported > 0) {
+                codeFilter.codesImported();
+            }
+        }
+        logger.info("Import complete after {} url mappings, {} imported and {} skipped", result.read, result.imported,
+                result.skipped);
+        return result;
+    }
+
+    private TinyUrlMapping readMapping(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.START_OBJECT) {
+            JsonNode node = parser.readValueAsTree();
+            JsonNode code = node.get("code");
+            JsonNode fullUrl = node.get("fullUrl");
+            JsonNode createdAt = node.get("createdAt");
+            if (code != null && code.isTextual() && fullUrl != null && fullUrl.isTextual() && createdAt != null) {
+                if (identifierOf(code.asText()) == CodeEncoder.INVALID) {
+                    throw new JsonParseException(parser, "Code " + code.asText() + " was not produced by this encoder");
+                }
+                return new TinyUrlMapping(code.asText(), fullUrl.asText(),
+                        objectMapper.treeToValue(createdAt, Instant.class));
+            }
+        }
+        throw new JsonParseException(parser, "Expected an object with code, fullUrl and createdAt fields");
+    }
+
+    private void importChunk(List<TinyUrlMapping> chunk, ImportResult result) {
+        chunkTimer.record(() -> {
+            Map<String, TinyUrlMapping> pending = new LinkedHashMap<>();
+            chunk.forEach(mapping -> pending.putIfAbsent(mapping.getCode(), mapping));
+            store.findAll(pending.keySet()).forEach(existing -> pending.remove(existing.getCode()));
+
+            long largest = pending.keySet().stream().mapToLong(this::identifierOf).max().orElse(-1);
+            if (largest > advancedPast) {
+                identifierStream.advancePast(largest);
+                advancedPast = largest;
+            }
+
+            List<UrlMappingRow> rows = new ArrayList<>(pending.size());
+            for (TinyUrlMapping mapping : pending.values()) {
+                rows.add(new UrlMappingRow(mapping.getCode(), mapping.getFullUrl(),
+                        deduplicator.fingerprint(mapping.getFullUrl()),
+                        OffsetDateTime.ofInstant(mapping.getCreatedAt(), ZoneOffset.UTC)));
+            }
+            Set<String> skipped = rows.isEmpty() ? Collections.emptySet() : store.insertAll(rows);
+            for (UrlMappingRow row : rows) {
+                if (!skipped.contains(row.getCode())) {
+                    codeFilter.put(row.getCode());
+                }
+            }
+
+            int imported = rows.size() - skipped.size();
+            long read = result.read;
+            result.read += chunk.size();
+            result.imported += imported;
+            result.skipped += chunk.size() - imported;
+            importedCounter.increment(imported);
+            skippedCounter.increment(chunk.size() - imported);
+            if (read / PROGRESS_INTERVAL != result.read / PROGRESS_INTERVAL) {
+                logger.info("Imported {} of {} url mappings read", result.imported, result.read);
+            }
+        });
+    }
+
+    /**
+     * Returns the identifier behind {@code code}, or {@link CodeEncoder#INVALID} if {@code code} is not the canonical
+     * encoding of one.
+     */
+    private long identifierOf(String code) {
+        long identifier = codeEncoder.decode(code);
+        if (identifier == CodeEncoder.INVALID || !code.equals(codeEncoder.encode(identifier))) {
+            return CodeEncoder.INVALID;
+        }
+        return identifier;
+    }
+
+    /**
+     * Counts of an import: mappings read, inserted, and skipped because their code or full URL was already stored.
+     */
+    public static class ImportResult {
+
+        private long read;
+        private long imported;
+        private long skipped;
+        private String message;
+
+        public long getRead() {
+            return read;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Returns why the import stopped early, or {@code null} if it read all of its input.
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.tables.UrlMapping;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.OffsetDateTime;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.springframework.stereotype.Component;
+
+/**
+ * Looks single codes up, the query behind every redirect that misses the caches. The SQL for each partition is
+ * rendered by jOOQ once, up front, and run over plain JDBC, reading only the two columns not already known from the
+ * code straight into a {@link TinyUrlMapping}; there is no query to build, render or map into a {@code Record} per
+ * call. Since each partition's statement text never changes, the PostgreSQL driver finds it in the connection's
+ * statement cache and, from the {@code prepareThreshold}th execution on, runs it as a server-side prepared statement
+ * that is parsed and planned once per connection.
+ */
+@Component
+public class UrlMappingLookup {
+
+    private final UrlMappingPartitions partitions;
+    private final String[] sql;
+
+    public UrlMappingLookup(DSLContext dslContext, UrlMappingPartitions partitions) {
+        this.partitions = partitions;
+        this.sql = new String[partitions.buckets()];
+        for (short bucket = 0; bucket < sql.length; bucket++) {
+            UrlMapping table = partitions.table(bucket);
+            sql[bucket] = dslContext.render(dslContext
+                    .select(table.FULL_URL, table.CREATED_AT)
+                    .from(table)
+                    .where(table.BUCKET.eq(DSL.param("bucket", Short.class))
+                            .and(table.CODE.eq(DSL.param("code", String.class)))));
+        }
+    }
+
+    /**
+     * Returns the mapping of {@code code} in the partitioned table of {@code context}, or {@code null} if there is
+     * none.
+     */
+    public TinyUrlMapping find(DSLContext context, String code) {
+        short bucket = partitions.bucket(code);
+        return context.connectionResult(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql[bucket])) {
+                statement.setShort(1, bucket);
+                statement.setString(2, code);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return null;
+                    }
+                    return new TinyUrlMapping(code, resultSet.getString(1),
+                            resultSet.getObject(2, OffsetDateTime.class).toInstant());
+                }
+            }
+        });
+    }
+}
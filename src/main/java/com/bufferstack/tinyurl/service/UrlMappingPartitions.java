@@ -0,0 +1,67 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinuyrl.jooq.tables.UrlMapping;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maps codes to the {@code url_mapping} partition holding them. The bucket is derived from the code alone, so lookups
+ * by code name their partition ({@code url_mapping_<bucket>}) directly instead of leaving it to the planner to prune
+ * the partitioned table; with {@code direct} disabled they query the partitioned table with a bucket predicate.
+ *
+ * <p>While an unpartitioned table is being migrated, {@code legacyTable} names it so that lookups missing the
+ * partitions fall back to it until {@link UrlMappingBackfill} has moved every row.
+ */
+@Component
+public class UrlMappingPartitions {
+
+    private final int buckets;
+    private final UrlMapping[] partitions;
+    private final UrlMapping legacyTable;
+
+    public UrlMappingPartitions(@Value("${tinyurl.partitioning.buckets:16}") int buckets,
+                                @Value("${tinyurl.partitioning.direct:true}") boolean direct,
+                                @Value("${tinyurl.partitioning.legacy-table:}") String legacyTable) {
+        if (buckets < 1 || buckets > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Number of buckets must be between 1 and " + Short.MAX_VALUE);
+        }
+        this.buckets = buckets;
+        this.partitions = new UrlMapping[buckets];
+        for (int i = 0; i < buckets; i++) {
+            partitions[i] = direct ? Tables.URL_MAPPING.rename(Tables.URL_MAPPING.getName() + "_" + i)
+                    : Tables.URL_MAPPING;
+        }
+        this.legacyTable = legacyTable.isEmpty() ? null : Tables.URL_MAPPING.rename(legacyTable);
+    }
+
+    public int buckets() {
+        return buckets;
+    }
+
+    public short bucket(String code) {
+        return (short) Math.floorMod(code.hashCode(), buckets);
+    }
+
+    /**
+     * Returns the table to read {@code code} from, which is to be queried with a predicate on its bucket.
+     */
+    public UrlMapping table(String code) {
+        return table(bucket(code));
+    }
+
+    /**
+     * Returns the table to read codes in {@code bucket} from.
+     */
+    public UrlMapping table(short bucket) {
+        return partitions[bucket];
+    }
+
+    /**
+     * Returns the unpartitioned table still being migrated, or {@code null} once there is none. It has no
+     * {@code bucket} column.
+     */
+    public UrlMapping legacyTable() {
+        return legacyTable;
+    }
+}
@@ -1,50 +1,336 @@
 package com.bufferstack.tinyurl.service;
 
-import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinyurl.cache.OffHeapUrlMappingStore;
+import com.bufferstack.tinyurl.cache.PeerUrlMappingCache;
+import com.bufferstack.tinyurl.cache.UrlMappingCache;
+import com.bufferstack.tinyurl.exception.DuplicateUrlException;
 import com.bufferstack.tinyurl.exception.MappingNotFoundException;
+import com.bufferstack.tinyurl.exception.StatsUnavailableException;
+import com.bufferstack.tinyurl.generator.CodeEncoder;
 import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.models.UrlStats;
 import com.bufferstack.tinyurl.generator.IdentifierStream;
+import com.bufferstack.tinyurl.store.UrlMappingRow;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import java.nio.ByteBuffer;
 import java.time.Clock;
 import java.time.OffsetDateTime;
-import org.jooq.DSLContext;
-import org.jooq.Record;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
 @Service
 public class UrlMappingService {
 
-    private final DSLContext dslContext;
-    private final IdentifierStream<String> identifierStream;
+    /**
+     * Times a write is tried with fresh identifiers when its code is taken, which happens when an import claimed it
+     * before the identifier stream learned of the import.
+     */
+    private static final int MAX_CODE_ATTEMPTS = 3;
+
+    private final UrlMappingStore store;
+    private final IdentifierStream<Long> identifierStream;
+    private final CodeEncoder codeEncoder;
+    private final UrlMappingCache cache;
+    private final OffHeapUrlMappingStore offHeapStore;
+    private final UrlDeduplicator deduplicator;
+    private final UrlHitCounter hitCounter;
+    private final CodeFilter codeFilter;
+    private final PeerUrlMappingCache peerCache;
     private final Clock clock;
 
-    public UrlMappingService(DSLContext dslContext, IdentifierStream<String> identifierStream, Clock clock) {
-        this.dslContext = dslContext;
+    public UrlMappingService(UrlMappingStore store, IdentifierStream<Long> identifierStream, CodeEncoder codeEncoder,
+                             UrlMappingCache cache, OffHeapUrlMappingStore offHeapStore, UrlDeduplicator deduplicator,
+                             UrlHitCounter hitCounter, CodeFilter codeFilter, PeerUrlMappingCache peerCache,
+                             Clock clock) {
+        this.store = store;
         this.identifierStream = identifierStream;
+        this.codeEncoder = codeEncoder;
+        this.cache = cache;
+        this.offHeapStore = offHeapStore;
+        this.deduplicator = deduplicator;
+        this.hitCounter = hitCounter;
+        this.codeFilter = codeFilter;
+        this.peerCache = peerCache;
         this.clock = clock;
     }
 
     public TinyUrlMapping addLink(String fullUrl) {
-        String code = identifierStream.next();
+        byte[] fullUrlHash = deduplicator.fingerprint(fullUrl);
+        if (fullUrlHash != null) {
+            TinyUrlMapping existing = deduplicator.find(fullUrlHash, hash -> store.findByHash(hash, false));
+            if (existing != null) {
+                cache.put(existing);
+                return existing;
+            }
+        }
+
+        long identifier;
+        String code;
         OffsetDateTime createdAt = OffsetDateTime.ofInstant(clock.instant(), clock.getZone());
-        dslContext
-                .insertInto(Tables.URL_MAPPING)
-                .set(Tables.URL_MAPPING.CODE, code)
-                .set(Tables.URL_MAPPING.FULL_URL, fullUrl)
-                .set(Tables.URL_MAPPING.CREATED_AT, createdAt)
-                .execute();
-        return new TinyUrlMapping(code, fullUrl, createdAt.toInstant());
+        for (int attempt = 1; ; attempt++) {
+            identifier = identifierStream.next();
+            code = codeEncoder.encode(identifier);
+            try {
+                store.insert(code, fullUrl, fullUrlHash, createdAt);
+                break;
+            } catch (DuplicateUrlException e) {
+                TinyUrlMapping existing = store.findByHash(fullUrlHash, true);
+                if (existing == null) {
+                    throw e;
+                }
+                deduplicator.conflicted(fullUrlHash, existing);
+                cache.put(existing);
+                return existing;
+            } catch (DuplicateKeyException e) {
+                if (attempt == MAX_CODE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+        TinyUrlMapping mapping = new TinyUrlMapping(code, fullUrl, createdAt.toInstant());
+        cache.put(mapping);
+        offHeapStore.put(identifier, mapping);
+        codeFilter.put(code);
+        if (fullUrlHash != null) {
+            deduplicator.remember(fullUrlHash, mapping);
+        }
+        return mapping;
+    }
+
+    /**
+     * Shortens {@code fullUrls} together: identifiers for the whole batch are claimed in one step and the rows are
+     * written with a single multi-row insert. Mappings are returned in the order of {@code fullUrls}.
+     *
+     * <p>With deduplication enabled, only recently shortened URLs and repeats within the batch are resolved up front;
+     * older duplicates are skipped by the insert and resolved afterwards, at the cost of the identifiers claimed for
+     * them. A batch refused because one of its codes is taken is written again with fresh identifiers.
+     */
+    public List<TinyUrlMapping> addLinks(List<String> fullUrls) {
+        TinyUrlMapping[] mappings = new TinyUrlMapping[fullUrls.size()];
+        byte[][] fullUrlHashes = new byte[fullUrls.size()][];
+        Map<ByteBuffer, Integer> firstByHash = new HashMap<>();
+        List<Integer> pending = new ArrayList<>(fullUrls.size());
+        for (int i = 0; i < fullUrls.size(); i++) {
+            byte[] fullUrlHash = deduplicator.fingerprint(fullUrls.get(i));
+            fullUrlHashes[i] = fullUrlHash;
+            if (fullUrlHash != null) {
+                if (firstByHash.putIfAbsent(ByteBuffer.wrap(fullUrlHash), i) != null) {
+                    continue;
+                }
+                mappings[i] = deduplicator.findRecent(fullUrlHash);
+                if (mappings[i] != null) {
+                    continue;
+                }
+            }
+            pending.add(i);
+        }
+
+        if (!pending.isEmpty()) {
+            List<Long> identifiers;
+            List<UrlMappingRow> rows;
+            Set<String> skipped;
+            OffsetDateTime createdAt = OffsetDateTime.ofInstant(clock.instant(), clock.getZone());
+            for (int attempt = 1; ; attempt++) {
+                identifiers = identifierStream.next(pending.size());
+                rows = new ArrayList<>(pending.size());
+                for (int k = 0; k < pending.size(); k++) {
+                    int i = pending.get(k);
+                    rows.add(new UrlMappingRow(codeEncoder.encode(identifiers.get(k)), fullUrls.get(i),
+                            fullUrlHashes[i], createdAt));
+                }
+                try {
+                    skipped = store.insertAll(rows);
+                    break;
+                } catch (DuplicateKeyException e) {
+                    if (attempt == MAX_CODE_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+            for (int k = 0; k < pending.size(); k++) {
+                int i = pending.get(k);
+                UrlMappingRow row = rows.get(k);
+                if (skipped.contains(row.getCode())) {
+                    TinyUrlMapping existing = store.findByHash(row.getFullUrlHash(), true);
+                    if (existing == null) {
+                        throw new DuplicateUrlException(row.getFullUrl());
+                    }
+                    deduplicator.conflicted(row.getFullUrlHash(), existing);
+                    mappings[i] = existing;
+                } else {
+                    mappings[i] = new TinyUrlMapping(row.getCode(), row.getFullUrl(), createdAt.toInstant());
+                    offHeapStore.put(identifiers.get(k), mappings[i]);
+                    codeFilter.put(row.getCode());
+                    if (row.getFullUrlHash() != null) {
+                        deduplicator.remember(row.getFullUrlHash(), mappings[i]);
+                    }
+                }
+                cache.put(mappings[i]);
+            }
+        }
+
+        for (int i = 0; i < mappings.length; i++) {
+            if (mappings[i] == null) {
+                mappings[i] = mappings[firstByHash.get(ByteBuffer.wrap(fullUrlHashes[i]))];
+            }
+        }
+        return Arrays.asList(mappings);
     }
 
     public TinyUrlMapping getLink(String code) {
-        Record record = dslContext
-                .select()
-                .from(Tables.URL_MAPPING)
-                .where(Tables.URL_MAPPING.CODE.eq(code))
-                .fetchOne();
-        if (record == null) {
+        TinyUrlMapping mapping = findLink(code);
+        if (mapping == null) {
             throw new MappingNotFoundException(code);
         }
-        return new TinyUrlMapping(record.get(Tables.URL_MAPPING.CODE), record.get(Tables.URL_MAPPING.FULL_URL),
-                record.get(Tables.URL_MAPPING.CREATED_AT).toInstant());
+        return mapping;
+    }
+
+    /**
+     * Resolves {@code code}, counting a hit on it if it exists.
+     */
+    public TinyUrlMapping findLink(String code) {
+        if (!codeFilter.mightContain(code)) {
+            return null;
+        }
+        TinyUrlMapping mapping = resolve(code);
+        if (mapping != null) {
+            hitCounter.record(mapping.getCode());
+        }
+        return mapping;
+    }
+
+    /**
+     * Resolves {@code code} for another instance that found this one owns it. The code is looked up here without
+     * asking other instances, even if this instance sees a different owner, and no hit is counted; the asking instance
+     * counts it.
+     */
+    public TinyUrlMapping getOwnedLink(String code) {
+        TinyUrlMapping mapping = codeFilter.mightContain(code) ? cache.get(code, this::loadLink) : null;
+        if (mapping == null) {
+            throw new MappingNotFoundException(code);
+        }
+        return mapping;
+    }
+
+    public UrlStats getStats(String code) {
+        if (!hitCounter.available()) {
+            throw new StatsUnavailableException();
+        }
+        if (!codeFilter.mightContain(code) || resolve(code) == null) {
+            throw new MappingNotFoundException(code);
+        }
+        return hitCounter.stats(code);
+    }
+
+    /**
+     * Resolves {@code codes}, answering what it can from the heap cache and the off-heap store and the rest with a
+     * single {@link UrlMappingStore#findAll} call. Returns the mappings found, in the order of {@code codes}; unknown
+     * codes are left out.
+     */
+    public List<TinyUrlMapping> getLinks(List<String> codes) {
+        Map<String, TinyUrlMapping> found = new HashMap<>();
+        Set<String> unresolved = new LinkedHashSet<>();
+        for (String code : codes) {
+            if (!codeFilter.mightContain(code)) {
+                continue;
+            }
+            TinyUrlMapping mapping = cache.getIfPresent(code);
+            if (mapping == null && offHeapStore.enabled() && !cache.isMissing(code)) {
+                mapping = offHeapStore.get(identifierOf(code), code);
+                if (mapping != null) {
+                    cache.put(mapping);
+                }
+            }
+            if (mapping != null) {
+                found.put(code, mapping);
+            } else if (!cache.isMissing(code)) {
+                unresolved.add(code);
+            }
+        }
+
+        if (!unresolved.isEmpty()) {
+            for (TinyUrlMapping mapping : store.findAll(unresolved)) {
+                found.put(mapping.getCode(), mapping);
+                cache.put(mapping);
+                if (offHeapStore.enabled()) {
+                    offHeapStore.put(identifierOf(mapping.getCode()), mapping);
+                }
+                unresolved.remove(mapping.getCode());
+            }
+            unresolved.forEach(cache::putMissing);
+        }
+
+        List<TinyUrlMapping> mappings = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            TinyUrlMapping mapping = found.get(code);
+            if (mapping != null) {
+                mappings.add(mapping);
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Resolves {@code code} through the heap cache if this instance owns it, and asks its owner otherwise. Codes this
+     * instance created are in its heap cache whoever owns them, and answered from there.
+     */
+    private TinyUrlMapping resolve(String code) {
+        String owner = peerCache.owner(code);
+        if (owner == null) {
+            return cache.get(code, this::loadLink);
+        }
+        TinyUrlMapping mapping = cache.getIfPresent(code);
+        return mapping != null ? mapping : peerCache.get(owner, code, this::loadLink);
+    }
+
+    /**
+     * Loads a mapping missing from the heap cache, from the off-heap store when it is enabled and holds the code, and
+     * from the store otherwise, adding what the store returns to the off-heap store.
+     */
+    private TinyUrlMapping loadLink(String code) {
+        if (!offHeapStore.enabled()) {
+            return fetchLink(code);
+        }
+        long identifier = identifierOf(code);
+        TinyUrlMapping mapping = offHeapStore.get(identifier, code);
+        if (mapping == null) {
+            mapping = fetchLink(code);
+            if (mapping != null) {
+                offHeapStore.put(identifier, mapping);
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Returns the identifier behind {@code code}, or {@link CodeEncoder#INVALID} if {@code code} is not the canonical
+     * encoding of one (for example when it has leading zero digits), so that only the exact code hits the off-heap
+     * store.
+     */
+    private long identifierOf(String code) {
+        long identifier = codeEncoder.decode(code);
+        if (identifier == CodeEncoder.INVALID || !code.equals(codeEncoder.encode(identifier))) {
+            return CodeEncoder.INVALID;
+        }
+        return identifier;
+    }
+
+    /**
+     * Reads {@code code} from the store. Codes that reach this point and turn out not to exist passed the code filter
+     * by a false positive.
+     */
+    private TinyUrlMapping fetchLink(String code) {
+        TinyUrlMapping mapping = store.find(code);
+        if (mapping == null) {
+            codeFilter.recordFalsePositive();
+        }
+        return mapping;
     }
 }
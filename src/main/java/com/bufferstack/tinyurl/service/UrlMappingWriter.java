@@ -0,0 +1,319 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinuyrl.jooq.tables.records.UrlMappingHashRecord;
+import com.bufferstack.tinuyrl.jooq.tables.records.UrlMappingRecord;
+import com.bufferstack.tinyurl.exception.DuplicateUrlException;
+import com.bufferstack.tinyurl.store.UrlMappingRow;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.jooq.DSLContext;
+import org.jooq.InsertValuesStep2;
+import org.jooq.InsertValuesStep4;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Inserts URL mappings. With batching enabled, callers queue their row and wait while flusher threads write queued
+ * rows as multi-row inserts, flushing as soon as {@code maxBatchSize} rows are waiting or the oldest has waited
+ * {@code maxDelay}. A caller returns only once the statement holding its row has committed, so a successful
+ * {@link #insert} is as durable as an unbatched one.
+ *
+ * <p>Rows carrying a full URL hash first claim it in {@code url_mapping_hash} with
+ * {@code on conflict (full_url_hash) do nothing}, in the same transaction as the mapping insert; a row whose hash was
+ * already claimed is not inserted and fails its caller with {@link DuplicateUrlException}.
+ *
+ * <p>A batch whose statement fails, say because one of its codes already exists or one of its URLs is too long for
+ * the column, is retried in halves until the failing rows are on their own, so that only their callers fail.
+ */
+@Component
+public class UrlMappingWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlMappingWriter.class);
+
+    private final DSLContext dslContext;
+    private final UrlMappingPartitions partitions;
+    private final boolean batching;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingInsert> queue;
+    private final List<Thread> flushers = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+
+    public UrlMappingWriter(DSLContext dslContext, UrlMappingPartitions partitions,
+                            @Value("${tinyurl.insert-batching.enabled:false}") boolean batching,
+                            @Value("${tinyurl.insert-batching.max-batch-size:100}") int maxBatchSize,
+                            @Value("${tinyurl.insert-batching.max-delay:5ms}") Duration maxDelay,
+                            @Value("${tinyurl.insert-batching.queue-capacity:10000}") int queueCapacity,
+                            @Value("${tinyurl.insert-batching.flush-threads:2}") int flushThreads,
+                            MeterRegistry registry) {
+        this.dslContext = dslContext;
+        this.partitions = partitions;
+        this.batching = batching;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("urlMappingWriter.queue", queue, BlockingQueue::size)
+                .register(registry);
+        batchSizeSummary = DistributionSummary.builder("urlMappingWriter.batch")
+                .register(registry);
+        flushTimer = Timer.builder("urlMappingWriter.flush")
+                .register(registry);
+
+        if (batching) {
+            for (int i = 0; i < flushThreads; i++) {
+                Thread flusher = new Thread(this::flushLoop, "url-mapping-writer-" + i);
+                flusher.setDaemon(true);
+                flusher.start();
+                flushers.add(flusher);
+            }
+        }
+    }
+
+    /**
+     * Inserts a mapping. {@code fullUrlHash} may be {@code null} when deduplication is disabled.
+     *
+     * @throws DuplicateUrlException if a mapping with the same {@code fullUrlHash} already exists
+     */
+    public void insert(String code, String fullUrl, byte[] fullUrlHash, OffsetDateTime createdAt) {
+        if (!batching) {
+            insertOne(code, fullUrl, fullUrlHash, createdAt);
+            return;
+        }
+
+        if (!running) {
+            throw closed();
+        }
+        PendingInsert pending = new PendingInsert(new UrlMappingRow(code, fullUrl, fullUrlHash, createdAt));
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing insert of " + code, e);
+        }
+        // close() may have drained the queue for the last time since running was checked
+        if (!running && queue.remove(pending)) {
+            throw closed();
+        }
+        try {
+            pending.committed.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts {@code rows} with a single multi-row statement (two, in one transaction, when they carry full URL
+     * hashes), bypassing the batching queue, and returns the codes of rows that were skipped because a mapping with
+     * the same full URL hash already exists.
+     */
+    public Set<String> insertAll(List<UrlMappingRow> rows) {
+        batchSizeSummary.record(rows.size());
+        return flushTimer.record(() -> insertBatch(rows));
+    }
+
+    /**
+     * Stops the flushers once they have written what was queued, and fails the callers of rows still queued after
+     * that, so that none of them waits forever.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        for (Thread flusher : flushers) {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        List<PendingInsert> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        if (!abandoned.isEmpty()) {
+            logger.warn("Failing {} URL mapping inserts queued after the writer closed", abandoned.size());
+            abandoned.forEach(pending -> pending.committed.completeExceptionally(closed()));
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                collect(batch);
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        }
+    }
+
+    private void collect(List<PendingInsert> batch) throws InterruptedException {
+        PendingInsert first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+            PendingInsert next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Writes {@code batch} and completes its callers. If the statement fails, each half of the batch is written on its
+     * own, down to single rows, whose callers then get the failure.
+     */
+    private void flush(List<PendingInsert> batch) {
+        try {
+            Set<String> skipped = insertAll(batch.stream().map(pending -> pending.row).collect(Collectors.toList()));
+            for (PendingInsert pending : batch) {
+                if (skipped.contains(pending.row.getCode())) {
+                    pending.committed.completeExceptionally(new DuplicateUrlException(pending.row.getFullUrl()));
+                } else {
+                    pending.committed.complete(null);
+                }
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                logger.error("Unable to insert URL mapping {}", batch.get(0).row.getCode(), e);
+                batch.get(0).committed.completeExceptionally(e);
+                return;
+            }
+            logger.warn("Unable to insert a batch of {} URL mappings, retrying it in halves", batch.size(), e);
+            int half = batch.size() / 2;
+            flush(batch.subList(0, half));
+            flush(batch.subList(half, batch.size()));
+        }
+    }
+
+    private static IllegalStateException closed() {
+        return new IllegalStateException("URL mapping writer has been closed");
+    }
+
+    private void insertOne(String code, String fullUrl, byte[] fullUrlHash, OffsetDateTime createdAt) {
+        if (fullUrlHash == null) {
+            insertMapping(dslContext, code, fullUrl, createdAt);
+            return;
+        }
+        dslContext.transaction(configuration -> {
+            int inserted = configuration.dsl()
+                    .insertInto(Tables.URL_MAPPING_HASH)
+                    .set(Tables.URL_MAPPING_HASH.FULL_URL_HASH, fullUrlHash)
+                    .set(Tables.URL_MAPPING_HASH.CODE, code)
+                    .onConflict(Tables.URL_MAPPING_HASH.FULL_URL_HASH)
+                    .doNothing()
+                    .execute();
+            if (inserted == 0) {
+                throw new DuplicateUrlException(fullUrl);
+            }
+            insertMapping(configuration.dsl(), code, fullUrl, createdAt);
+        });
+    }
+
+    private void insertMapping(DSLContext context, String code, String fullUrl, OffsetDateTime createdAt) {
+        context
+                .insertInto(Tables.URL_MAPPING)
+                .set(Tables.URL_MAPPING.BUCKET, partitions.bucket(code))
+                .set(Tables.URL_MAPPING.CODE, code)
+                .set(Tables.URL_MAPPING.FULL_URL, fullUrl)
+                .set(Tables.URL_MAPPING.CREATED_AT, createdAt)
+                .execute();
+    }
+
+    private Set<String> insertBatch(List<UrlMappingRow> rows) {
+        if (rows.stream().allMatch(row -> row.getFullUrlHash() == null)) {
+            insertMappings(dslContext, rows);
+            return Collections.emptySet();
+        }
+        return dslContext.transactionResult(configuration -> {
+            Set<String> skipped = insertHashes(configuration.dsl(), rows);
+            insertMappings(configuration.dsl(), skipped.isEmpty() ? rows : rows.stream()
+                    .filter(row -> !skipped.contains(row.getCode()))
+                    .collect(Collectors.toList()));
+            return skipped;
+        });
+    }
+
+    /**
+     * Claims the full URL hashes of {@code rows} and returns the codes of rows whose hash was already claimed.
+     */
+    private Set<String> insertHashes(DSLContext context, List<UrlMappingRow> rows) {
+        InsertValuesStep2<UrlMappingHashRecord, byte[], String> insert = context
+                .insertInto(Tables.URL_MAPPING_HASH,
+                        Tables.URL_MAPPING_HASH.FULL_URL_HASH, Tables.URL_MAPPING_HASH.CODE);
+        for (UrlMappingRow row : rows) {
+            if (row.getFullUrlHash() != null) {
+                insert = insert.values(row.getFullUrlHash(), row.getCode());
+            }
+        }
+        Set<String> inserted = insert
+                .onConflict(Tables.URL_MAPPING_HASH.FULL_URL_HASH)
+                .doNothing()
+                .returningResult(Tables.URL_MAPPING_HASH.CODE)
+                .fetch()
+                .intoSet(Tables.URL_MAPPING_HASH.CODE);
+        return rows.stream()
+                .filter(row -> row.getFullUrlHash() != null && !inserted.contains(row.getCode()))
+                .map(UrlMappingRow::getCode)
+                .collect(Collectors.toSet());
+    }
+
+    private void insertMappings(DSLContext context, List<UrlMappingRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        InsertValuesStep4<UrlMappingRecord, Short, String, String, OffsetDateTime> insert = context
+                .insertInto(Tables.URL_MAPPING, Tables.URL_MAPPING.BUCKET, Tables.URL_MAPPING.CODE,
+                        Tables.URL_MAPPING.FULL_URL, Tables.URL_MAPPING.CREATED_AT);
+        for (UrlMappingRow row : rows) {
+            insert = insert.values(partitions.bucket(row.getCode()), row.getCode(), row.getFullUrl(),
+                    row.getCreatedAt());
+        }
+        insert.execute();
+    }
+
+    private static class PendingInsert {
+
+        final UrlMappingRow row;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        PendingInsert(UrlMappingRow row) {
+            this.row = row;
+        }
+    }
+}
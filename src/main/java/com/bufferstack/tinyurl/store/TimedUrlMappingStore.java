@@ -0,0 +1,84 @@
+package com.bufferstack.tinyurl.store;
+
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.utils.StageTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Times the calls to another store as the {@code select} and {@code insert} stages of {@link StageTimers}. Inserts
+ * include the time spent waiting for a batch when {@code UrlMappingWriter} batches them, as that is what the caller
+ * waits for.
+ */
+public class TimedUrlMappingStore implements UrlMappingStore {
+
+    private final UrlMappingStore store;
+    private final Timer findTimer;
+    private final Timer findAllTimer;
+    private final Timer findByHashTimer;
+    private final Timer insertTimer;
+    private final Timer insertAllTimer;
+
+    public TimedUrlMappingStore(UrlMappingStore store, MeterRegistry registry) {
+        this.store = store;
+        findTimer = StageTimers.register(registry, "select", "find");
+        findAllTimer = StageTimers.register(registry, "select", "findAll");
+        findByHashTimer = StageTimers.register(registry, "select", "findByHash");
+        insertTimer = StageTimers.register(registry, "insert", "insert");
+        insertAllTimer = StageTimers.register(registry, "insert", "insertAll");
+    }
+
+    @Override
+    public TinyUrlMapping find(String code) {
+        return findTimer.record(() -> store.find(code));
+    }
+
+    @Override
+    public List<TinyUrlMapping> findAll(Collection<String> codes) {
+        return findAllTimer.record(() -> store.findAll(codes));
+    }
+
+    @Override
+    public TinyUrlMapping findByHash(byte[] fullUrlHash, boolean current) {
+        return findByHashTimer.record(() -> store.findByHash(fullUrlHash, current));
+    }
+
+    @Override
+    public void insert(String code, String fullUrl, byte[] fullUrlHash, OffsetDateTime createdAt) {
+        insertTimer.record(() -> store.insert(code, fullUrl, fullUrlHash, createdAt));
+    }
+
+    @Override
+    public Set<String> insertAll(List<UrlMappingRow> rows) {
+        return insertAllTimer.record(() -> store.insertAll(rows));
+    }
+
+    /**
+     * Not timed: a scan runs for as long as the table takes to read, far beyond the range of the stage histograms.
+     */
+    @Override
+    public void scan(Consumer<TinyUrlMapping> consumer) {
+        store.scan(consumer);
+    }
+
+    @Override
+    public void scanCreatedSince(Instant since, Consumer<TinyUrlMapping> consumer) {
+        store.scanCreatedSince(since, consumer);
+    }
+
+    @Override
+    public boolean shared() {
+        return store.shared();
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+}
@@ -0,0 +1,40 @@
+package com.bufferstack.tinyurl.store;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A mapping about to be inserted, with the hash of its full URL when deduplication is enabled.
+ */
+public class UrlMappingRow {
+
+    private final String code;
+    private final String fullUrl;
+    private final byte[] fullUrlHash;
+    private final OffsetDateTime createdAt;
+
+    public UrlMappingRow(String code, String fullUrl, byte[] fullUrlHash, OffsetDateTime createdAt) {
+        this.code = code;
+        this.fullUrl = fullUrl;
+        this.fullUrlHash = fullUrlHash;
+        this.createdAt = createdAt;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getFullUrl() {
+        return fullUrl;
+    }
+
+    /**
+     * Returns the hash of the full URL, or {@code null} when deduplication is disabled.
+     */
+    public byte[] getFullUrlHash() {
+        return fullUrlHash;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
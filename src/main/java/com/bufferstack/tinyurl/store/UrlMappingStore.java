@@ -0,0 +1,74 @@
+package com.bufferstack.tinyurl.store;
+
+import com.bufferstack.tinyurl.exception.DuplicateUrlException;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.springframework.dao.DuplicateKeyException;
+
+/**
+ * Durable storage of URL mappings behind {@code UrlMappingService}; the caches in front of it are the service's
+ * concern. Mappings never change once inserted, and a full URL hash, when given, belongs to at most one mapping.
+ */
+public interface UrlMappingStore extends AutoCloseable {
+
+    /**
+     * Returns the mapping of {@code code}, or {@code null} if there is none.
+     */
+    TinyUrlMapping find(String code);
+
+    /**
+     * Returns the mappings of those of {@code codes} that exist, in no particular order.
+     */
+    List<TinyUrlMapping> findAll(Collection<String> codes);
+
+    /**
+     * Returns the mapping holding {@code fullUrlHash}, or {@code null} if there is none. With {@code current} the
+     * answer reflects every write that has completed, as needed to resolve a conflict; otherwise a slightly stale view,
+     * such as a read replica's, will do.
+     */
+    TinyUrlMapping findByHash(byte[] fullUrlHash, boolean current);
+
+    /**
+     * Inserts a mapping. {@code fullUrlHash} may be {@code null} when deduplication is disabled.
+     *
+     * @throws DuplicateUrlException if a mapping with the same {@code fullUrlHash} already exists
+     * @throws DuplicateKeyException if a mapping with the same {@code code} already exists
+     */
+    void insert(String code, String fullUrl, byte[] fullUrlHash, OffsetDateTime createdAt);
+
+    /**
+     * Inserts {@code rows} together and returns the codes of rows that were skipped because a mapping with the same
+     * full URL hash already exists.
+     *
+     * @throws DuplicateKeyException if a mapping with the code of any of {@code rows} already exists, or two of
+     *                               {@code rows} share a code, in which case none is inserted
+     */
+    Set<String> insertAll(List<UrlMappingRow> rows);
+
+    /**
+     * Passes every mapping to {@code consumer}, in no particular order, holding only a bounded number of them in
+     * memory at a time. Mappings inserted while the scan runs may or may not be included, and a mapping may be passed
+     * twice if it moves between tables meanwhile.
+     */
+    void scan(Consumer<TinyUrlMapping> consumer);
+
+    /**
+     * Passes every mapping created at or after {@code since} to {@code consumer}, like {@link #scan}.
+     */
+    void scanCreatedSince(Instant since, Consumer<TinyUrlMapping> consumer);
+
+    /**
+     * Returns whether other instances insert into this store as well, so that it can hold mappings this instance did
+     * not insert.
+     */
+    boolean shared();
+
+    @Override
+    default void close() {
+    }
+}
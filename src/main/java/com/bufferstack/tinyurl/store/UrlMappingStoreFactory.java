@@ -0,0 +1,83 @@
+package com.bufferstack.tinyurl.store;
+
+import com.bufferstack.tinyurl.lsm.LsmUrlMappingStore;
+import com.bufferstack.tinyurl.service.PostgresUrlMappingStore;
+import com.bufferstack.tinyurl.service.UrlMappingLookup;
+import com.bufferstack.tinyurl.service.UrlMappingPartitions;
+import com.bufferstack.tinyurl.service.UrlMappingWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jooq.DSLContext;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+@Component
+public class UrlMappingStoreFactory {
+
+    private final String urlMappingStoreName;
+    private final DSLContext dslContext;
+    private final DSLContext readDslContext;
+    private final boolean primaryFallback;
+    private final UrlMappingPartitions partitions;
+    private final UrlMappingLookup lookup;
+    private final UrlMappingWriter writer;
+    private final String lsmDirectory;
+    private final DataSize lsmMemtableSize;
+    private final int lsmMaxTables;
+    private final DataSize lsmTableSize;
+    private final double lsmFpp;
+    private final boolean lsmSync;
+    private final MeterRegistry registry;
+
+    public UrlMappingStoreFactory(@Value("${tinyurl.url-mapping-store:POSTGRES}") String urlMappingStoreName,
+                                  DSLContext dslContext,
+                                  @Qualifier("read") DSLContext readDslContext,
+                                  @Value("${tinyurl.datasource.read.url:}") String readUrl,
+                                  @Value("${tinyurl.datasource.read.primary-fallback:}") String primaryFallback,
+                                  UrlMappingPartitions partitions, UrlMappingLookup lookup, UrlMappingWriter writer,
+                                  @Value("${tinyurl.lsm.directory:/var/lib/tinyurl/lsm}") String lsmDirectory,
+                                  @Value("${tinyurl.lsm.memtable-size:64MB}") DataSize lsmMemtableSize,
+                                  @Value("${tinyurl.lsm.max-tables:4}") int lsmMaxTables,
+                                  @Value("${tinyurl.lsm.table-size:1GB}") DataSize lsmTableSize,
+                                  @Value("${tinyurl.lsm.fpp:0.01}") double lsmFpp,
+                                  @Value("${tinyurl.lsm.sync:true}") boolean lsmSync,
+                                  MeterRegistry registry) {
+        this.urlMappingStoreName = urlMappingStoreName;
+        this.dslContext = dslContext;
+        this.readDslContext = readDslContext;
+        // A replica may not have brand-new codes yet, so fall back to the primary by default when there is one.
+        this.primaryFallback = primaryFallback.isEmpty() ? !readUrl.isEmpty() : Boolean.parseBoolean(primaryFallback);
+        this.partitions = partitions;
+        this.lookup = lookup;
+        this.writer = writer;
+        this.lsmDirectory = lsmDirectory;
+        this.lsmMemtableSize = lsmMemtableSize;
+        this.lsmMaxTables = lsmMaxTables;
+        this.lsmTableSize = lsmTableSize;
+        this.lsmFpp = lsmFpp;
+        this.lsmSync = lsmSync;
+        this.registry = registry;
+    }
+
+    public UrlMappingStore getUrlMappingStore() {
+        if ("POSTGRES".equalsIgnoreCase(urlMappingStoreName)) {
+            return new TimedUrlMappingStore(new PostgresUrlMappingStore(dslContext, readDslContext, primaryFallback,
+                    partitions, lookup, writer), registry);
+        }
+
+        if ("LSM".equalsIgnoreCase(urlMappingStoreName)) {
+            return new TimedUrlMappingStore(LsmUrlMappingStore.LsmUrlMappingStoreBuilder.builder()
+                    .withDirectory(lsmDirectory)
+                    .withMemtableBytes(lsmMemtableSize.toBytes())
+                    .withMaxTables(lsmMaxTables)
+                    .withTableBytes(lsmTableSize.toBytes())
+                    .withFpp(lsmFpp)
+                    .withSync(lsmSync)
+                    .withMeterRegistry(registry)
+                    .build(), registry);
+        }
+
+        throw new RuntimeException("Unable to build a URL mapping store " + urlMappingStoreName);
+    }
+}
@@ -0,0 +1,36 @@
+package com.bufferstack.tinyurl.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+
+/**
+ * Timers of the stages a request spends its time in, all named {@value #NAME} and told apart by a {@code stage}
+ * tag ({@code identifier}, {@code insert}, {@code select}, {@code serialize} or {@code cache}) and an
+ * {@code operation} tag.
+ *
+ * <p>They publish a percentile histogram, which Prometheus receives as cumulative {@code le} buckets, so that
+ * percentiles are computed with {@code histogram_quantile} across instances rather than on each of them. Recording
+ * only increments the bucket a duration falls in. The buckets span {@link #MINIMUM} to {@link #MAXIMUM}, wide enough
+ * for a cache hit and for a database call stuck waiting on the pool.
+ */
+public final class StageTimers {
+
+    public static final String NAME = "urlMapping.stage";
+
+    static final Duration MINIMUM = Duration.ofNanos(1_000);
+    static final Duration MAXIMUM = Duration.ofSeconds(5);
+
+    private StageTimers() {
+    }
+
+    public static Timer register(MeterRegistry registry, String stage, String operation) {
+        return Timer.builder(NAME)
+                .tag("stage", stage)
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MINIMUM)
+                .maximumExpectedValue(MAXIMUM)
+                .register(registry);
+    }
+}
@@ -0,0 +1,74 @@
+package com.bufferstack.tinyurl.zookeeper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Local copy of the identifier blocks a stream holds but has not handed anything out of, one {@code first end} pair
+ * per line, so that a restarted process can keep issuing identifiers before it reaches ZooKeeper. A block must be
+ * removed from the file before its first identifier is handed out, which is why {@link #write} replaces the file
+ * atomically and forces it to disk before returning. The file belongs to a single process; two sharing one would
+ * issue the same identifiers.
+ */
+final class IdentifierBlockFile {
+
+    private final Path path;
+
+    IdentifierBlockFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the blocks in the file, packed as {@link ZkIdentifierStream} packs them, or none when there is no file.
+     */
+    List<Long> read() throws IOException {
+        List<Long> blocks = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return blocks;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.US_ASCII)) {
+            String[] bounds = line.trim().split(" ");
+            if (bounds.length != 2) {
+                continue;
+            }
+            int first = Integer.parseInt(bounds[0]);
+            int end = Integer.parseInt(bounds[1]);
+            if (first < end) {
+                blocks.add(ZkIdentifierStream.pack(first, end));
+            }
+        }
+        return blocks;
+    }
+
+    void write(Collection<Long> blocks) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (long block : blocks) {
+            content.append(ZkIdentifierStream.value(block)).append(' ').append(ZkIdentifierStream.end(block))
+                    .append('\n');
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    Path path() {
+        return path;
+    }
+}
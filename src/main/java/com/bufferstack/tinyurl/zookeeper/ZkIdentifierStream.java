@@ -8,44 +8,152 @@ import com.evanlennick.retry4j.config.RetryConfigBuilder;
 import com.evanlennick.retry4j.exception.RetriesExhaustedException;
 import com.google.common.annotations.VisibleForTesting;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.atomic.AtomicValue;
 import org.apache.curator.framework.recipes.atomic.DistributedAtomicInteger;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class ZkIdentifierStream implements IdentifierStream<String> {
+/**
+ * Hands out identifiers from blocks reserved on the {@code /tinyurlId} counter.
+ *
+ * <p>The block in use is packed into a single {@code long} (next value in the high half, exclusive end in the low
+ * half) so that {@link #next()} is a plain CAS loop. Once fewer than {@code lowWaterMark} identifiers are left in the
+ * block, the next one is reserved on a background thread; request threads only wait on ZooKeeper when that prefetch
+ * has not completed in time, which is recorded as a stall. A low-water mark of {@code 0} disables prefetching.
+ *
+ * <p>The ZooKeeper client waits for replies inside {@code synchronized} blocks, which would pin the carrier of a virtual
+ * thread, so a stalled caller hands the reservation to the prefetch executor and waits for its result instead.
+ *
+ * <p>With a non-zero {@code headroom}, each block is sized to last that long at the allocation rate observed so far,
+ * an exponentially weighted moving average over roughly the last {@code headroom}, bounded by
+ * {@code minReservationSize} and {@code maxReservationSize}. Busy pods then reserve larger blocks rather than more of
+ * them, which keeps the write rate on the counter flat as traffic grows, and quiet pods reserve small ones that cost
+ * little when a restart throws them away. On {@link #close()}, unused identifiers are handed back to the counter if no
+ * other pod has reserved a block since, and counted as wasted otherwise.
+ *
+ * <p>With a non-zero {@code bufferBlocks}, that many whole blocks are kept reserved behind the one in use and topped up
+ * whenever one is taken, so that identifiers keep flowing while ZooKeeper is unreachable for as long as the buffered
+ * blocks last. Given a {@code bufferFile}, the buffered blocks are also kept on local disk, where a restarted process
+ * picks them up before it has reached ZooKeeper, along with whatever {@link #close()} could not hand back. The stream
+ * is ready while it holds identifiers or is connected to reserve more; {@link #runway()} reports how many it holds.
+ *
+ * <p>The counter is a 32-bit {@link DistributedAtomicInteger}, so identifiers end at {@code Integer.MAX_VALUE - 1};
+ * the last block is cut short there and reserving fails from then on, rather than wrapping around to identifiers
+ * already issued.
+ *
+ * <p>{@link #advancePast(long)} moves the counter up to an identifier that was taken elsewhere, such as by an import,
+ * and records it on {@code /tinyurlIdAdvanced}, which every stream watches, so that each trims the blocks it holds and
+ * none of them hands it out. Blocks that were being reserved meanwhile are trimmed as they are put in use. A stream
+ * can still hand out such an identifier before the watch fires; callers that may meet one retry with another.
+ */
+public class ZkIdentifierStream implements IdentifierStream<Long> {
 
     private static final Logger logger = LoggerFactory.getLogger(ZkIdentifierStream.class);
 
+    private static final long EXHAUSTED = 0L;
+    private static final String ADVANCED_PATH = "/tinyurlIdAdvanced";
+
     private final CuratorFramework zkClient;
     private final int reservationSize;
+    private final int lowWaterMark;
+    private final int minReservationSize;
+    private final int maxReservationSize;
+    private final long headroomMillis;
+    private final Clock clock;
+    private final int bufferBlocks;
+    private final IdentifierBlockFile blockFile;
+    private final Executor prefetchExecutor;
+
+    private final AtomicLong range = new AtomicLong(EXHAUSTED);
+    private final Deque<Long> reservedBlocks = new ConcurrentLinkedDeque<>();
+    private final AtomicLong installed = new AtomicLong();
+    private final AtomicInteger advancedPast = new AtomicInteger();
+    private final AtomicBoolean prefetching = new AtomicBoolean(false);
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private final ReentrantLock blockFileLock = new ReentrantLock();
 
-    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean ready = false;
+    private volatile boolean connected = true;
+    private volatile boolean closed = false;
 
-    private boolean ready = false;
-    private AtomicInteger currentValue;
-    private int lastValue;
+    private long lastSampleMillis = -1;
+    private long lastAllocated;
+    private volatile double allocationRate;
 
     private final Counter getValueExceptionCounter;
     private final Counter setValueExceptionCounter;
     private final Counter initExceptionCounter;
+    private final Counter prefetchExceptionCounter;
     private final Timer initTimer;
+    private final Timer stallTimer;
+    private final DistributionSummary blockSizeSummary;
+    private final Counter returnedCounter;
+    private final Counter wastedCounter;
+    private final Counter persistedCounter;
+    private final Counter persistExceptionCounter;
 
-    private final CallExecutor<Boolean> callExecutor;
+    private final CallExecutor<Long> callExecutor;
+    private final ConnectionStateListener connectionStateListener = this::stateChanged;
+    private NodeCache advanceCache;
 
     @VisibleForTesting
-    @SuppressWarnings("unchecked")
-    ZkIdentifierStream(CuratorFramework zkClient, int reservationSize, MeterRegistry registry) {
+    ZkIdentifierStream(CuratorFramework zkClient, int reservationSize, int lowWaterMark, Executor prefetchExecutor,
+                       MeterRegistry registry) {
+        this(zkClient, reservationSize, lowWaterMark, reservationSize, reservationSize, Duration.ZERO,
+                Clock.systemUTC(), 0, null, prefetchExecutor, registry);
+    }
+
+    @VisibleForTesting
+    ZkIdentifierStream(CuratorFramework zkClient, int reservationSize, int lowWaterMark, int minReservationSize,
+                       int maxReservationSize, Duration headroom, Clock clock, int bufferBlocks, Path bufferFile,
+                       Executor prefetchExecutor, MeterRegistry registry) {
         this.zkClient = zkClient;
         this.reservationSize = reservationSize;
+        this.lowWaterMark = lowWaterMark;
+        this.minReservationSize = minReservationSize;
+        this.maxReservationSize = maxReservationSize;
+        this.headroomMillis = headroom.toMillis();
+        this.clock = clock;
+        this.allocationRate = headroomMillis > 0 ? reservationSize * 1000.0 / headroomMillis : 0;
+        this.bufferBlocks = bufferBlocks;
+        this.blockFile = bufferFile != null ? new IdentifierBlockFile(bufferFile) : null;
+        this.prefetchExecutor = prefetchExecutor;
 
         RetryConfig retryConfig = new RetryConfigBuilder()
                 .retryOnAnyException()
@@ -54,7 +162,7 @@ public class ZkIdentifierStream implements IdentifierStream<String> {
                 .withExponentialBackoff()
                 .build();
 
-        callExecutor = new CallExecutorBuilder<Boolean>()
+        callExecutor = new CallExecutorBuilder<Long>()
                 .config(retryConfig)
                 .build();
 
@@ -67,38 +175,492 @@ public class ZkIdentifierStream implements IdentifierStream<String> {
         initExceptionCounter = Counter.builder("identifierStream")
                 .tag("type", "zk").tag("result", "exception").tag("action", "init")
                 .register(registry);
+        prefetchExceptionCounter = Counter.builder("identifierStream")
+                .tag("type", "zk").tag("result", "exception").tag("action", "prefetch")
+                .register(registry);
         initTimer = Timer.builder("identifierStream")
                 .tag("type", "zk").tag("action", "init")
                 .register(registry);
+        stallTimer = Timer.builder("identifierStream")
+                .tag("type", "zk").tag("action", "stall")
+                .register(registry);
+        // Its count is the number of reservations, so its rate is the write rate on the counter.
+        blockSizeSummary = DistributionSummary.builder("identifierStream.blockSize")
+                .tag("type", "zk")
+                .register(registry);
+        returnedCounter = Counter.builder("identifierStream.unused")
+                .tag("type", "zk").tag("result", "returned")
+                .register(registry);
+        wastedCounter = Counter.builder("identifierStream.unused")
+                .tag("type", "zk").tag("result", "wasted")
+                .register(registry);
+        persistedCounter = Counter.builder("identifierStream.unused")
+                .tag("type", "zk").tag("result", "persisted")
+                .register(registry);
+        persistExceptionCounter = Counter.builder("identifierStream")
+                .tag("type", "zk").tag("result", "exception").tag("action", "persist")
+                .register(registry);
+        Gauge.builder("identifierStream.runway", this, stream -> stream.runway())
+                .tag("type", "zk")
+                .register(registry);
+        Gauge.builder("identifierStream.allocationRate", this, stream -> stream.allocationRate)
+                .tag("type", "zk")
+                .register(registry);
     }
 
     @Override
-    public String next() {
-        lock.lock();
-        try {
-            if (currentValue.get() >= lastValue) {
-                init();
+    public Long next() {
+        while (true) {
+            long current = range.get();
+            int value = value(current);
+            int end = end(current);
+            if (value < end) {
+                if (range.compareAndSet(current, pack(value + 1, end))) {
+                    if (end - value - 1 < lowWaterMark) {
+                        prefetch();
+                    }
+                    return (long) value;
+                }
+            } else {
+                refill(current);
             }
-        } finally {
-            lock.unlock();
         }
-        return String.valueOf(currentValue.getAndIncrement());
+    }
+
+    /**
+     * Claims up to {@code count} consecutive identifiers from the current block with a single CAS, continuing in the
+     * next block only when the current one runs out.
+     */
+    @Override
+    public List<Long> next(int count) {
+        List<Long> identifiers = new ArrayList<>(count);
+        while (identifiers.size() < count) {
+            long current = range.get();
+            int value = value(current);
+            int end = end(current);
+            if (value < end) {
+                int claimed = Math.min(count - identifiers.size(), end - value);
+                if (range.compareAndSet(current, pack(value + claimed, end))) {
+                    for (int i = 0; i < claimed; i++) {
+                        identifiers.add((long) value + i);
+                    }
+                    if (end - value - claimed < lowWaterMark) {
+                        prefetch();
+                    }
+                }
+            } else {
+                refill(current);
+            }
+        }
+        return identifiers;
     }
 
     @Override
     public boolean ready() {
-        return ready;
+        return ready && (connected || runway() > 0);
     }
 
+    /**
+     * Returns the identifiers left in the block in use and in the buffered blocks.
+     */
+    @Override
+    public long runway() {
+        long current = range.get();
+        long runway = Math.max(0, end(current) - value(current));
+        for (long block : reservedBlocks) {
+            runway += end(block) - value(block);
+        }
+        return runway;
+    }
+
+    /**
+     * Moves the counter up to {@code identifier} unless it is there already, records it for the other streams, then
+     * drops the identifiers up to it from the block in use and the buffered blocks, counting them as wasted.
+     * Identifiers beyond the last one the counter can issue exhaust it.
+     */
+    @Override
+    public void advancePast(long identifier) {
+        if (identifier <= 0) {
+            return;
+        }
+        int target = (int) Math.min(identifier, Integer.MAX_VALUE - 1);
+        advancedPast.accumulateAndGet(target, Math::max);
+        advanceCounter(target);
+        announceAdvance(target);
+        trimPast(target);
+    }
+
+    /**
+     * Hands the unused identifiers back to the counter, newest block first, as long as each block still ends where the
+     * counter does; whatever cannot be handed back is kept in the buffer file when there is one and counted as wasted
+     * otherwise. Prefetching is stopped and awaited first, so that no block is reserved or written to the buffer file
+     * meanwhile, and the blocks are taken out of the buffer file before any is handed back, so that a crash in between
+     * wastes them rather than leaving them both in the file and on the counter for another pod to reserve. Callers
+     * still asking for identifiers afterwards get a newly reserved block.
+     */
+    @Override
+    public void close() {
+        zkClient.getConnectionStateListenable().removeListener(connectionStateListener);
+        closed = true;
+        if (advanceCache != null) {
+            try {
+                advanceCache.close();
+            } catch (IOException e) {
+                logger.warn("Unable to stop watching {}", ADVANCED_PATH, e);
+            }
+        }
+        awaitPrefetch();
+        List<Long> unused = new ArrayList<>();
+        for (Long block = reservedBlocks.pollLast(); block != null; block = reservedBlocks.pollLast()) {
+            unused.add(block);
+        }
+        unused.add(range.getAndSet(EXHAUSTED));
+        unused.replaceAll(this::trimAndCount);
+        unused.removeIf(block -> end(block) <= value(block));
+
+        boolean returning = blockFile == null || writeBlockFile(List.of());
+        List<Long> kept = new ArrayList<>();
+        for (long block : unused) {
+            int count = end(block) - value(block);
+            returning = returning && handBack(block);
+            if (returning) {
+                returnedCounter.increment(count);
+            } else if (blockFile != null) {
+                kept.add(block);
+            } else {
+                wastedCounter.increment(count);
+            }
+        }
+        if (!kept.isEmpty()) {
+            kept.sort(Comparator.comparingInt(ZkIdentifierStream::value));
+            long count = kept.stream().mapToLong(block -> end(block) - value(block)).sum();
+            if (writeBlockFile(kept)) {
+                persistedCounter.increment(count);
+            } else {
+                wastedCounter.increment(count);
+            }
+        }
+        logger.info("Closed identifier stream with {} identifiers returned, {} persisted and {} wasted",
+                (long) returnedCounter.count(), (long) persistedCounter.count(), (long) wastedCounter.count());
+    }
+
+    /**
+     * Starts on the blocks left in the buffer file when there are any, and on a newly reserved block otherwise.
+     */
     @VisibleForTesting
     void init() {
-        initTimer.record(() -> {
-            Callable<Boolean> callable = () -> {
-                initializeCounter();
-                return true;
+        zkClient.getConnectionStateListenable().addListener(connectionStateListener);
+        watchAdvances();
+        if (blockFile != null) {
+            try {
+                reservedBlocks.addAll(blockFile.read());
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Ignoring unreadable identifier blocks in {}", blockFile.path(), e);
+            }
+        }
+        if (reservedBlocks.isEmpty()) {
+            install(reserve());
+        } else {
+            logger.info("Starting on {} identifiers kept in {}", runway(), blockFile.path());
+            install(takeReservedBlock());
+        }
+        if (bufferBlocks > 0) {
+            prefetch();
+        }
+    }
+
+    @VisibleForTesting
+    double allocationRate() {
+        return allocationRate;
+    }
+
+    /**
+     * Records {@code target} on {@code /tinyurlIdAdvanced} unless an identifier at least as large is there already.
+     */
+    @VisibleForTesting
+    void announceAdvance(int target) {
+        try {
+            for (int attempt = 0; attempt < 10; attempt++) {
+                Stat stat = new Stat();
+                byte[] data;
+                try {
+                    data = zkClient.getData().storingStatIn(stat).forPath(ADVANCED_PATH);
+                } catch (KeeperException.NoNodeException e) {
+                    try {
+                        zkClient.create().forPath(ADVANCED_PATH, toBytes(target));
+                        return;
+                    } catch (KeeperException.NodeExistsException raced) {
+                        continue;
+                    }
+                }
+                if (fromBytes(data) >= target) {
+                    return;
+                }
+                try {
+                    zkClient.setData().withVersion(stat.getVersion()).forPath(ADVANCED_PATH, toBytes(target));
+                    return;
+                } catch (KeeperException.BadVersionException raced) {
+                    // Another stream advanced meanwhile; see whether it went far enough.
+                }
+            }
+        } catch (Exception e) {
+            setValueExceptionCounter.increment();
+            throw new IllegalStateException("Unable to record the advance past " + target + " on " + ADVANCED_PATH, e);
+        }
+        setValueExceptionCounter.increment();
+        throw new IllegalStateException("Unable to record the advance past " + target + " on " + ADVANCED_PATH
+                + ", it kept changing");
+    }
+
+    @VisibleForTesting
+    NodeCache anAdvanceCache() {
+        return new NodeCache(zkClient, ADVANCED_PATH);
+    }
+
+    /**
+     * Trims the blocks held here whenever {@code /tinyurlIdAdvanced} changes, including once it is first read. The
+     * watch is set up in the background, so a stream starting while ZooKeeper is unreachable picks up advances made
+     * meanwhile once it connects.
+     */
+    private void watchAdvances() {
+        advanceCache = anAdvanceCache();
+        advanceCache.getListenable().addListener(this::advanceAnnounced);
+        try {
+            advanceCache.start();
+        } catch (Exception e) {
+            logger.warn("Unable to watch {}, advances made elsewhere are not trimmed here", ADVANCED_PATH, e);
+            initExceptionCounter.increment();
+        }
+    }
+
+    private void advanceAnnounced() {
+        ChildData data = advanceCache.getCurrentData();
+        if (data == null || data.getData() == null || data.getData().length == 0) {
+            return;
+        }
+        try {
+            trimPast(fromBytes(data.getData()));
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring unreadable advance on {}", ADVANCED_PATH, e);
+        }
+    }
+
+    /**
+     * Drops the identifiers up to {@code target} from the block in use and the buffered blocks, counting them as
+     * wasted, and rewrites the buffer file if any buffered block changed. Does nothing once the stream has been
+     * advanced further.
+     */
+    private void trimPast(int target) {
+        if (advancedPast.getAndAccumulate(target, Math::max) > target) {
+            return;
+        }
+        boolean trimmedAny = false;
+        refillLock.lock();
+        try {
+            while (true) {
+                long current = range.get();
+                long trimmed = trim(current);
+                if (trimmed == current) {
+                    break;
+                }
+                if (range.compareAndSet(current, trimmed)) {
+                    wastedCounter.increment(value(trimmed) - value(current));
+                    trimmedAny = true;
+                    break;
+                }
+            }
+            // The buffered blocks were reserved one after another, so only the oldest can hold identifiers up to it.
+            boolean trimmedBuffered = false;
+            Long block;
+            while ((block = reservedBlocks.peekFirst()) != null && value(block) <= target) {
+                reservedBlocks.pollFirst();
+                trimmedBuffered = true;
+                long trimmed = trimAndCount(block);
+                if (end(trimmed) > value(trimmed)) {
+                    reservedBlocks.offerFirst(trimmed);
+                    break;
+                }
+            }
+            if (trimmedBuffered && blockFile != null) {
+                try {
+                    persistReservedBlocks();
+                } catch (IOException e) {
+                    logger.warn("Unable to keep identifier blocks in {}", blockFile.path(), e);
+                    persistExceptionCounter.increment();
+                }
+            }
+            trimmedAny |= trimmedBuffered;
+        } finally {
+            refillLock.unlock();
+        }
+        if (trimmedAny) {
+            logger.info("Advanced identifier stream past {}, {} identifiers left", target, runway());
+        }
+    }
+
+    private static byte[] toBytes(int identifier) {
+        return Integer.toString(identifier).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int fromBytes(byte[] data) {
+        return Integer.parseInt(new String(data, StandardCharsets.UTF_8));
+    }
+
+    private void refill(long exhausted) {
+        refillLock.lock();
+        try {
+            if (range.get() != exhausted) {
+                return;
+            }
+            Long block = takeReservedBlock();
+            if (block == null) {
+                block = stallTimer.record(this::reserveOnPrefetchExecutor);
+            }
+            install(block);
+        } finally {
+            refillLock.unlock();
+        }
+        if (bufferBlocks > 0) {
+            prefetch();
+        }
+    }
+
+    /**
+     * Takes the oldest buffered block, first dropping it from the buffer file so that a restart cannot hand out its
+     * identifiers a second time.
+     */
+    private Long takeReservedBlock() {
+        Long block = reservedBlocks.pollFirst();
+        if (block == null || blockFile == null) {
+            return block;
+        }
+        try {
+            persistReservedBlocks();
+            return block;
+        } catch (IOException e) {
+            reservedBlocks.offerFirst(block);
+            persistExceptionCounter.increment();
+            throw new UncheckedIOException("Unable to remove an identifier block from " + blockFile.path(), e);
+        }
+    }
+
+    /**
+     * Writes the buffered blocks to the buffer file, unless the stream is closing, in which case {@link #close()} owns
+     * the file.
+     */
+    private void persistReservedBlocks() throws IOException {
+        blockFileLock.lock();
+        try {
+            if (!closed) {
+                blockFile.write(new ArrayList<>(reservedBlocks));
+            }
+        } finally {
+            blockFileLock.unlock();
+        }
+    }
+
+    private boolean writeBlockFile(List<Long> blocks) {
+        long count = blocks.stream().mapToLong(block -> end(block) - value(block)).sum();
+        blockFileLock.lock();
+        try {
+            blockFile.write(blocks);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Unable to keep {} unused identifiers in {}", count, blockFile.path(), e);
+            persistExceptionCounter.increment();
+            return false;
+        } finally {
+            blockFileLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the prefetch executor, when it is one of the stream's own, and waits for a reservation in progress.
+     */
+    private void awaitPrefetch() {
+        if (!(prefetchExecutor instanceof ExecutorService)) {
+            return;
+        }
+        ExecutorService executor = (ExecutorService) prefetchExecutor;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Closing identifier stream while an identifier block is still being reserved");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reserves blocks on the prefetch executor until {@code bufferBlocks} of them, or one when only prefetching below
+     * the low-water mark, are waiting behind the block in use. Nothing is attempted while ZooKeeper is unreachable;
+     * reconnecting starts another round.
+     */
+    private void prefetch() {
+        int target = Math.max(1, bufferBlocks);
+        if (!closed && connected && reservedBlocks.size() < target && prefetching.compareAndSet(false, true)) {
+            Runnable prefetchBlocks = () -> {
+                try {
+                    while (!closed && reservedBlocks.size() < target) {
+                        reservedBlocks.offerLast(reserve());
+                        if (blockFile != null) {
+                            try {
+                                persistReservedBlocks();
+                            } catch (IOException e) {
+                                logger.warn("Unable to keep identifier blocks in {}", blockFile.path(), e);
+                                persistExceptionCounter.increment();
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Unable to prefetch the next identifier block", e);
+                    prefetchExceptionCounter.increment();
+                } finally {
+                    prefetching.set(false);
+                }
             };
             try {
-                callExecutor.execute(callable);
+                prefetchExecutor.execute(prefetchBlocks);
+            } catch (RejectedExecutionException e) {
+                prefetching.set(false);
+            }
+        }
+    }
+
+    /**
+     * Reserves a block on the prefetch executor, or on the calling thread once {@link #close()} has stopped it.
+     */
+    private long reserveOnPrefetchExecutor() {
+        if (closed) {
+            return reserve();
+        }
+        try {
+            return CompletableFuture.supplyAsync(this::reserve, prefetchExecutor).join();
+        } catch (RejectedExecutionException e) {
+            return reserve();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void install(long block) {
+        block = trimAndCount(block);
+        installed.addAndGet(end(block) - value(block));
+        range.set(block);
+        ready = true;
+    }
+
+    private long reserve() {
+        int size = nextReservationSize();
+        blockSizeSummary.record(size);
+        return initTimer.record(() -> {
+            Callable<Long> callable = () -> reserveBlock(size);
+            try {
+                return callExecutor.execute(callable).getResult();
             } catch (RetriesExhaustedException e) {
                 logger.error("Retries exhausted during initialization", e);
                 initExceptionCounter.increment();
@@ -111,7 +673,101 @@ public class ZkIdentifierStream implements IdentifierStream<String> {
         });
     }
 
-    private void initializeCounter() {
+    /**
+     * Samples the allocation rate since the last reservation into the moving average, weighting the sample by how much
+     * of {@code headroom} it covers, and returns the size of a block lasting {@code headroom} at that rate. The average
+     * starts at the rate {@code reservationSize} lasts {@code headroom} at, and the first block, like every block when
+     * {@code headroom} is zero, is {@code reservationSize}.
+     */
+    private synchronized int nextReservationSize() {
+        if (headroomMillis <= 0) {
+            return reservationSize;
+        }
+        long now = clock.millis();
+        long current = range.get();
+        long allocated = installed.get() - Math.max(0, end(current) - value(current));
+        if (lastSampleMillis < 0) {
+            lastSampleMillis = now;
+            lastAllocated = allocated;
+            return reservationSize;
+        }
+        long elapsed = Math.max(1, now - lastSampleMillis);
+        double rate = (allocated - lastAllocated) * 1000.0 / elapsed;
+        double weight = 1 - Math.exp(-(double) elapsed / headroomMillis);
+        allocationRate += weight * (rate - allocationRate);
+        lastSampleMillis = now;
+        lastAllocated = allocated;
+
+        long size = (long) Math.ceil(allocationRate * headroomMillis / 1000.0);
+        return (int) Math.max(minReservationSize, Math.min(maxReservationSize, size));
+    }
+
+    /**
+     * Returns {@code block} without the identifiers up to the one last advanced past.
+     */
+    private long trim(long block) {
+        int first = Math.min(end(block), advancedPast.get() + 1);
+        return value(block) >= first ? block : pack(first, end(block));
+    }
+
+    private long trimAndCount(long block) {
+        long trimmed = trim(block);
+        wastedCounter.increment(value(trimmed) - value(block));
+        return trimmed;
+    }
+
+    /**
+     * Sets the counter to {@code target} unless it has reached it already.
+     */
+    private void advanceCounter(int target) {
+        DistributedAtomicInteger counter = aDistributedAtomicInteger();
+        try {
+            for (int attempt = 0; attempt < 10; attempt++) {
+                AtomicValue<Integer> current = counter.get();
+                if (current == null || !current.succeeded()) {
+                    getValueExceptionCounter.increment();
+                    continue;
+                }
+                if (current.preValue() >= target) {
+                    return;
+                }
+                boolean updated = current.preValue() == 0
+                        ? counter.initialize(target)
+                        : counter.compareAndSet(current.preValue(), target).succeeded();
+                if (updated) {
+                    logger.info("Advanced the identifier counter from {} to {}", current.preValue(), target);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            setValueExceptionCounter.increment();
+            throw new IllegalStateException("Unable to advance the identifier counter to " + target, e);
+        }
+        setValueExceptionCounter.increment();
+        throw new IllegalStateException("Unable to advance the identifier counter to " + target
+                + ", it kept changing");
+    }
+
+    /**
+     * Moves the counter back to just before {@code block} if it still ends where {@code block} does.
+     */
+    private boolean handBack(long block) {
+        int first = value(block);
+        int last = end(block) - 1;
+        // A counter at zero reads as uninitialized, so the very first identifier is never handed back.
+        if (first <= 1) {
+            return false;
+        }
+        try {
+            AtomicValue<Integer> result = aDistributedAtomicInteger().compareAndSet(last, first - 1);
+            return result != null && result.succeeded();
+        } catch (Exception e) {
+            logger.warn("Unable to hand back identifiers {} to {}", first, last, e);
+            return false;
+        }
+    }
+
+    private long reserveBlock(int size) {
         DistributedAtomicInteger counter = aDistributedAtomicInteger();
 
         AtomicValue<Integer> atomicValue;
@@ -123,37 +779,54 @@ public class ZkIdentifierStream implements IdentifierStream<String> {
             throw new RuntimeException("Unable to get current value.", e);
         }
 
-        if (atomicValue != null) {
-            if (!atomicValue.succeeded()) {
-                getValueExceptionCounter.increment();
-                throw new RuntimeException("Attenpt to get current value failed.");
-            }
+        if (atomicValue == null || !atomicValue.succeeded()) {
+            getValueExceptionCounter.increment();
+            throw new RuntimeException("Attenpt to get current value failed.");
+        }
 
-            try {
-                AtomicInteger _currValue = new AtomicInteger(atomicValue.preValue() + 1);
-                int _lastValue = _currValue.get() + reservationSize;
-                int newValue = atomicValue.preValue() + reservationSize;
-
-                if (atomicValue.preValue() == 0) {
-                    boolean initialized = counter.initialize(newValue);
-                    if (!initialized) {
-                        throw new RuntimeException("Initialization failed.");
-                    }
-                } else {
-                    AtomicValue<Integer> updatedValue = counter.compareAndSet(atomicValue.preValue(), newValue);
-                    if (!updatedValue.succeeded()) {
-                        throw new RuntimeException("Setting of value failed");
-                    }
+        // The counter and both halves of a packed block are ints, and the end of a block is exclusive, so the last
+        // identifier that can be issued is Integer.MAX_VALUE - 1. The final block is cut short to end there.
+        int remaining = Integer.MAX_VALUE - 1 - atomicValue.preValue();
+        if (remaining <= 0) {
+            logger.error("The identifier counter has reached {}, no identifiers are left to reserve",
+                    atomicValue.preValue());
+            throw new IllegalStateException("Identifier counter exhausted at " + atomicValue.preValue());
+        }
+        size = Math.min(size, remaining);
+
+        try {
+            int firstValue = atomicValue.preValue() + 1;
+            int newValue = atomicValue.preValue() + size;
+
+            if (atomicValue.preValue() == 0) {
+                boolean initialized = counter.initialize(newValue);
+                if (!initialized) {
+                    throw new RuntimeException("Initialization failed.");
+                }
+            } else {
+                AtomicValue<Integer> updatedValue = counter.compareAndSet(atomicValue.preValue(), newValue);
+                if (!updatedValue.succeeded()) {
+                    throw new RuntimeException("Setting of value failed");
                 }
+            }
 
-                currentValue = _currValue;
-                lastValue = _lastValue;
-                ready = true;
-            } catch (Exception e) {
-                logger.error("Error when attempting to update the new value", e);
-                setValueExceptionCounter.increment();
-                throw new RuntimeException("Error when attempting to update the new value.", e);
+            return pack(firstValue, firstValue + size);
+        } catch (Exception e) {
+            logger.error("Error when attempting to update the new value", e);
+            setValueExceptionCounter.increment();
+            throw new RuntimeException("Error when attempting to update the new value.", e);
+        }
+    }
+
+    private void stateChanged(CuratorFramework client, ConnectionState newState) {
+        connected = newState.isConnected();
+        if (connected) {
+            logger.info("ZooKeeper connection {}, {} identifiers left", newState, runway());
+            if (bufferBlocks > 0) {
+                prefetch();
             }
+        } else {
+            logger.warn("ZooKeeper connection {}, {} identifiers left", newState, runway());
         }
     }
 
@@ -162,10 +835,29 @@ public class ZkIdentifierStream implements IdentifierStream<String> {
                 new ExponentialBackoffRetry(250, 3));
     }
 
+    static long pack(int value, int end) {
+        return ((long) value << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    static int value(long range) {
+        return (int) (range >>> 32);
+    }
+
+    static int end(long range) {
+        return (int) range;
+    }
+
     public static class ZkIdentifierStreamBuilder {
 
         private CuratorFramework zkClient;
         private int reservationSize;
+        private int lowWaterMark;
+        private int minReservationSize;
+        private int maxReservationSize;
+        private Duration headroom = Duration.ZERO;
+        private Clock clock = Clock.systemUTC();
+        private int bufferBlocks;
+        private String bufferFile;
         private MeterRegistry registry;
 
         public static ZkIdentifierStreamBuilder builder() {
@@ -182,13 +874,57 @@ public class ZkIdentifierStream implements IdentifierStream<String> {
             return this;
         }
 
+        public ZkIdentifierStreamBuilder withLowWaterMark(int lowWaterMark) {
+            this.lowWaterMark = lowWaterMark;
+            return this;
+        }
+
+        public ZkIdentifierStreamBuilder withMinReservationSize(int minReservationSize) {
+            this.minReservationSize = minReservationSize;
+            return this;
+        }
+
+        public ZkIdentifierStreamBuilder withMaxReservationSize(int maxReservationSize) {
+            this.maxReservationSize = maxReservationSize;
+            return this;
+        }
+
+        public ZkIdentifierStreamBuilder withHeadroom(Duration headroom) {
+            this.headroom = headroom;
+            return this;
+        }
+
+        public ZkIdentifierStreamBuilder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public ZkIdentifierStreamBuilder withBufferBlocks(int bufferBlocks) {
+            this.bufferBlocks = bufferBlocks;
+            return this;
+        }
+
+        public ZkIdentifierStreamBuilder withBufferFile(String bufferFile) {
+            this.bufferFile = bufferFile;
+            return this;
+        }
+
         public ZkIdentifierStreamBuilder withMeterRegistry(MeterRegistry registry) {
             this.registry = registry;
             return this;
         }
 
-        public IdentifierStream<String> build() {
-            ZkIdentifierStream zkIdentifierStream = new ZkIdentifierStream(zkClient, reservationSize, registry);
+        public IdentifierStream<Long> build() {
+            Executor prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zk-identifier-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ZkIdentifierStream zkIdentifierStream = new ZkIdentifierStream(zkClient, reservationSize, lowWaterMark,
+                    minReservationSize > 0 ? minReservationSize : reservationSize,
+                    maxReservationSize > 0 ? maxReservationSize : reservationSize, headroom, clock, bufferBlocks,
+                    bufferFile == null || bufferFile.isEmpty() ? null : Path.of(bufferFile), prefetchExecutor,
+                    registry);
             zkIdentifierStream.init();
             return zkIdentifierStream;
         }
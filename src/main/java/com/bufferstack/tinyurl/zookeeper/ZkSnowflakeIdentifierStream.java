@@ -0,0 +1,245 @@
+package com.bufferstack.tinyurl.zookeeper;
+
+import com.bufferstack.tinyurl.generator.IdentifierStream;
+import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates 63-bit identifiers made of a millisecond timestamp, a worker id and a per-millisecond sequence.
+ *
+ * <p>The worker id is leased once by creating an ephemeral {@code /tinyurlWorkers/<id>} node, after which identifiers
+ * are produced in memory without talking to ZooKeeper. If more than 4096 identifiers are requested within a
+ * millisecond, or the wall clock steps back, the timestamp runs ahead of the clock for up to {@code maxDriftMillis}.
+ * Losing the ZooKeeper session releases the worker id, so generation stops until a new one has been leased.
+ */
+public class ZkSnowflakeIdentifierStream implements IdentifierStream<Long> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZkSnowflakeIdentifierStream.class);
+
+    static final long EPOCH = 1609459200000L; // 2021-01-01T00:00:00Z
+    static final int WORKER_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int MAX_WORKERS = 1 << WORKER_BITS;
+    static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final String WORKERS_PATH = "/tinyurlWorkers";
+
+    private final CuratorFramework zkClient;
+    private final Clock clock;
+    private final long maxDriftMillis;
+    private final ExecutorService leaseExecutor;
+
+    private final AtomicLong state = new AtomicLong();
+    private volatile int workerId = -1;
+    private volatile String workerPath;
+
+    private final Counter leaseExceptionCounter;
+    private final Counter sequenceExhaustedCounter;
+    private final Timer leaseTimer;
+
+    private final ConnectionStateListener connectionStateListener = this::stateChanged;
+
+    @VisibleForTesting
+    ZkSnowflakeIdentifierStream(CuratorFramework zkClient, Clock clock, long maxDriftMillis, MeterRegistry registry) {
+        this.zkClient = zkClient;
+        this.clock = clock;
+        this.maxDriftMillis = maxDriftMillis;
+        this.leaseExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "zk-worker-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        leaseExceptionCounter = Counter.builder("identifierStream")
+                .tag("type", "snowflake").tag("result", "exception").tag("action", "lease")
+                .register(registry);
+        sequenceExhaustedCounter = Counter.builder("identifierStream")
+                .tag("type", "snowflake").tag("action", "sequence-exhausted")
+                .register(registry);
+        leaseTimer = Timer.builder("identifierStream")
+                .tag("type", "snowflake").tag("action", "lease")
+                .register(registry);
+    }
+
+    @Override
+    public Long next() {
+        int worker = workerId;
+        if (worker < 0) {
+            throw new RuntimeException("No worker id is leased for identifier generation.");
+        }
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long now = clock.millis() - EPOCH;
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if ((current & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = current + 1;
+            } else {
+                if (lastTimestamp + 1 - now > maxDriftMillis) {
+                    throw new RuntimeException("Identifier timestamp is more than " + maxDriftMillis
+                            + "ms ahead of the clock.");
+                }
+                sequenceExhaustedCounter.increment();
+                next = (lastTimestamp + 1) << SEQUENCE_BITS;
+            }
+            if (state.compareAndSet(current, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                return (timestamp << (WORKER_BITS + SEQUENCE_BITS))
+                        | ((long) worker << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    @Override
+    public boolean ready() {
+        return workerId >= 0;
+    }
+
+    /**
+     * Identifiers are ordered by their timestamp, which no worker lets run more than {@code maxDriftMillis} behind
+     * the clock, so only identifiers from that far back are ruled out; more recent ones are refused, as some worker
+     * may still issue them.
+     */
+    @Override
+    public void advancePast(long identifier) {
+        long oldestIssuable = clock.millis() - EPOCH - maxDriftMillis;
+        if (identifier >>> (WORKER_BITS + SEQUENCE_BITS) >= oldestIssuable) {
+            throw new IllegalArgumentException("Identifier " + identifier + " is less than " + maxDriftMillis
+                    + "ms old, so a worker may still issue it");
+        }
+    }
+
+    @Override
+    public void close() {
+        zkClient.getConnectionStateListenable().removeListener(connectionStateListener);
+        leaseExecutor.shutdownNow();
+        String path = workerPath;
+        workerId = -1;
+        if (path == null) {
+            return;
+        }
+        // Hold the worker id until the clock has caught up with the last issued timestamp, so that whoever leases
+        // it next cannot issue an identifier we already handed out.
+        long aheadMillis = (state.get() >>> SEQUENCE_BITS) - (clock.millis() - EPOCH);
+        try {
+            if (aheadMillis > 0) {
+                Thread.sleep(aheadMillis + 1);
+            }
+            zkClient.delete().guaranteed().forPath(path);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Unable to release worker id {}", path, e);
+        }
+    }
+
+    @VisibleForTesting
+    void init() {
+        zkClient.getConnectionStateListenable().addListener(connectionStateListener);
+        lease();
+    }
+
+    private void lease() {
+        leaseTimer.record(() -> {
+            try {
+                workerId = leaseWorkerId();
+                logger.info("Leased worker id {}", workerId);
+            } catch (RuntimeException e) {
+                logger.error("Unable to lease a worker id", e);
+                leaseExceptionCounter.increment();
+                throw e;
+            }
+        });
+    }
+
+    @VisibleForTesting
+    int leaseWorkerId() {
+        int start = ThreadLocalRandom.current().nextInt(MAX_WORKERS);
+        for (int i = 0; i < MAX_WORKERS; i++) {
+            int candidate = (start + i) % MAX_WORKERS;
+            String path = WORKERS_PATH + "/" + candidate;
+            try {
+                zkClient.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path);
+                workerPath = path;
+                return candidate;
+            } catch (KeeperException.NodeExistsException e) {
+                logger.debug("Worker id {} is taken", candidate);
+            } catch (Exception e) {
+                throw new RuntimeException("Unable to create worker node " + path, e);
+            }
+        }
+        throw new RuntimeException("All " + MAX_WORKERS + " worker ids are taken.");
+    }
+
+    private void stateChanged(CuratorFramework client, ConnectionState newState) {
+        if (newState == ConnectionState.LOST) {
+            logger.warn("ZooKeeper session lost, releasing worker id {}", workerId);
+            workerId = -1;
+            workerPath = null;
+        } else if (newState == ConnectionState.RECONNECTED && workerId < 0) {
+            leaseExecutor.execute(() -> {
+                try {
+                    lease();
+                } catch (RuntimeException e) {
+                    // counted and logged by lease(); the next reconnect will try again
+                }
+            });
+        }
+    }
+
+    public static class ZkSnowflakeIdentifierStreamBuilder {
+
+        private CuratorFramework zkClient;
+        private Clock clock;
+        private long maxDriftMillis;
+        private MeterRegistry registry;
+
+        public static ZkSnowflakeIdentifierStreamBuilder builder() {
+            return new ZkSnowflakeIdentifierStreamBuilder();
+        }
+
+        public ZkSnowflakeIdentifierStreamBuilder withZkClient(CuratorFramework zkClient) {
+            this.zkClient = zkClient;
+            return this;
+        }
+
+        public ZkSnowflakeIdentifierStreamBuilder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public ZkSnowflakeIdentifierStreamBuilder withMaxDriftMillis(long maxDriftMillis) {
+            this.maxDriftMillis = maxDriftMillis;
+            return this;
+        }
+
+        public ZkSnowflakeIdentifierStreamBuilder withMeterRegistry(MeterRegistry registry) {
+            this.registry = registry;
+            return this;
+        }
+
+        public IdentifierStream<Long> build() {
+            ZkSnowflakeIdentifierStream identifierStream =
+                    new ZkSnowflakeIdentifierStream(zkClient, clock, maxDriftMillis, registry);
+            identifierStream.init();
+            return identifierStream;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+-- Moves an existing unpartitioned url_mapping aside so that the partitioned schema in db.sql can take its place
+-- without downtime:
+--
+--   1. Run this script. It is quick, as it only renames the old table and creates empty ones.
+--   2. Roll out the service with tinyurl.partitioning.legacy-table=url_mapping_legacy, so that codes not found in the
+--      partitions are looked up in the old table, and tinyurl.partitioning.backfill.enabled=true on at least one
+--      instance to move the old rows over in throttled chunks.
+--   3. Once the backfill reports completion (and url_mapping_legacy is empty), unset both properties, roll out again
+--      and drop url_mapping_legacy.
+--
+-- Until a URL's row has been moved, deduplication does not see it and may mint a second code for it; both codes keep
+-- redirecting.
+begin;
+
+-- Installs older than deduplication have no full_url_hash; the backfill reads it, so add it (empty) if it is missing.
+alter table url_mapping add column if not exists full_url_hash bytea;
+alter table url_mapping rename to url_mapping_legacy;
+alter index url_mapping_pkey rename to url_mapping_legacy_pkey;
+alter index if exists url_mapping_full_url_hash rename to url_mapping_legacy_full_url_hash;
+
+create table url_mapping (
+    bucket smallint not null,
+    code varchar(25) not null,
+    full_url varchar(2084),
+    created_at timestamptz,
+    primary key (bucket, code)
+) partition by list (bucket);
+
+do $$
+begin
+    for bucket in 0..15 loop
+        execute format('create table url_mapping_%s partition of url_mapping for values in (%s)', bucket, bucket);
+    end loop;
+end
+$$;
+
+create index url_mapping_created_at on url_mapping (created_at);
+
+create table url_mapping_hash (full_url_hash bytea not null, code varchar(25) not null, primary key (full_url_hash));
+
+commit;
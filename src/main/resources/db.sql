@@ -1,3 +1,40 @@
 -- The line below is commented as it is not supported for H2 DB.
 -- create database tinyurl;
-create table url_mapping (code varchar(25), full_url varchar(2084), created_at timestamptz, primary key (code));
+
+-- Mappings are list-partitioned by a bucket the service derives from the code (see UrlMappingPartitions), so that a
+-- lookup by code reads a single partition and its index. The number of partitions created below must match
+-- tinyurl.partitioning.buckets. H2, which generates the jOOQ classes from this file, does not support partitioning.
+create table url_mapping (
+    bucket smallint not null,
+    code varchar(25) not null,
+    full_url varchar(2084),
+    created_at timestamptz,
+    primary key (bucket, code)
+)
+-- [jooq ignore start]
+partition by list (bucket)
+-- [jooq ignore stop]
+;
+-- [jooq ignore start]
+do $$
+begin
+    for bucket in 0..15 loop
+        execute format('create table url_mapping_%s partition of url_mapping for values in (%s)', bucket, bucket);
+    end loop;
+end
+$$;
+-- [jooq ignore stop]
+
+-- Lets CodeFilter read the codes created since its last refresh.
+create index url_mapping_created_at on url_mapping (created_at);
+
+-- MD5 of the normalized full URL, only written when tinyurl.dedup.enabled is set. Unique indexes on a partitioned
+-- table must include the partition key, so the uniqueness deduplication relies on is enforced by this table instead.
+-- H2 cannot index binary columns.
+create table url_mapping_hash (full_url_hash bytea not null, code varchar(25) not null);
+-- [jooq ignore start]
+alter table url_mapping_hash add primary key (full_url_hash);
+-- [jooq ignore stop]
+
+-- Redirect hits per code, accumulated in memory by UrlHitCounter and added here by periodic upserts.
+create table url_stats (code varchar(25) not null, hits bigint not null, updated_at timestamptz, primary key (code));
@@ -0,0 +1,129 @@
+package com.bufferstack.tinyurl.cache;
+
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class OffHeapUrlMappingStoreTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2021-06-01T10:15:30.123456Z");
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void shouldGetStoredMapping() {
+        OffHeapUrlMappingStore store = store(1024, DataSize.ofKilobytes(64));
+        store.put(14568L, new TinyUrlMapping("3my", "https://www.google.com/søk", CREATED_AT));
+
+        TinyUrlMapping mapping = store.get(14568L, "3my");
+        assertEquals("3my", mapping.getCode());
+        assertEquals("https://www.google.com/søk", mapping.getFullUrl());
+        assertEquals(CREATED_AT, mapping.getCreatedAt());
+        assertNull(store.get(14569L, "3mz"));
+        assertEquals(1, meterRegistry.get("urlMapping.offHeap").tag("result", "hit").counter().count());
+        assertEquals(1, meterRegistry.get("urlMapping.offHeap").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    public void shouldKeepMappingsAcrossRestarts() {
+        OffHeapUrlMappingStore store = store(1024, DataSize.ofKilobytes(64));
+        LongStream.range(0, 500).forEach(id ->
+                store.put(id, new TinyUrlMapping(String.valueOf(id), "https://www.google.com/" + id, CREATED_AT)));
+        store.close();
+
+        OffHeapUrlMappingStore reopened = store(1024, DataSize.ofKilobytes(64));
+        assertEquals(500, reopened.size());
+        LongStream.range(0, 500).forEach(id ->
+                assertEquals("https://www.google.com/" + id, reopened.get(id, String.valueOf(id)).getFullUrl()));
+    }
+
+    @Test
+    public void shouldRejectMappingsOnceFull() {
+        OffHeapUrlMappingStore store = store(16, DataSize.ofKilobytes(64));
+        LongStream.range(0, 20).forEach(id ->
+                store.put(id, new TinyUrlMapping(String.valueOf(id), "https://www.google.com", CREATED_AT)));
+
+        assertEquals(12, store.size());
+        assertNotNull(store.get(11L, "11"));
+        assertNull(store.get(12L, "12"));
+        assertEquals(8, meterRegistry.get("urlMapping.offHeap").tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    public void shouldServeReadersWhileWriting() {
+        OffHeapUrlMappingStore store = store(1 << 16, DataSize.ofMegabytes(4));
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> LongStream.range(0, 20_000).forEach(id ->
+                store.put(id, new TinyUrlMapping(String.valueOf(id), "https://www.google.com/" + id, CREATED_AT))));
+        List<CompletableFuture<Void>> readers = LongStream.range(0, 2)
+                .mapToObj(reader -> CompletableFuture.runAsync(() -> {
+                    while (!writer.isDone()) {
+                        for (long id = 0; id < 20_000; id += 97) {
+                            TinyUrlMapping mapping = store.get(id, String.valueOf(id));
+                            if (mapping != null) {
+                                assertEquals("https://www.google.com/" + id, mapping.getFullUrl());
+                            }
+                        }
+                    }
+                }))
+                .collect(Collectors.toList());
+
+        writer.orTimeout(30, TimeUnit.SECONDS).join();
+        readers.forEach(reader -> reader.orTimeout(30, TimeUnit.SECONDS).join());
+        assertEquals(20_000, store.size());
+    }
+
+    @Test
+    public void shouldMissCodesStoredUnderAnotherCode() {
+        OffHeapUrlMappingStore store = store(1024, DataSize.ofKilobytes(64));
+        store.put(14568L, new TinyUrlMapping("3my", "https://www.google.com", CREATED_AT));
+
+        assertNull(store.get(14568L, "3mz"));
+        assertNull(store.get(14568L, "3m"));
+        assertEquals(2, meterRegistry.get("urlMapping.offHeap").tag("result", "mismatch").counter().count());
+    }
+
+    @Test
+    public void shouldDiscardStoreWrittenUnderOtherEncoderSettings() {
+        OffHeapUrlMappingStore store = store(1024, DataSize.ofKilobytes(64));
+        store.put(14568L, new TinyUrlMapping("3my", "https://www.google.com", CREATED_AT));
+        store.close();
+
+        CodeEncoder shuffled = CodeEncoder.CodeEncoderBuilder.builder()
+                .withShuffleBits(32)
+                .withShuffleSalt(42L)
+                .build();
+        OffHeapUrlMappingStore reopened = store(1024, DataSize.ofKilobytes(64), shuffled);
+        assertEquals(0, reopened.size());
+        assertNull(reopened.get(14568L, "3my"));
+        reopened.close();
+
+        OffHeapUrlMappingStore restored = store(1024, DataSize.ofKilobytes(64));
+        assertEquals(0, restored.size());
+    }
+
+    private OffHeapUrlMappingStore store(long indexCapacity, DataSize dataSize) {
+        return store(indexCapacity, dataSize, CodeEncoder.CodeEncoderBuilder.builder().build());
+    }
+
+    private OffHeapUrlMappingStore store(long indexCapacity, DataSize dataSize, CodeEncoder codeEncoder) {
+        return new OffHeapUrlMappingStore(true, directory.toString(), indexCapacity, dataSize, codeEncoder,
+                meterRegistry);
+    }
+}
@@ -0,0 +1,52 @@
+package com.bufferstack.tinyurl.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PeerRingTest {
+
+    private static final List<String> MEMBERS =
+            List.of("http://10.0.0.1:9091", "http://10.0.0.2:9091", "http://10.0.0.3:9091");
+
+    @Test
+    public void shouldSpreadCodesOverMembers() {
+        PeerRing ring = new PeerRing(MEMBERS, 100);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            owned.merge(ring.owner("code" + i), 1, Integer::sum);
+        }
+        assertEquals(3, ring.members());
+        assertEquals(3, owned.size());
+        owned.values().forEach(count -> assertTrue(count > 7_000 && count < 13_000, "owned " + count));
+    }
+
+    @Test
+    public void shouldOnlyMoveCodesToJoiningMember() {
+        PeerRing ring = new PeerRing(MEMBERS, 100);
+        PeerRing grown = new PeerRing(List.of("http://10.0.0.4:9091", "http://10.0.0.3:9091",
+                "http://10.0.0.2:9091", "http://10.0.0.1:9091"), 100);
+
+        int moved = 0;
+        for (int i = 0; i < 30_000; i++) {
+            String owner = grown.owner("code" + i);
+            if (!owner.equals(ring.owner("code" + i))) {
+                assertEquals("http://10.0.0.4:9091", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > 5_000 && moved < 10_000, "moved " + moved);
+    }
+
+    @Test
+    public void shouldHaveNoOwnerWithoutMembers() {
+        assertNull(PeerRing.EMPTY.owner("3my"));
+        assertEquals(0, PeerRing.EMPTY.members());
+    }
+}
@@ -0,0 +1,226 @@
+package com.bufferstack.tinyurl.cache;
+
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.utils.ObjectMapperFactory;
+import com.bufferstack.tinyurl.utils.TestUtils;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs several peers, each with its own ZooKeeper session and an HTTP server standing in for its controller, against
+ * one in-process ZooKeeper.
+ */
+public class PeerUrlMappingCacheTest {
+
+    private static final String SECRET = "s3cret";
+
+    private final Map<String, TinyUrlMapping> database = new ConcurrentHashMap<>();
+    private final List<Peer> peers = new ArrayList<>();
+    private TestingServer zkServer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        zkServer = new TestingServer(true);
+        for (int i = 0; i < 3; i++) {
+            peers.add(new Peer());
+        }
+        awaitMembers(3);
+        database.put("3my", new TinyUrlMapping("3my", "https://www.google.com", TestUtils.clock().instant()));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (Peer peer : peers) {
+            peer.close();
+        }
+        zkServer.close();
+    }
+
+    @Test
+    public void shouldFetchCodeFromOwnerOnce() {
+        Peer owner = ownerOf("3my");
+        Peer other = notOwnerOf("3my");
+
+        for (int i = 0; i < 3; i++) {
+            TinyUrlMapping mapping = other.cache.get(owner.url, "3my", code -> fail("loaded locally"));
+            assertEquals("https://www.google.com", mapping.getFullUrl());
+            assertEquals(database.get("3my").getCreatedAt(), mapping.getCreatedAt());
+        }
+        assertEquals(1, owner.requests.get());
+        assertEquals(1, other.registry.get("peerCache").tag("result", "fetched").counter().count());
+    }
+
+    @Test
+    public void shouldReturnNullForCodeOwnerDoesNotHave() {
+        Peer owner = ownerOf("03my");
+
+        assertNull(notOwnerOf("03my").cache.get(owner.url, "03my", code -> fail("loaded locally")));
+        assertEquals(1, owner.requests.get());
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentFetches() throws Exception {
+        Peer owner = ownerOf("3my");
+        Peer other = notOwnerOf("3my");
+        owner.gate = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<TinyUrlMapping>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(executor.submit(() -> other.cache.get(owner.url, "3my", code -> fail("loaded locally"))));
+        }
+        await(() -> other.registry.get("peerCache").tag("result", "coalesced").counter().count() == 15);
+        owner.gate.countDown();
+        for (Future<TinyUrlMapping> result : results) {
+            assertEquals("https://www.google.com", result.get().getFullUrl());
+        }
+        executor.shutdown();
+        assertEquals(1, owner.requests.get());
+    }
+
+    @Test
+    public void shouldLoadLocallyWhenOwnerIsUnreachable() {
+        Peer owner = ownerOf("3my");
+        Peer other = notOwnerOf("3my");
+        owner.server.stop(0);
+
+        assertEquals("https://www.google.com", other.cache.get(owner.url, "3my", database::get).getFullUrl());
+        assertEquals(1, other.registry.get("peerCache").tag("result", "exception").counter().count());
+    }
+
+    @Test
+    public void shouldOnlyAuthorizeRequestsWithSecret() {
+        PeerUrlMappingCache cache = peers.get(0).cache;
+
+        assertTrue(cache.authorized(SECRET));
+        assertFalse(cache.authorized("s3creT"));
+        assertFalse(cache.authorized(""));
+        assertFalse(cache.authorized(null));
+        assertFalse(new PeerUrlMappingCache(null, null, false, "", "", "/tinyurl/peers", 100, Duration.ofSeconds(2),
+                100, new SimpleMeterRegistry()).authorized(""));
+    }
+
+    @Test
+    public void shouldReassignCodesOfLeavingPeer() throws IOException {
+        Peer leaving = ownerOf("3my");
+        peers.remove(leaving);
+        leaving.close();
+
+        awaitMembers(2);
+        Peer owner = ownerOf("3my");
+        assertNotEquals(leaving.url, owner.url);
+        assertEquals(owner.url, notOwnerOf("3my").cache.owner("3my"));
+    }
+
+    private Peer ownerOf(String code) {
+        return peers.stream().filter(peer -> peer.cache.owner(code) == null).findFirst().orElseThrow();
+    }
+
+    private Peer notOwnerOf(String code) {
+        return peers.stream().filter(peer -> peer.cache.owner(code) != null).findFirst().orElseThrow();
+    }
+
+    private void awaitMembers(int members) {
+        await(() -> peers.stream().allMatch(peer ->
+                peer.registry.get("peerCache.members").gauge().value() == members));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private class Peer {
+
+        private final HttpServer server;
+        private final String url;
+        private final CuratorFramework client;
+        private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        private final PeerUrlMappingCache cache;
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile CountDownLatch gate;
+
+        private Peer() throws Exception {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/tinyurl/", exchange -> {
+                requests.incrementAndGet();
+                if (!SECRET.equals(exchange.getRequestHeaders().getFirst(PeerUrlMappingCache.SECRET_HEADER))) {
+                    exchange.sendResponseHeaders(403, -1);
+                    exchange.close();
+                    return;
+                }
+                try {
+                    if (gate != null) {
+                        gate.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String code = exchange.getRequestURI().getPath().split("/")[2];
+                TinyUrlMapping mapping = database.get(code);
+                if (mapping == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    byte[] body = ObjectMapperFactory.getObjectMapper().writeValueAsBytes(mapping);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+                exchange.close();
+            });
+            server.start();
+            url = "http://localhost:" + server.getAddress().getPort();
+
+            client = CuratorFrameworkFactory.newClient(zkServer.getConnectString(), new RetryOneTime(100));
+            client.start();
+            cache = new PeerUrlMappingCache(client, ObjectMapperFactory.getObjectMapper(), true, url, SECRET,
+                    "/tinyurl/peers", 100, Duration.ofSeconds(2), 100, registry);
+            cache.start();
+        }
+
+        private void close() throws IOException {
+            cache.close();
+            client.close();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.bufferstack.tinyurl.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 32;
+
+    private final Counter coalesced = Counter.builder("test.coalesced").register(new SimpleMeterRegistry());
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>(coalesced);
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldShareOneLoadBetweenConcurrentCallers() throws Exception {
+        List<Future<String>> results = startCallers(key -> {
+            loads.incrementAndGet();
+            await(release);
+            return key.toUpperCase();
+        });
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("3MY", result.get());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(CALLERS - 1, coalesced.count());
+    }
+
+    @Test
+    public void shouldShareException() throws Exception {
+        List<Future<String>> results = startCallers(key -> {
+            loads.incrementAndGet();
+            await(release);
+            throw new IllegalStateException("connection refused");
+        });
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, result::get);
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void shouldLoadAgainOnceLoadCompleted() {
+        assertEquals("3MY1", singleFlight.get("3my", key -> key.toUpperCase() + loads.incrementAndGet()));
+        assertEquals("3MY2", singleFlight.get("3my", key -> key.toUpperCase() + loads.incrementAndGet()));
+        assertEquals(0, coalesced.count());
+    }
+
+    private List<Future<String>> startCallers(Function<String, String> loader) {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> singleFlight.get("3my", loader)));
+        }
+        return results;
+    }
+
+    private void awaitCoalesced(int callers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (coalesced.count() < callers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.bufferstack.tinyurl.cache;
+
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.service.UrlHitCounter;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.bufferstack.tinyurl.utils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class UrlMappingCacheWarmerTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2021-06-01T10:15:30.123456Z");
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UrlMappingStore store = mock(UrlMappingStore.class);
+    private final UrlHitCounter hitCounter = mock(UrlHitCounter.class);
+
+    @Test
+    public void shouldWarmFromHottestCodesAndRestoreFromSnapshot() throws InterruptedException {
+        givenHottestCodes(3);
+        UrlMappingCache cache = cache();
+        UrlMappingCacheWarmer warmer = warmer(cache, directory.resolve("snapshot"), 1.0, Duration.ofMinutes(1));
+
+        warmer.warmUp();
+        assertTrue(warmer.ready());
+        assertEquals(3, warmer.loaded());
+        assertEquals("https://www.google.com/c2", cache.getIfPresent("c2").getFullUrl());
+        assertEquals(1, meterRegistry.get("urlMapping.warmUp").tag("source", "stats").timer().count());
+        warmer.close();
+
+        UrlHitCounter unusedHitCounter = mock(UrlHitCounter.class);
+        UrlMappingCache restored = cache();
+        UrlMappingCacheWarmer restoring = new UrlMappingCacheWarmer(restored, store, unusedHitCounter, true, 10,
+                directory.resolve("snapshot").toString(), Duration.ofMinutes(5), 1.0, Duration.ofMinutes(1),
+                TestUtils.clock(), meterRegistry);
+        restoring.warmUp();
+        assertEquals(3, restoring.loaded());
+        assertEquals(3, restoring.target());
+        TinyUrlMapping mapping = restored.getIfPresent("c1");
+        assertEquals("https://www.google.com/c1", mapping.getFullUrl());
+        assertEquals(CREATED_AT, mapping.getCreatedAt());
+        assertEquals(1, meterRegistry.get("urlMapping.warmUp").tag("source", "snapshot").timer().count());
+        verifyNoInteractions(unusedHitCounter);
+        restoring.close();
+    }
+
+    @Test
+    public void shouldHoldReadinessUntilFractionIsLoaded() {
+        givenHottestCodes(2500);
+        List<Boolean> readiness = new ArrayList<>();
+        UrlMappingCacheWarmer warmer = warmer(cache(), null, 0.4, Duration.ofMinutes(1));
+        when(store.findAll(anyCollection())).thenAnswer(invocation -> {
+            readiness.add(warmer.ready());
+            return mappings(invocation.getArgument(0));
+        });
+
+        assertFalse(warmer.ready());
+        warmer.warmUp();
+        assertEquals(List.of(false, true, true), readiness);
+        assertEquals(2500, meterRegistry.get("urlMapping.warmUp.loaded").gauge().value());
+    }
+
+    @Test
+    public void shouldReportReadyAfterTimeout() throws InterruptedException {
+        givenHottestCodes(1);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(store.findAll(anyCollection())).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return mappings(invocation.getArgument(0));
+        });
+        UrlMappingCacheWarmer warmer = warmer(cache(), null, 1.0, Duration.ZERO);
+
+        warmer.start();
+        loading.await();
+        assertTrue(warmer.ready());
+        assertEquals(0, warmer.loaded());
+        release.countDown();
+        warmer.close();
+    }
+
+    @Test
+    public void shouldNotOverwriteSnapshotWithEmptyCache() throws InterruptedException {
+        UrlMappingCacheWarmer warmer = warmer(cache(), directory.resolve("snapshot"), 1.0, Duration.ofMinutes(1));
+        when(hitCounter.hottestCodes(anyInt())).thenReturn(List.of());
+
+        warmer.warmUp();
+        warmer.close();
+        assertTrue(warmer.ready());
+        assertFalse(directory.resolve("snapshot").toFile().exists());
+    }
+
+    private void givenHottestCodes(int count) {
+        List<String> codes = IntStream.range(0, count).mapToObj(i -> "c" + i).collect(Collectors.toList());
+        when(hitCounter.hottestCodes(anyInt())).thenReturn(codes);
+        when(store.findAll(anyCollection())).thenAnswer(invocation -> mappings(invocation.getArgument(0)));
+    }
+
+    private static List<TinyUrlMapping> mappings(Collection<String> codes) {
+        return codes.stream()
+                .map(code -> new TinyUrlMapping(code, "https://www.google.com/" + code, CREATED_AT))
+                .collect(Collectors.toList());
+    }
+
+    private UrlMappingCache cache() {
+        return new UrlMappingCache(10000, 0, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    private UrlMappingCacheWarmer warmer(UrlMappingCache cache, Path file, double readyFraction, Duration timeout) {
+        return new UrlMappingCacheWarmer(cache, store, hitCounter, true, 10000, file == null ? "" : file.toString(),
+                Duration.ofMinutes(5), readyFraction, timeout, TestUtils.clock(), meterRegistry);
+    }
+}
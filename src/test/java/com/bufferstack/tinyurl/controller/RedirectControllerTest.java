@@ -0,0 +1,88 @@
+package com.bufferstack.tinyurl.controller;
+
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.service.UrlMappingService;
+import java.time.Instant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringJUnitWebConfig(RedirectControllerTest.Config.class)
+public class RedirectControllerTest {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UrlMappingService urlMappingService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        reset(urlMappingService);
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    public void shouldRedirectToFullUrl() throws Exception {
+        when(urlMappingService.findLink("3my"))
+                .thenReturn(new TinyUrlMapping("3my", "https://www.google.com", Instant.now()));
+
+        mockMvc.perform(get("/3my"))
+                .andExpect(status().isFound())
+                .andExpect(header().string("Location", "https://www.google.com"));
+    }
+
+    @Test
+    public void shouldAnswerUnknownCodeWithNotFound() throws Exception {
+        mockMvc.perform(get("/3mz"))
+                .andExpect(status().isNotFound())
+                .andExpect(header().doesNotExist("Location"));
+        verify(urlMappingService).findLink("3mz");
+    }
+
+    @Test
+    public void shouldNotTakePathsOutsideAlphabetForCodes() throws Exception {
+        mockMvc.perform(get("/favicon.ico"))
+                .andExpect(status().isNotFound());
+        verify(urlMappingService, never()).findLink(any());
+    }
+
+    /**
+     * Not a {@code @Configuration}, so that scanning the application's packages with test classes on the class path
+     * does not pick it up.
+     */
+    @EnableWebMvc
+    @Import(RedirectController.class)
+    static class Config {
+
+        @Bean
+        public CodeEncoder codeEncoder() {
+            return CodeEncoder.CodeEncoderBuilder.builder().build();
+        }
+
+        @Bean
+        public UrlMappingService urlMappingService() {
+            return mock(UrlMappingService.class);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.bufferstack.tinyurl.generator;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CodeEncoderTest {
+
+    private final CodeEncoder base62 = CodeEncoder.CodeEncoderBuilder.builder().build();
+
+    @Test
+    public void shouldEncodeWithBase62() {
+        assertEquals("0", base62.encode(0));
+        assertEquals("z", base62.encode(61));
+        assertEquals("10", base62.encode(62));
+        assertEquals("3my", base62.encode(14568));
+        assertEquals("AzL8n0Y58m7", base62.encode(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldMatchStringValueOfWithDecimalAlphabet() {
+        CodeEncoder decimal = CodeEncoder.CodeEncoderBuilder.builder().withAlphabet(CodeEncoder.DECIMAL).build();
+        LongStream.of(0, 9, 10, 14568, Integer.MAX_VALUE, Long.MAX_VALUE)
+                .forEach(id -> assertEquals(String.valueOf(id), decimal.encode(id)));
+    }
+
+    @Test
+    public void shouldDecodeWhatWasEncoded() {
+        CodeEncoder shuffled = CodeEncoder.CodeEncoderBuilder.builder()
+                .withShuffleBits(35)
+                .withShuffleSalt(0x5DEECE66DL)
+                .build();
+        LongStream.concat(LongStream.range(0, 10_000), LongStream.of(1L << 35, Long.MAX_VALUE))
+                .forEach(id -> {
+                    assertEquals(id, base62.decode(base62.encode(id)));
+                    assertEquals(id, shuffled.decode(shuffled.encode(id)));
+                });
+    }
+
+    @Test
+    public void shouldShuffleWithinTheConfiguredBits() {
+        CodeEncoder shuffled = CodeEncoder.CodeEncoderBuilder.builder().withShuffleBits(16).build();
+        Set<String> codes = new HashSet<>();
+        LongStream.range(0, 1 << 16).forEach(id -> {
+            String code = shuffled.encode(id);
+            assertTrue(shuffled.decode(code) < 1 << 16);
+            codes.add(code);
+        });
+        assertEquals(1 << 16, codes.size());
+        assertNotEquals(shuffled.encode(1), base62.encode(1));
+    }
+
+    @Test
+    public void shouldRejectInvalidCodes() {
+        assertEquals(CodeEncoder.INVALID, base62.decode(""));
+        assertEquals(CodeEncoder.INVALID, base62.decode("abc-d"));
+        assertEquals(CodeEncoder.INVALID, base62.decode("zzzzzzzzzzz"));
+        assertEquals(CodeEncoder.INVALID, base62.decode("000000000000"));
+    }
+
+    @Test
+    public void shouldRejectDuplicateAlphabetCharacters() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CodeEncoder.CodeEncoderBuilder.builder().withAlphabet("0123401234").build());
+    }
+
+    @Test
+    public void shouldMatchCodesWithPattern() {
+        CodeEncoder custom = CodeEncoder.CodeEncoderBuilder.builder().withAlphabet("ab-_]").build();
+        assertTrue(custom.encode(123456789L).matches(custom.pattern()));
+        assertTrue(base62.encode(Long.MAX_VALUE).matches(base62.pattern()));
+        assertFalse("favicon.ico".matches(base62.pattern()));
+        assertFalse("".matches(base62.pattern()));
+    }
+}
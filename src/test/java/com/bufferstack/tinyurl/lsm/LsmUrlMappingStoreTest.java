@@ -0,0 +1,155 @@
+package com.bufferstack.tinyurl.lsm;
+
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.bufferstack.tinyurl.store.UrlMappingStoreContractTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LsmUrlMappingStoreTest extends UrlMappingStoreContractTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Override
+    protected UrlMappingStore newStore() {
+        return store(1 << 20, 4);
+    }
+
+    @Test
+    public void shouldReplayLogAfterCrash() {
+        LsmUrlMappingStore crashed = store(1 << 20, 4);
+        insert(crashed, 0, 100);
+
+        LsmUrlMappingStore reopened = store(1 << 20, 4);
+        assertFound(reopened, 0, 100);
+        assertEquals(1, reopened.tables());
+        reopened.close();
+    }
+
+    @Test
+    public void shouldTruncateIncompleteRecordAtEndOfLog() throws IOException {
+        LsmUrlMappingStore crashed = store(1 << 20, 4);
+        insert(crashed, 0, 10);
+        Path log;
+        try (Stream<Path> files = Files.list(directory)) {
+            log = files.filter(file -> file.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        Files.write(log, new byte[] { 0, 0, 0, 9, 'c', '3' }, StandardOpenOption.APPEND);
+
+        LsmUrlMappingStore reopened = store(1 << 20, 4);
+        assertFound(reopened, 0, 10);
+        insert(reopened, 10, 20);
+        reopened.close();
+        assertFound(store(1 << 20, 4), 0, 20);
+    }
+
+    @Test
+    public void shouldFlushAndCompactTables() throws InterruptedException {
+        LsmUrlMappingStore store = store(4096, 2);
+        insert(store, 0, 2000);
+        store.awaitBackgroundWork();
+
+        assertTrue(store.tables() <= 3, "tables: " + store.tables());
+        assertFound(store, 0, 2000);
+        assertTrue(meterRegistry.get("lsmStore.compaction").timer().count() > 0);
+        store.close();
+
+        LsmUrlMappingStore reopened = store(4096, 2);
+        assertFound(reopened, 0, 2000);
+        reopened.close();
+    }
+
+    @Test
+    public void shouldKeepMemtableReadableUntilFlushSucceeds() throws IOException, InterruptedException {
+        LsmUrlMappingStore store = store(4096, 4);
+        // The first memtable becomes table 3, after log 1 and log 2 which replaces it; a directory in the way of its
+        // temporary file fails the flush.
+        Path blocker = Files.createDirectory(directory.resolve(String.format("%019d.sst.tmp", 3)));
+        insert(store, 0, 100);
+        store.awaitBackgroundWork();
+
+        assertEquals(1, meterRegistry.get("lsmStore.flush").tag("result", "exception").counter().count());
+        assertEquals(0, store.tables());
+        assertFound(store, 0, 100);
+
+        int refused = 100;
+        while (true) {
+            try {
+                insert(store, refused, refused + 1);
+            } catch (IllegalStateException e) {
+                break;
+            }
+            refused++;
+        }
+        assertNull(store.find(String.valueOf(refused)));
+        assertEquals(2, meterRegistry.get("lsmStore.flush").tag("result", "exception").counter().count());
+
+        Files.delete(blocker);
+        insert(store, refused, 300);
+        store.awaitBackgroundWork();
+        assertTrue(store.tables() > 0);
+        assertFound(store, 0, 300);
+        store.close();
+
+        LsmUrlMappingStore reopened = store(4096, 4);
+        assertFound(reopened, 0, 300);
+        reopened.close();
+    }
+
+    private LsmUrlMappingStore store(long memtableBytes, int maxTables) {
+        return (LsmUrlMappingStore) LsmUrlMappingStore.LsmUrlMappingStoreBuilder.builder()
+                .withDirectory(directory.toString())
+                .withMemtableBytes(memtableBytes)
+                .withMaxTables(maxTables)
+                .withTableBytes(1 << 20)
+                .withFpp(0.01)
+                .withSync(false)
+                .withMeterRegistry(meterRegistry)
+                .build();
+    }
+
+    @Test
+    public void shouldScanMemtableAndTables() {
+        LsmUrlMappingStore store = store(4096, 2);
+        insert(store, 0, 1000);
+
+        List<TinyUrlMapping> mappings = new ArrayList<>();
+        store.scan(mappings::add);
+        assertTrue(store.tables() > 0);
+        assertEquals(1000, mappings.size());
+        assertEquals(IntStream.range(0, 1000).mapToObj(String::valueOf).collect(Collectors.toSet()),
+                mappings.stream().map(TinyUrlMapping::getCode).collect(Collectors.toSet()));
+        assertTrue(mappings.stream().allMatch(mapping -> mapping.getCreatedAt().equals(CREATED_AT.toInstant())
+                && mapping.getFullUrl().equals("https://www.google.com/" + mapping.getCode())));
+        store.close();
+    }
+
+    private static void insert(LsmUrlMappingStore store, int from, int to) {
+        IntStream.range(from, to).forEach(i ->
+                store.insert(String.valueOf(i), "https://www.google.com/" + i, hash(i), CREATED_AT));
+    }
+
+    private static void assertFound(LsmUrlMappingStore store, int from, int to) {
+        IntStream.range(from, to).forEach(i -> {
+            assertEquals("https://www.google.com/" + i, store.find(String.valueOf(i)).getFullUrl());
+            assertEquals(String.valueOf(i), store.findByHash(hash(i), false).getCode());
+        });
+    }
+}
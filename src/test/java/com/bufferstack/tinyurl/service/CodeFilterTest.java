@@ -0,0 +1,200 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.bufferstack.tinyurl.utils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class CodeFilterTest {
+
+    private final Clock clock = TestUtils.clock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CodeEncoder codeEncoder = CodeEncoder.CodeEncoderBuilder.builder()
+            .withAlphabet(CodeEncoder.DECIMAL)
+            .build();
+    private final UrlMappingStore store = mock(UrlMappingStore.class);
+
+    private TestingServer zkServer;
+    private CuratorFramework zkClient;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        zkServer = new TestingServer(true);
+        zkClient = CuratorFrameworkFactory.newClient(zkServer.getConnectString(), 5000, 1000, new RetryOneTime(100));
+        zkClient.start();
+        when(store.shared()).thenReturn(true);
+        doAnswer(mappings("3my", "14568")).when(store).scan(any());
+        doAnswer(mappings("3mz")).when(store).scanCreatedSince(any(), any());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        zkClient.close();
+        zkServer.close();
+    }
+
+    @Test
+    public void shouldRejectCodesNotInDatabase() throws InterruptedException {
+        CodeFilter codeFilter = codeFilter(1000, "");
+        codeFilter.initialize();
+
+        assertTrue(codeFilter.ready());
+        assertTrue(codeFilter.mightContain("3my"));
+        assertTrue(codeFilter.mightContain("14568"));
+        assertFalse(codeFilter.mightContain("nonexistent"));
+        assertEquals(1, meterRegistry.get("codeFilter").tag("result", "rejected").counter().count());
+        assertEquals(2, meterRegistry.get("codeFilter.size").gauge().value());
+        codeFilter.close();
+    }
+
+    @Test
+    public void shouldLetCodesThroughUntilBuilt() throws InterruptedException {
+        CodeFilter codeFilter = codeFilter(1000, "");
+
+        assertFalse(codeFilter.ready());
+        assertTrue(codeFilter.mightContain("nonexistent"));
+        verifyNoInteractions(store);
+        codeFilter.close();
+    }
+
+    @Test
+    public void shouldContainAddedCodes() throws InterruptedException {
+        CodeFilter codeFilter = codeFilter(1000, "");
+        codeFilter.initialize();
+
+        assertFalse(codeFilter.mightContain("3n0"));
+        codeFilter.put("3n0");
+        assertTrue(codeFilter.mightContain("3n0"));
+        codeFilter.close();
+    }
+
+    @Test
+    public void shouldGrowBeyondExpectedInsertions() throws InterruptedException {
+        CodeFilter codeFilter = codeFilter(10, "");
+        codeFilter.initialize();
+
+        for (int i = 0; i < 1000; i++) {
+            codeFilter.put("code" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(codeFilter.mightContain("code" + i));
+        }
+        assertTrue(meterRegistry.get("codeFilter.expectedFpp").gauge().value() < 0.01);
+        codeFilter.close();
+    }
+
+    @Test
+    public void shouldRefreshFilterLoadedFromFile(@TempDir Path directory) throws InterruptedException {
+        String file = directory.resolve("codes.bloom").toString();
+        CodeFilter saving = codeFilter(1000, file);
+        saving.initialize();
+        saving.put("3n0");
+        saving.close();
+        clearInvocations(store);
+
+        CodeFilter loading = codeFilter(1000, file);
+        loading.initialize();
+        verify(store, never()).scan(any());
+        verify(store).scanCreatedSince(any(), any());
+        assertTrue(loading.mightContain("3my"));
+        assertTrue(loading.mightContain("3n0"));
+        assertTrue(loading.mightContain("3mz"));
+        loading.close();
+    }
+
+    @Test
+    public void shouldLetThroughCodesJustAboveHighestIdentifier() throws InterruptedException {
+        CodeFilter codeFilter = codeFilter(1000, "");
+        codeFilter.initialize();
+
+        assertTrue(codeFilter.mightContain("14569"));
+        assertTrue(codeFilter.mightContain("15568"));
+        assertFalse(codeFilter.mightContain("15569"));
+        assertFalse(codeFilter.mightContain("14567"));
+        assertFalse(codeFilter.mightContain("014569"));
+        assertEquals(2, meterRegistry.get("codeFilter").tag("result", "unseen").counter().count());
+        codeFilter.close();
+    }
+
+    @Test
+    public void shouldStreamEveryCodeAgainAfterImport() throws InterruptedException {
+        CodeFilter importing = codeFilter(1000, "");
+        CodeFilter other = codeFilter(1000, "");
+        importing.initialize();
+        other.initialize();
+        clearInvocations(store);
+
+        other.refresh();
+        verify(store).scanCreatedSince(any(), any());
+
+        importing.codesImported();
+        clearInvocations(store);
+        other.refresh();
+        verify(store).scan(any());
+        verify(store, never()).scanCreatedSince(any(), any());
+        other.refresh();
+        verify(store, times(1)).scan(any());
+        verify(store).scanCreatedSince(any(), any());
+        importing.close();
+        other.close();
+    }
+
+    @Test
+    public void shouldNeitherRefreshNorAnnounceImportsForUnsharedStore() throws InterruptedException {
+        CuratorFramework unusedZkClient = mock(CuratorFramework.class);
+        when(store.shared()).thenReturn(false);
+        CodeFilter codeFilter = new CodeFilter(store, codeEncoder, unusedZkClient, true, 1000, 0.01, 1000, "",
+                Duration.ofHours(1), Duration.ofMinutes(1), clock, meterRegistry);
+        codeFilter.initialize();
+
+        codeFilter.codesImported();
+        assertTrue(codeFilter.mightContain("3my"));
+        verify(store).scan(any());
+        verifyNoInteractions(unusedZkClient);
+        codeFilter.close();
+    }
+
+    private CodeFilter codeFilter(long expectedInsertions, String file) {
+        return new CodeFilter(store, codeEncoder, zkClient, true, expectedInsertions, 0.01, 1000, file,
+                Duration.ofHours(1), Duration.ofMinutes(1), clock, meterRegistry);
+    }
+
+    private static Answer<Void> mappings(String... codes) {
+        return invocation -> {
+            Consumer<TinyUrlMapping> consumer = invocation.getArgument(invocation.getArguments().length - 1);
+            for (String code : codes) {
+                consumer.accept(new TinyUrlMapping(code, "https://www.google.com/" + code, Instant.EPOCH));
+            }
+            return null;
+        };
+    }
+}
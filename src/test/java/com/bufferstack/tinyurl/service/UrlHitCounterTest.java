@@ -0,0 +1,128 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinyurl.models.UrlStats;
+import com.bufferstack.tinyurl.utils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.conf.RenderNameCase;
+import org.jooq.conf.RenderQuotedNames;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UrlHitCounterTest {
+
+    private final Clock clock = TestUtils.clock();
+    private final OffsetDateTime now = OffsetDateTime.now(clock);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<MockExecuteContext> executed = new ArrayList<>();
+    private boolean failing;
+
+    private final DSLContext dslContext = DSL.using(new MockConnection(context -> {
+        if (failing) {
+            throw new SQLException("connection refused");
+        }
+        executed.add(context);
+        Result<Record2<Long, OffsetDateTime>> result = DSL.using(SQLDialect.POSTGRES)
+                .newResult(Tables.URL_STATS.HITS, Tables.URL_STATS.UPDATED_AT);
+        if (context.sql().startsWith("select")) {
+            result.add(DSL.using(SQLDialect.POSTGRES)
+                    .newRecord(Tables.URL_STATS.HITS, Tables.URL_STATS.UPDATED_AT)
+                    .values(5L, now));
+        }
+        return new MockResult[] { new MockResult(1, result) };
+    }), SQLDialect.POSTGRES, new Settings()
+            .withRenderNameCase(RenderNameCase.UPPER)
+            .withRenderQuotedNames(RenderQuotedNames.NEVER));
+
+    private final UrlHitCounter hitCounter = new UrlHitCounter(dslContext, dslContext, "POSTGRES", true,
+            Duration.ofHours(1), 1000, 100, clock, meterRegistry);
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        failing = false;
+        hitCounter.close();
+    }
+
+    @Test
+    public void shouldFlushAggregatedHitsAsOneUpsert() {
+        hitCounter.record("3my");
+        hitCounter.record("3my");
+        hitCounter.record("3my");
+        hitCounter.record("3mz");
+
+        hitCounter.flush();
+        assertEquals(1, executed.size());
+        assertTrue(executed.get(0).sql().startsWith("insert into URL_STATS (CODE, HITS, UPDATED_AT) values"));
+        assertTrue(executed.get(0).sql().contains(
+                "on conflict (CODE) do update set HITS = (URL_STATS.HITS + EXCLUDED.HITS)"));
+        assertTrue(Arrays.asList(executed.get(0).bindings()).containsAll(List.of("3my", 3L, "3mz", 1L)));
+        assertEquals(4, meterRegistry.get("urlHitCounter.flushed").counter().count());
+    }
+
+    @Test
+    public void shouldDropCountersWithoutHits() {
+        hitCounter.record("3my");
+        hitCounter.flush();
+        hitCounter.flush();
+
+        assertEquals(1, executed.size());
+        assertEquals(0, meterRegistry.get("urlHitCounter.codes").gauge().value());
+    }
+
+    @Test
+    public void shouldRetryHitsOfFailedFlush() {
+        hitCounter.record("3my");
+        hitCounter.record("3my");
+        failing = true;
+        hitCounter.flush();
+        assertEquals(1, meterRegistry.get("urlHitCounter.flush").tag("result", "exception").counter().count());
+
+        failing = false;
+        hitCounter.flush();
+        assertEquals("3my", executed.get(0).bindings()[0]);
+        assertEquals(2L, executed.get(0).bindings()[1]);
+    }
+
+    @Test
+    public void shouldDropHitsBeyondMaxCodes() throws InterruptedException {
+        UrlHitCounter bounded = new UrlHitCounter(dslContext, dslContext, "POSTGRES", true, Duration.ofHours(1), 1000,
+                1, clock, meterRegistry);
+        bounded.record("3my");
+        bounded.record("3mz");
+        bounded.record("3my");
+
+        assertEquals(1, meterRegistry.get("urlHitCounter.dropped").counter().count());
+        assertEquals(7, bounded.stats("3my").getHits());
+        bounded.close();
+    }
+
+    @Test
+    public void shouldAddUnflushedHitsToStoredStats() {
+        hitCounter.record("3my");
+        hitCounter.record("3my");
+
+        UrlStats stats = hitCounter.stats("3my");
+        assertEquals("3my", stats.getCode());
+        assertEquals(7, stats.getHits());
+        assertEquals(now.toInstant(), stats.getUpdatedAt());
+    }
+}
@@ -0,0 +1,140 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinuyrl.jooq.tables.UrlMapping;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.Field;
+import org.jooq.SQLDialect;
+import org.jooq.conf.RenderNameCase;
+import org.jooq.conf.RenderQuotedNames;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultExecuteListener;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.jooq.impl.SQLDataType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Moves rows out of a legacy table laid out as db-partition-migration.sql leaves it, in an in-memory H2 database
+ * without partitions. Rows carry no full URL hash: jOOQ only knows the key of {@code url_mapping_hash} from Postgres,
+ * so it cannot emulate the conflict-skipping insert of hashes for H2.
+ */
+public class UrlMappingBackfillTest {
+
+    private static final Field<byte[]> FULL_URL_HASH = DSL.field(DSL.name("FULL_URL_HASH"), byte[].class);
+    private static final OffsetDateTime CREATED_AT = OffsetDateTime.of(2021, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private final UrlMappingPartitions partitions = new UrlMappingPartitions(16, false, "URL_MAPPING_LEGACY");
+    private final UrlMapping legacyTable = partitions.legacyTable();
+
+    private JdbcConnectionPool dataSource;
+    private DSLContext dslContext;
+
+    @BeforeEach
+    public void setUp() {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:tinyurl-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                "sa", "");
+        DefaultConfiguration configuration = new DefaultConfiguration();
+        configuration.set(dataSource);
+        configuration.set(SQLDialect.H2);
+        configuration.set(new Settings()
+                .withRenderNameCase(RenderNameCase.UPPER)
+                .withRenderQuotedNames(RenderQuotedNames.NEVER));
+        // H2 does not know skip locked, which only matters with several backfills running side by side.
+        configuration.set(new DefaultExecuteListenerProvider(new DefaultExecuteListener() {
+            @Override
+            public void renderEnd(ExecuteContext ctx) {
+                ctx.sql(ctx.sql().replace(" skip locked", ""));
+            }
+        }));
+        dslContext = DSL.using(configuration);
+        dslContext.createTable(Tables.URL_MAPPING)
+                .columns(Tables.URL_MAPPING.fields())
+                .constraints(DSL.primaryKey(Tables.URL_MAPPING.BUCKET, Tables.URL_MAPPING.CODE))
+                .execute();
+        // H2 cannot index the blob column jOOQ would declare for bytea.
+        dslContext.createTable(Tables.URL_MAPPING_HASH)
+                .column(Tables.URL_MAPPING_HASH.FULL_URL_HASH.getName(), SQLDataType.VARBINARY(16).nullable(false))
+                .column(Tables.URL_MAPPING_HASH.CODE)
+                .constraints(DSL.primaryKey(Tables.URL_MAPPING_HASH.FULL_URL_HASH))
+                .execute();
+        dslContext.createTable(legacyTable)
+                .column(legacyTable.CODE)
+                .column(legacyTable.FULL_URL)
+                .column(legacyTable.CREATED_AT)
+                .column(FULL_URL_HASH.getName(), SQLDataType.VARBINARY(16))
+                .constraints(DSL.primaryKey(legacyTable.CODE))
+                .execute();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.dispose();
+    }
+
+    @Test
+    public void shouldMoveChunksUntilLegacyTableIsEmpty() {
+        for (int i = 0; i < 5; i++) {
+            insertLegacy("code" + i, "https://www.google.com/" + i, null);
+        }
+        UrlMappingBackfill backfill = backfill(2);
+
+        assertEquals(2, backfill.moveChunk());
+        assertEquals(3, dslContext.fetchCount(legacyTable));
+        assertEquals(2, dslContext.fetchCount(Tables.URL_MAPPING));
+        assertEquals(2, backfill.moveChunk());
+        assertEquals(1, backfill.moveChunk());
+        assertEquals(0, backfill.moveChunk());
+
+        assertEquals(0, dslContext.fetchCount(legacyTable));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("https://www.google.com/" + i, dslContext.select(Tables.URL_MAPPING.FULL_URL)
+                    .from(Tables.URL_MAPPING)
+                    .where(Tables.URL_MAPPING.BUCKET.eq(partitions.bucket("code" + i)))
+                    .and(Tables.URL_MAPPING.CODE.eq("code" + i))
+                    .fetchOne(Tables.URL_MAPPING.FULL_URL));
+        }
+        assertEquals(0, dslContext.fetchCount(Tables.URL_MAPPING_HASH));
+    }
+
+    @Test
+    public void shouldDropLegacyRowsAlreadyInPartitions() {
+        insertLegacy("code", "https://www.google.com/legacy", null);
+        dslContext.insertInto(Tables.URL_MAPPING)
+                .set(Tables.URL_MAPPING.BUCKET, partitions.bucket("code"))
+                .set(Tables.URL_MAPPING.CODE, "code")
+                .set(Tables.URL_MAPPING.FULL_URL, "https://www.google.com/moved")
+                .set(Tables.URL_MAPPING.CREATED_AT, CREATED_AT)
+                .execute();
+
+        assertEquals(1, backfill(10).moveChunk());
+
+        assertEquals(0, dslContext.fetchCount(legacyTable));
+        assertEquals("https://www.google.com/moved", dslContext.select(Tables.URL_MAPPING.FULL_URL)
+                .from(Tables.URL_MAPPING)
+                .fetchOne(Tables.URL_MAPPING.FULL_URL));
+    }
+
+    private UrlMappingBackfill backfill(int chunkSize) {
+        return new UrlMappingBackfill(dslContext, partitions, chunkSize, 1000, Duration.ofSeconds(1),
+                new SimpleMeterRegistry());
+    }
+
+    private void insertLegacy(String code, String fullUrl, byte[] hash) {
+        dslContext.insertInto(legacyTable, legacyTable.CODE, legacyTable.FULL_URL, legacyTable.CREATED_AT,
+                FULL_URL_HASH)
+                .values(code, fullUrl, CREATED_AT, hash)
+                .execute();
+    }
+}
@@ -0,0 +1,183 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinyurl.generator.CodeEncoder;
+import com.bufferstack.tinyurl.generator.IdentifierStream;
+import com.bufferstack.tinyurl.lsm.LsmUrlMappingStore;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
+import com.bufferstack.tinyurl.utils.ObjectMapperFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class UrlMappingBulkTransferTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2021-06-01T10:15:30.123456Z");
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CodeFilter codeFilter = mock(CodeFilter.class);
+    @SuppressWarnings("unchecked")
+    private final IdentifierStream<Long> identifierStream = mock(IdentifierStream.class);
+    private final CodeEncoder codeEncoder = CodeEncoder.CodeEncoderBuilder.builder().build();
+
+    private UrlMappingStore source;
+    private UrlMappingStore target;
+
+    @AfterEach
+    public void tearDown() {
+        if (source != null) {
+            source.close();
+        }
+        if (target != null) {
+            target.close();
+        }
+    }
+
+    @Test
+    public void shouldCopyMappingsThroughExportAndImport() throws IOException {
+        source = store("source");
+        IntStream.range(0, 2500).forEach(i -> source.insert(code(i), "https://www.google.com/" + i, null,
+                OffsetDateTime.ofInstant(CREATED_AT, ZoneOffset.UTC)));
+        target = store("target");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2500, transfer(source, 1000).export(out));
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2500, lines.length);
+        JsonNode line = ObjectMapperFactory.getObjectMapper().readTree(lines[0]);
+        assertEquals(CREATED_AT, Instant.parse(line.get("createdAt").asText()));
+
+        UrlMappingBulkTransfer.ImportResult result =
+                transfer(target, 1000).importFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertNull(result.getMessage());
+        assertEquals(2500, result.getRead());
+        assertEquals(2500, result.getImported());
+        IntStream.range(0, 2500).forEach(i -> {
+            TinyUrlMapping mapping = target.find(code(i));
+            assertEquals("https://www.google.com/" + i, mapping.getFullUrl());
+            assertEquals(CREATED_AT, mapping.getCreatedAt());
+        });
+        verify(codeFilter, times(2500)).put(anyString());
+        verify(codeFilter).codesImported();
+        verify(identifierStream).advancePast(2499L);
+        assertEquals(2500, meterRegistry.get("urlMapping.bulk").tag("result", "exported").counter().count());
+        assertEquals(2500, meterRegistry.get("urlMapping.bulk").tag("result", "imported").counter().count());
+        assertEquals(3, meterRegistry.get("urlMapping.bulk.chunk").timer().count());
+    }
+
+    @Test
+    public void shouldSkipCodesAlreadyStored() throws IOException {
+        target = store("target");
+        byte[] input = ndjson(code(1), code(2), code(2), code(3));
+        transfer(target, 2).importFrom(new ByteArrayInputStream(ndjson(code(1))));
+
+        UrlMappingBulkTransfer.ImportResult result = transfer(target, 2).importFrom(new ByteArrayInputStream(input));
+        assertEquals(4, result.getRead());
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getSkipped());
+        assertNotNull(target.find(code(3)));
+    }
+
+    @Test
+    public void shouldStopAtMalformedMappingKeepingEarlierChunks() throws IOException {
+        target = store("target");
+        String input = new String(ndjson(code(1), code(2), code(3)), StandardCharsets.UTF_8) + "\"c4\"\n";
+
+        UrlMappingBulkTransfer.ImportResult result = transfer(target, 2)
+                .importFrom(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(result.getMessage());
+        assertEquals(2, result.getImported());
+        assertNotNull(target.find(code(2)));
+        assertNull(target.find(code(3)));
+    }
+
+    @Test
+    public void shouldStopAtCodeNotProducedByEncoder() throws IOException {
+        target = store("target");
+        byte[] input = ndjson(code(1), "not-a-code", code(2));
+
+        UrlMappingBulkTransfer.ImportResult result = transfer(target, 1).importFrom(new ByteArrayInputStream(input));
+        assertNotNull(result.getMessage());
+        assertEquals(1, result.getImported());
+        assertNull(target.find(code(2)));
+    }
+
+    @Test
+    public void shouldStopWhenIdentifierStreamCannotSkipImportedCodes() throws IOException {
+        target = store("target");
+        doThrow(new UnsupportedOperationException("cannot skip")).when(identifierStream).advancePast(anyLong());
+
+        UrlMappingBulkTransfer.ImportResult result = transfer(target, 2)
+                .importFrom(new ByteArrayInputStream(ndjson(code(1), code(2))));
+        assertEquals("cannot skip", result.getMessage());
+        assertEquals(0, result.getImported());
+        assertNull(target.find(code(1)));
+        verify(codeFilter, never()).codesImported();
+    }
+
+    @Test
+    public void shouldAdvanceIdentifierStreamOnlyPastLargerIdentifiers() throws IOException {
+        target = store("target");
+        UrlMappingBulkTransfer transfer = transfer(target, 2);
+
+        transfer.importFrom(new ByteArrayInputStream(ndjson(code(7), code(3), code(5), code(4))));
+        verify(identifierStream).advancePast(7L);
+        verify(identifierStream, times(1)).advancePast(anyLong());
+    }
+
+    private UrlMappingBulkTransfer transfer(UrlMappingStore store, int chunkSize) {
+        return new UrlMappingBulkTransfer(store, identifierStream, codeEncoder,
+                new UrlDeduplicator(false, 100, new SimpleMeterRegistry()), codeFilter,
+                ObjectMapperFactory.getObjectMapper(), chunkSize, meterRegistry);
+    }
+
+    private String code(long identifier) {
+        return codeEncoder.encode(identifier);
+    }
+
+    private UrlMappingStore store(String name) {
+        return LsmUrlMappingStore.LsmUrlMappingStoreBuilder.builder()
+                .withDirectory(directory.resolve(name).toString())
+                .withMemtableBytes(16 * 1024)
+                .withMaxTables(4)
+                .withTableBytes(1 << 20)
+                .withFpp(0.01)
+                .withSync(false)
+                .withMeterRegistry(new SimpleMeterRegistry())
+                .build();
+    }
+
+    private static byte[] ndjson(String... codes) {
+        StringBuilder lines = new StringBuilder();
+        for (String code : codes) {
+            lines.append("{\"code\":\"").append(code).append("\",\"fullUrl\":\"https://www.google.com/").append(code)
+                    .append("\",\"createdAt\":\"2021-06-01T10:15:30Z\"}\n");
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.utils.TestUtils;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.conf.RenderNameCase;
+import org.jooq.conf.RenderQuotedNames;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class UrlMappingLookupTest {
+
+    private final Settings settings = new Settings()
+            .withRenderNameCase(RenderNameCase.UPPER)
+            .withRenderQuotedNames(RenderQuotedNames.NEVER);
+    private final UrlMappingPartitions partitions = new UrlMappingPartitions(16, true, "");
+    private final Clock clock = TestUtils.clock();
+    private final List<MockExecuteContext> executed = new ArrayList<>();
+
+    @Test
+    public void shouldQueryPartitionAndMapColumns() {
+        OffsetDateTime createdAt = OffsetDateTime.ofInstant(clock.instant(), clock.getZone());
+        DSLContext dslContext = DSL.using(new MockConnection(context -> {
+            executed.add(context);
+            Result<Record2<String, OffsetDateTime>> result = DSL.using(SQLDialect.POSTGRES)
+                    .newResult(Tables.URL_MAPPING.FULL_URL, Tables.URL_MAPPING.CREATED_AT);
+            result.add(DSL.using(SQLDialect.POSTGRES)
+                    .newRecord(Tables.URL_MAPPING.FULL_URL, Tables.URL_MAPPING.CREATED_AT)
+                    .values("https://www.google.com", createdAt));
+            return new MockResult[] { new MockResult(1, result) };
+        }), SQLDialect.POSTGRES, settings);
+        UrlMappingLookup lookup = new UrlMappingLookup(dslContext, partitions);
+        short bucket = partitions.bucket("3my");
+
+        TinyUrlMapping mapping = lookup.find(dslContext, "3my");
+        assertEquals("3my", mapping.getCode());
+        assertEquals("https://www.google.com", mapping.getFullUrl());
+        assertEquals(createdAt.toInstant(), mapping.getCreatedAt());
+        assertEquals("select URL_MAPPING_" + bucket + ".FULL_URL, URL_MAPPING_" + bucket + ".CREATED_AT"
+                + " from URL_MAPPING_" + bucket + " where (URL_MAPPING_" + bucket + ".BUCKET = ?"
+                + " and URL_MAPPING_" + bucket + ".CODE = ?)", executed.get(0).sql());
+        assertArrayEquals(new Object[] { bucket, "3my" }, executed.get(0).bindings());
+    }
+
+    @Test
+    public void shouldReturnNullForMissingCode() {
+        DSLContext dslContext = DSL.using(new MockConnection(context -> new MockResult[] {
+                new MockResult(0, DSL.using(SQLDialect.POSTGRES)
+                        .newResult(Tables.URL_MAPPING.FULL_URL, Tables.URL_MAPPING.CREATED_AT)) }),
+                SQLDialect.POSTGRES, settings);
+
+        assertNull(new UrlMappingLookup(dslContext, partitions).find(dslContext, "3my"));
+    }
+}
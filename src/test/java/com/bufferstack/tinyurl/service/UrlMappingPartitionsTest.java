@@ -0,0 +1,43 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinuyrl.jooq.tables.UrlMapping;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.conf.RenderNameCase;
+import org.jooq.conf.RenderQuotedNames;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class UrlMappingPartitionsTest {
+
+    private final DSLContext dslContext = DSL.using(SQLDialect.POSTGRES, new Settings()
+            .withRenderNameCase(RenderNameCase.UPPER)
+            .withRenderQuotedNames(RenderQuotedNames.NEVER));
+
+    @Test
+    public void shouldQueryPartitionOfCodeDirectly() {
+        UrlMappingPartitions partitions = new UrlMappingPartitions(16, true, "");
+        short bucket = partitions.bucket("3my");
+        UrlMapping table = partitions.table("3my");
+
+        assertEquals(Math.floorMod("3my".hashCode(), 16), bucket);
+        assertEquals("select URL_MAPPING_" + bucket + ".CODE from URL_MAPPING_" + bucket
+                        + " where URL_MAPPING_" + bucket + ".BUCKET = " + bucket,
+                dslContext.renderInlined(dslContext.select(table.CODE).from(table).where(table.BUCKET.eq(bucket))));
+        assertNull(partitions.legacyTable());
+    }
+
+    @Test
+    public void shouldQueryPartitionedTableWhenNotDirect() {
+        UrlMappingPartitions partitions = new UrlMappingPartitions(4, false, "url_mapping_legacy");
+
+        assertSame(Tables.URL_MAPPING, partitions.table("3my"));
+        assertEquals("URL_MAPPING_LEGACY", dslContext.render(partitions.legacyTable()));
+    }
+}
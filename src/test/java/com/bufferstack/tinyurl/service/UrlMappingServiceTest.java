@@ -2,75 +2,419 @@ package com.bufferstack.tinyurl.service;
 
 import com.bufferstack.tinuyrl.jooq.Tables;
 import com.bufferstack.tinuyrl.jooq.tables.UrlMapping;
-import com.bufferstack.tinuyrl.jooq.tables.records.UrlMappingRecord;
+import com.bufferstack.tinuyrl.jooq.tables.UrlMappingHash;
+import com.bufferstack.tinyurl.cache.OffHeapUrlMappingStore;
+import com.bufferstack.tinyurl.cache.PeerUrlMappingCache;
+import com.bufferstack.tinyurl.cache.UrlMappingCache;
+import com.bufferstack.tinyurl.exception.DuplicateUrlException;
+import com.bufferstack.tinyurl.exception.MappingNotFoundException;
+import com.bufferstack.tinyurl.exception.StatsUnavailableException;
+import com.bufferstack.tinyurl.generator.CodeEncoder;
 import com.bufferstack.tinyurl.generator.IdentifierStream;
+import com.bufferstack.tinyurl.lsm.LsmUrlMappingStore;
 import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.store.UrlMappingStore;
 import com.bufferstack.tinyurl.utils.TestUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.apache.curator.framework.CuratorFramework;
+import org.jooq.Condition;
 import org.jooq.DSLContext;
-import org.jooq.InsertSetMoreStep;
-import org.jooq.InsertSetStep;
 import org.jooq.Record;
+import org.jooq.RecordMapper;
 import org.jooq.SelectConditionStep;
 import org.jooq.SelectJoinStep;
 import org.jooq.SelectSelectStep;
-import org.jooq.TableField;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.util.unit.DataSize;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @SuppressWarnings("unchecked")
 public class UrlMappingServiceTest {
 
     private final DSLContext dslContext = mock(DSLContext.class);
-    private final IdentifierStream<String> identifierStream = mock(IdentifierStream.class);
-    private final InsertSetStep<UrlMappingRecord> insertSetStep = mock(InsertSetStep.class);
-    private final InsertSetMoreStep<UrlMappingRecord> insertSetMoreStep = mock(InsertSetMoreStep.class);
+    private final IdentifierStream<Long> identifierStream = mock(IdentifierStream.class);
+    private final UrlMappingWriter writer = mock(UrlMappingWriter.class);
+    private final UrlMappingLookup lookup = mock(UrlMappingLookup.class);
+    private final UrlHitCounter hitCounter = mock(UrlHitCounter.class);
+    private final PeerUrlMappingCache peerCache = mock(PeerUrlMappingCache.class);
     private final SelectSelectStep<Record> selectSelectStep = mock(SelectSelectStep.class);
     private final SelectJoinStep<Record> selectJoinStep = mock(SelectJoinStep.class);
     private final SelectConditionStep<Record> selectConditionStep = mock(SelectConditionStep.class);
     private final Record record = mock(Record.class);
 
+    private final CodeEncoder codeEncoder = CodeEncoder.CodeEncoderBuilder.builder().build();
+    private final UrlMappingCache cache = new UrlMappingCache(100, 0, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    private final OffHeapUrlMappingStore offHeapStore = new OffHeapUrlMappingStore(false, "", 1024,
+            DataSize.ofMegabytes(1), codeEncoder, new SimpleMeterRegistry());
     private final Clock clock = TestUtils.clock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UrlMappingPartitions partitions = new UrlMappingPartitions(16, true, "");
+    private final CuratorFramework zkClient = mock(CuratorFramework.class, RETURNS_DEEP_STUBS);
 
-    private final UrlMappingService urlMappingService = new UrlMappingService(dslContext, identifierStream, clock);
+    private final UrlMappingStore store =
+            new PostgresUrlMappingStore(dslContext, dslContext, false, partitions, lookup, writer);
+    private final CodeFilter codeFilter = new CodeFilter(store, codeEncoder, zkClient, false, 1000, 0.01, 1000, "",
+            Duration.ofSeconds(5), Duration.ofMinutes(1), clock, new SimpleMeterRegistry());
+
+    private final UrlMappingService urlMappingService = new UrlMappingService(store, identifierStream, codeEncoder,
+            cache, offHeapStore, new UrlDeduplicator(false, 100, new SimpleMeterRegistry()), hitCounter, codeFilter,
+            peerCache, clock);
+    private final UrlMappingService dedupingService = new UrlMappingService(store, identifierStream, codeEncoder,
+            cache, offHeapStore, new UrlDeduplicator(true, 100, meterRegistry), hitCounter, codeFilter, peerCache,
+            clock);
 
     @Test
     public void shouldAddLink() {
-        String code = "14568";
+        String code = "3my";
         String url = "https://www.google.com";
-        when(identifierStream.next()).thenReturn(code);
-        when(dslContext.insertInto(eq(Tables.URL_MAPPING))).thenReturn(insertSetStep);
-        when(insertSetStep.set(any(TableField.class), any(Object.class))).thenReturn(insertSetMoreStep);
-        when(insertSetMoreStep.set(any(TableField.class), any(Object.class))).thenReturn(insertSetMoreStep);
+        when(identifierStream.next()).thenReturn(14568L);
 
         TinyUrlMapping link = urlMappingService.addLink(url);
         assertEquals(code, link.getCode());
         assertEquals(url, link.getFullUrl());
         assertNotNull(link.getCreatedAt());
+        verify(writer).insert(eq(code), eq(url), isNull(), any(OffsetDateTime.class));
+    }
+
+    @Test
+    public void shouldRetryWithFreshCodeWhenCodeIsTaken() {
+        String url = "https://www.google.com";
+        when(identifierStream.next()).thenReturn(14568L, 14569L);
+        doThrow(new DuplicateKeyException("3my")).when(writer).insert(eq("3my"), eq(url), isNull(), any());
+
+        TinyUrlMapping link = urlMappingService.addLink(url);
+        assertEquals("3mz", link.getCode());
+        verify(writer).insert(eq("3mz"), eq(url), isNull(), any(OffsetDateTime.class));
+    }
+
+    @Test
+    public void shouldGiveUpWhenFreshCodesKeepBeingTaken() {
+        when(identifierStream.next()).thenReturn(14568L, 14569L, 14570L);
+        doThrow(new DuplicateKeyException("taken")).when(writer).insert(any(), any(), any(), any());
+
+        assertThrows(DuplicateKeyException.class, () -> urlMappingService.addLink("https://www.google.com"));
+        verify(identifierStream, times(3)).next();
     }
 
     @Test
     public void shouldGetLink() {
         String code = "14568";
         String url = "https://www.google.com";
-        when(dslContext.select()).thenReturn(selectSelectStep);
-        when(selectSelectStep.from(any(UrlMapping.class))).thenReturn(selectJoinStep);
-        when(selectJoinStep.where(eq(Tables.URL_MAPPING.CODE.eq(code)))).thenReturn(selectConditionStep);
-        when(selectConditionStep.fetchOne()).thenReturn(record);
-        when(record.get(eq(Tables.URL_MAPPING.CODE))).thenReturn(code);
-        when(record.get(eq(Tables.URL_MAPPING.FULL_URL))).thenReturn(url);
-        when(record.get(eq(Tables.URL_MAPPING.CREATED_AT))).thenReturn(OffsetDateTime.ofInstant(clock.instant(), clock.getZone()));
+        when(lookup.find(dslContext, code)).thenReturn(new TinyUrlMapping(code, url, clock.instant()));
 
         TinyUrlMapping link = urlMappingService.getLink(code);
         assertEquals(code, link.getCode());
         assertEquals(url, link.getFullUrl());
         assertNotNull(link.getCreatedAt());
+        verify(hitCounter).record(code);
+    }
+
+    @Test
+    public void shouldServeAddedLinkFromCache() {
+        String url = "https://www.google.com";
+        when(identifierStream.next()).thenReturn(14568L);
+
+        TinyUrlMapping link = urlMappingService.addLink(url);
+        assertSame(link, urlMappingService.getLink(link.getCode()));
+        verify(lookup, never()).find(any(), any());
+    }
+
+    @Test
+    public void shouldServeLinkFromOffHeapStoreWithColdCache(@TempDir Path directory) {
+        OffHeapUrlMappingStore offHeap = new OffHeapUrlMappingStore(true, directory.toString(), 1024,
+                DataSize.ofMegabytes(1), codeEncoder, meterRegistry);
+        UrlDeduplicator deduplicator = new UrlDeduplicator(false, 100, new SimpleMeterRegistry());
+        UrlMappingService writingService = new UrlMappingService(store, identifierStream, codeEncoder,
+                new UrlMappingCache(100, 0, Duration.ofMinutes(1), new SimpleMeterRegistry()), offHeap, deduplicator,
+                hitCounter, codeFilter, peerCache, clock);
+        UrlMappingService readingService = new UrlMappingService(store, identifierStream, codeEncoder, cache, offHeap,
+                deduplicator, hitCounter, codeFilter, peerCache, clock);
+        when(identifierStream.next()).thenReturn(14568L);
+
+        TinyUrlMapping link = writingService.addLink("https://www.google.com");
+        assertEquals(link.getFullUrl(), readingService.getLink("3my").getFullUrl());
+        assertThrows(MappingNotFoundException.class, () -> readingService.getLink("03my"));
+        verify(lookup, never()).find(any(), eq("3my"));
+        verify(lookup).find(dslContext, "03my");
+        assertEquals(1, meterRegistry.get("urlMapping.offHeap").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    public void shouldStoreLinksInLsmStore(@TempDir Path directory) {
+        UrlMappingStore lsmStore = LsmUrlMappingStore.LsmUrlMappingStoreBuilder.builder()
+                .withDirectory(directory.toString())
+                .withMemtableBytes(1 << 20)
+                .withMaxTables(4)
+                .withTableBytes(1 << 20)
+                .withFpp(0.01)
+                .withSync(false)
+                .withMeterRegistry(meterRegistry)
+                .build();
+        UrlMappingService writingService = new UrlMappingService(lsmStore, identifierStream, codeEncoder, cache,
+                offHeapStore, new UrlDeduplicator(true, 100, new SimpleMeterRegistry()), hitCounter, codeFilter,
+                peerCache, clock);
+        UrlMappingService readingService = new UrlMappingService(lsmStore, identifierStream, codeEncoder,
+                new UrlMappingCache(100, 0, Duration.ofMinutes(1), new SimpleMeterRegistry()), offHeapStore,
+                new UrlDeduplicator(true, 100, new SimpleMeterRegistry()), hitCounter, codeFilter, peerCache, clock);
+        when(identifierStream.next()).thenReturn(14568L);
+
+        TinyUrlMapping link = writingService.addLink("https://www.google.com");
+        assertEquals(link.getFullUrl(), readingService.getLink("3my").getFullUrl());
+        assertEquals("3my", readingService.addLink("HTTPS://WWW.GOOGLE.COM").getCode());
+        assertThrows(MappingNotFoundException.class, () -> readingService.getLink("03my"));
+        verify(identifierStream, times(1)).next();
+        verifyNoInteractions(lookup, writer);
+        lsmStore.close();
+    }
+
+    @Test
+    public void shouldFallBackToPrimaryWhenReplicaMissesLink() {
+        DSLContext replica = mock(DSLContext.class);
+        when(lookup.find(dslContext, "3my")).thenReturn(
+                new TinyUrlMapping("3my", "https://www.google.com", clock.instant()));
+        UrlMappingService replicaService = new UrlMappingService(
+                new PostgresUrlMappingStore(dslContext, replica, true, partitions, lookup, writer), identifierStream,
+                codeEncoder, cache, offHeapStore,
+                new UrlDeduplicator(false, 100, new SimpleMeterRegistry()), hitCounter, codeFilter, peerCache, clock);
+
+        assertEquals("https://www.google.com", replicaService.getLink("3my").getFullUrl());
+        verify(lookup).find(replica, "3my");
+        verify(lookup).find(dslContext, "3my");
+    }
+
+    @Test
+    public void shouldAskOwnerForLinkOwnedByPeer() {
+        TinyUrlMapping mapping = new TinyUrlMapping("3my", "https://www.google.com", clock.instant());
+        when(peerCache.owner("3my")).thenReturn("http://10.0.0.2:9091");
+        when(peerCache.get(eq("http://10.0.0.2:9091"), eq("3my"), any())).thenReturn(mapping);
+        when(lookup.find(dslContext, "3my")).thenReturn(mapping);
+
+        assertSame(mapping, urlMappingService.getLink("3my"));
+        assertSame(mapping, urlMappingService.getOwnedLink("3my"));
+        verify(peerCache).get(eq("http://10.0.0.2:9091"), eq("3my"), any());
+        verify(lookup, times(1)).find(dslContext, "3my");
+        verify(hitCounter, times(1)).record("3my");
+    }
+
+    @Test
+    public void shouldFindLinkCountingHitsOnlyForExistingCodes() {
+        when(lookup.find(dslContext, "3my")).thenReturn(new TinyUrlMapping("3my", "https://www.google.com",
+                clock.instant()));
+
+        assertEquals("https://www.google.com", urlMappingService.findLink("3my").getFullUrl());
+        assertNull(urlMappingService.findLink("3mz"));
+        verify(hitCounter).record("3my");
+        verify(hitCounter, never()).record("3mz");
+    }
+
+    @Test
+    public void shouldCacheMissingLink() {
+        String code = "14568";
+
+        assertThrows(MappingNotFoundException.class, () -> urlMappingService.getLink(code));
+        assertThrows(MappingNotFoundException.class, () -> urlMappingService.getLink(code));
+        verify(lookup, times(1)).find(dslContext, code);
+        verify(hitCounter, never()).record(any());
+    }
+
+    @Test
+    public void shouldRefuseStatsWithoutHitCounter() {
+        when(hitCounter.available()).thenReturn(false);
+
+        assertThrows(StatsUnavailableException.class, () -> urlMappingService.getStats("3my"));
+        verify(lookup, never()).find(any(), any());
+        verify(hitCounter, never()).stats(any());
+    }
+
+    @Test
+    public void shouldRejectCodeMissingFromFilterWithoutLookup() throws InterruptedException {
+        when(lookup.find(dslContext, "3my")).thenReturn(
+                new TinyUrlMapping("3my", "https://www.google.com", clock.instant()));
+        CodeFilter enabledFilter = new CodeFilter(store, codeEncoder, zkClient, true, 1000, 0.01, 1000, "",
+                Duration.ofHours(1), Duration.ofMinutes(1), clock, meterRegistry);
+        UrlMappingService filteringService = new UrlMappingService(store, identifierStream, codeEncoder, cache,
+                offHeapStore, new UrlDeduplicator(false, 100, new SimpleMeterRegistry()), hitCounter, enabledFilter,
+                peerCache, clock);
+        when(identifierStream.next()).thenReturn(14568L);
+        TinyUrlMapping link = filteringService.addLink("https://www.google.com");
+        enabledFilter.initialize();
+
+        assertEquals(link.getFullUrl(), filteringService.getLink(link.getCode()).getFullUrl());
+        assertThrows(MappingNotFoundException.class, () -> filteringService.getLink("03my"));
+        verify(lookup, never()).find(any(), eq("03my"));
+        assertEquals(1, meterRegistry.get("codeFilter").tag("result", "rejected").counter().count());
+        enabledFilter.close();
+    }
+
+    @Test
+    public void shouldQueryOnceForConcurrentMisses() throws Exception {
+        int callers = 50;
+        CountDownLatch release = new CountDownLatch(1);
+        when(lookup.find(dslContext, "3my")).thenAnswer(invocation -> {
+            release.await();
+            return new TinyUrlMapping("3my", "https://www.google.com", clock.instant());
+        });
+        UrlMappingService coalescingService = new UrlMappingService(store, identifierStream, codeEncoder,
+                new UrlMappingCache(100, 0, Duration.ofMinutes(1), meterRegistry), offHeapStore,
+                new UrlDeduplicator(false, 100, new SimpleMeterRegistry()), hitCounter, codeFilter, peerCache,
+                clock);
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Future<TinyUrlMapping>> links = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            links.add(executor.submit(() -> coalescingService.getLink("3my")));
+        }
+        Counter coalesced = meterRegistry.get("urlMapping.coalesced").counter();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (coalesced.count() < callers - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<TinyUrlMapping> link : links) {
+            assertEquals("https://www.google.com", link.get().getFullUrl());
+        }
+        executor.shutdown();
+
+        verify(lookup, times(1)).find(dslContext, "3my");
+        assertEquals(callers - 1, coalesced.count());
+        verify(hitCounter, times(callers)).record("3my");
+    }
+
+    @Test
+    public void shouldAddLinksInOneInsert() {
+        when(identifierStream.next(3)).thenReturn(List.of(14568L, 14569L, 14570L));
+        when(writer.insertAll(any())).thenReturn(Set.of());
+
+        List<TinyUrlMapping> links = urlMappingService.addLinks(
+                List.of("https://www.google.com", "https://www.bing.com", "https://duckduckgo.com"));
+        assertEquals(List.of("3my", "3mz", "3n0"),
+                links.stream().map(TinyUrlMapping::getCode).collect(Collectors.toList()));
+        assertEquals("https://www.bing.com", links.get(1).getFullUrl());
+        verify(writer).insertAll(any());
+        verify(identifierStream, never()).next();
+    }
+
+    @Test
+    public void shouldRetryBatchWithFreshCodesWhenCodeIsTaken() {
+        when(identifierStream.next(2)).thenReturn(List.of(14568L, 14569L), List.of(14570L, 14571L));
+        when(writer.insertAll(any())).thenThrow(new DuplicateKeyException("3my")).thenReturn(Set.of());
+
+        List<TinyUrlMapping> links =
+                urlMappingService.addLinks(List.of("https://www.google.com", "https://www.bing.com"));
+        assertEquals(List.of("3n0", "3n1"), links.stream().map(TinyUrlMapping::getCode).collect(Collectors.toList()));
+        verify(writer, times(2)).insertAll(any());
+    }
+
+    @Test
+    public void shouldResolveRepeatedUrlsWithinBatch() {
+        when(identifierStream.next(2)).thenReturn(List.of(14568L, 14569L));
+        when(writer.insertAll(any())).thenReturn(Set.of());
+
+        List<TinyUrlMapping> links = dedupingService.addLinks(
+                List.of("https://www.google.com", "https://www.bing.com", "HTTPS://WWW.GOOGLE.COM"));
+        assertEquals(3, links.size());
+        assertSame(links.get(0), links.get(2));
+        assertEquals("3mz", links.get(1).getCode());
+    }
+
+    @Test
+    public void shouldGetLinksWithOneQuery() {
+        TinyUrlMapping cached = new TinyUrlMapping("3my", "https://www.google.com", clock.instant());
+        cache.put(cached);
+        when(dslContext.select()).thenReturn(selectSelectStep);
+        when(selectSelectStep.from(any(UrlMapping.class))).thenReturn(selectJoinStep);
+        when(selectJoinStep.where(any(Condition.class))).thenReturn(selectConditionStep);
+        when(selectConditionStep.fetch(any(RecordMapper.class)))
+                .thenReturn(List.of(new TinyUrlMapping("3mz", "https://www.bing.com", clock.instant())));
+
+        List<TinyUrlMapping> links = urlMappingService.getLinks(List.of("3mz", "missing", "3my"));
+        assertEquals(List.of("3mz", "3my"), links.stream().map(TinyUrlMapping::getCode).collect(Collectors.toList()));
+        assertSame(cached, links.get(1));
+
+        urlMappingService.getLinks(List.of("3mz", "missing"));
+        verify(selectConditionStep, times(1)).fetch(any(RecordMapper.class));
+    }
+
+    @Test
+    public void shouldReturnExistingMappingForDuplicateUrl() {
+        String url = "https://www.google.com";
+        when(dslContext.select()).thenReturn(selectSelectStep);
+        when(selectSelectStep.from(any(UrlMappingHash.class))).thenReturn(selectJoinStep);
+        when(selectJoinStep.where(any(Condition.class))).thenReturn(selectConditionStep);
+        when(selectConditionStep.fetchOne()).thenReturn(null);
+        when(identifierStream.next()).thenReturn(14568L);
+
+        TinyUrlMapping first = dedupingService.addLink(url);
+        TinyUrlMapping second = dedupingService.addLink(" HTTPS://WWW.GOOGLE.COM:443 ");
+        assertSame(first, second);
+        verify(identifierStream, times(1)).next();
+        verify(writer, times(1)).insert(eq("3my"), eq(url), any(byte[].class), any(OffsetDateTime.class));
+        assertEquals(0.5, meterRegistry.get("urlMapping.dedup.ratio").gauge().value());
+    }
+
+    @Test
+    public void shouldReturnStoredMappingForDuplicateUrl() {
+        String url = "https://www.google.com";
+        when(dslContext.select()).thenReturn(selectSelectStep);
+        when(selectSelectStep.from(any(UrlMappingHash.class))).thenReturn(selectJoinStep);
+        when(selectJoinStep.where(any(Condition.class))).thenReturn(selectConditionStep);
+        when(selectConditionStep.fetchOne()).thenReturn(record);
+        when(record.get(eq(Tables.URL_MAPPING_HASH.CODE))).thenReturn("3my");
+        when(lookup.find(dslContext, "3my")).thenReturn(new TinyUrlMapping("3my", url, clock.instant()));
+
+        TinyUrlMapping link = dedupingService.addLink(url);
+        assertEquals("3my", link.getCode());
+        verify(identifierStream, never()).next();
+        verify(writer, never()).insert(any(), any(), any(), any());
+        assertEquals(1, meterRegistry.get("urlMapping.dedup").tag("source", "database").counter().count());
+    }
+
+    @Test
+    public void shouldReturnConcurrentlyInsertedMappingOnConflict() {
+        String url = "https://www.google.com";
+        when(dslContext.select()).thenReturn(selectSelectStep);
+        when(selectSelectStep.from(any(UrlMappingHash.class))).thenReturn(selectJoinStep);
+        when(selectJoinStep.where(any(Condition.class))).thenReturn(selectConditionStep);
+        when(selectConditionStep.fetchOne()).thenReturn(null).thenReturn(record);
+        when(record.get(eq(Tables.URL_MAPPING_HASH.CODE))).thenReturn("3mx");
+        when(lookup.find(dslContext, "3mx")).thenReturn(new TinyUrlMapping("3mx", url, clock.instant()));
+        when(identifierStream.next()).thenReturn(14568L);
+        doThrow(new DuplicateUrlException(url))
+                .when(writer).insert(eq("3my"), eq(url), any(byte[].class), any(OffsetDateTime.class));
+
+        TinyUrlMapping link = dedupingService.addLink(url);
+        assertEquals("3mx", link.getCode());
+        assertEquals(1, meterRegistry.get("urlMapping.dedup").tag("result", "conflict").counter().count());
     }
 }
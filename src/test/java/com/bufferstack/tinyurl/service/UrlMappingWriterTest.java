@@ -0,0 +1,211 @@
+package com.bufferstack.tinyurl.service;
+
+import com.bufferstack.tinuyrl.jooq.Tables;
+import com.bufferstack.tinuyrl.jooq.tables.records.UrlMappingHashRecord;
+import com.bufferstack.tinuyrl.jooq.tables.records.UrlMappingRecord;
+import com.bufferstack.tinyurl.exception.DuplicateUrlException;
+import com.bufferstack.tinyurl.store.UrlMappingRow;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.InsertValuesStep2;
+import org.jooq.InsertValuesStep4;
+import org.jooq.TransactionalCallable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+public class UrlMappingWriterTest {
+
+    private final DSLContext dslContext = mock(DSLContext.class);
+    private final InsertValuesStep4<UrlMappingRecord, Short, String, String, OffsetDateTime> insertValuesStep =
+            mock(InsertValuesStep4.class);
+    private final UrlMappingPartitions partitions = new UrlMappingPartitions(16, true, "");
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private UrlMappingWriter writer;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        writer.close();
+    }
+
+    @Test
+    public void shouldInsertConcurrentCallsInBatches() {
+        writer = new UrlMappingWriter(dslContext, partitions, true, 5, Duration.ofMillis(200), 100, 1, meterRegistry);
+        givenMultiRowInsert();
+
+        List<CompletableFuture<Void>> inserts = IntStream.range(0, 10)
+                .mapToObj(i -> CompletableFuture.runAsync(
+                        () -> writer.insert(String.valueOf(i), "https://www.google.com", null, OffsetDateTime.now())))
+                .collect(Collectors.toList());
+        inserts.forEach(insert -> insert.orTimeout(5, TimeUnit.SECONDS).join());
+
+        verify(insertValuesStep, times(10)).values(any(Short.class), any(String.class), any(String.class),
+                any(OffsetDateTime.class));
+        verify(insertValuesStep, atLeast(2)).execute();
+        assertTrue(meterRegistry.get("urlMappingWriter.batch").summary().max() <= 5);
+        assertEquals(10, meterRegistry.get("urlMappingWriter.batch").summary().totalAmount());
+    }
+
+    @Test
+    public void shouldFlushSingleInsertAfterMaxDelay() {
+        writer = new UrlMappingWriter(dslContext, partitions, true, 100, Duration.ofMillis(10), 100, 1, meterRegistry);
+        givenMultiRowInsert();
+
+        writer.insert("14568", "https://www.google.com", null, OffsetDateTime.now());
+
+        verify(insertValuesStep).execute();
+    }
+
+    @Test
+    public void shouldFailCallersOfFailedBatch() {
+        writer = new UrlMappingWriter(dslContext, partitions, true, 100, Duration.ofMillis(10), 100, 1, meterRegistry);
+        givenMultiRowInsert();
+        when(insertValuesStep.execute()).thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> writer.insert("14568", "https://www.google.com", null, OffsetDateTime.now()));
+    }
+
+    @Test
+    public void shouldFailOnlyCallerWhoseRowFailsTheBatch() {
+        writer = new UrlMappingWriter(dslContext, partitions, true, 4, Duration.ofSeconds(1), 100, 1, meterRegistry);
+        List<String> statement = new ArrayList<>();
+        when(dslContext.insertInto(eq(Tables.URL_MAPPING), eq(Tables.URL_MAPPING.BUCKET),
+                eq(Tables.URL_MAPPING.CODE), eq(Tables.URL_MAPPING.FULL_URL), eq(Tables.URL_MAPPING.CREATED_AT)))
+                .thenAnswer(invocation -> {
+                    statement.clear();
+                    return insertValuesStep;
+                });
+        when(insertValuesStep.values(any(Short.class), any(String.class), any(String.class), any(OffsetDateTime.class)))
+                .thenAnswer(invocation -> {
+                    statement.add(invocation.getArgument(1));
+                    return insertValuesStep;
+                });
+        when(insertValuesStep.execute()).thenAnswer(invocation -> {
+            if (statement.contains("3")) {
+                throw new DataIntegrityViolationException("value too long for type character varying(2084)");
+            }
+            return statement.size();
+        });
+
+        List<CompletableFuture<Void>> inserts = IntStream.range(0, 4)
+                .mapToObj(i -> CompletableFuture.runAsync(
+                        () -> writer.insert(String.valueOf(i), "https://www.google.com", null, OffsetDateTime.now())))
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < 3; i++) {
+            inserts.get(i).orTimeout(5, TimeUnit.SECONDS).join();
+        }
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> inserts.get(3).orTimeout(5, TimeUnit.SECONDS).join());
+        assertTrue(e.getCause() instanceof DataIntegrityViolationException);
+    }
+
+    @Test
+    public void shouldFailCallersWhoseRowsConflictOnFullUrlHash() {
+        writer = new UrlMappingWriter(dslContext, partitions, true, 2, Duration.ofMillis(200), 100, 1, meterRegistry);
+        givenMultiRowInsert();
+        givenHashInsert(Set.of("1"));
+
+        CompletableFuture<Void> inserted = CompletableFuture.runAsync(
+                () -> writer.insert("1", "https://www.google.com", new byte[16], OffsetDateTime.now()));
+        CompletableFuture<Void> duplicate = CompletableFuture.runAsync(
+                () -> writer.insert("2", "https://www.google.com", new byte[16], OffsetDateTime.now()));
+
+        inserted.orTimeout(5, TimeUnit.SECONDS).join();
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> duplicate.orTimeout(5, TimeUnit.SECONDS).join());
+        assertTrue(e.getCause() instanceof DuplicateUrlException);
+    }
+
+    @Test
+    public void shouldFailCallersStillQueuedOnClose() throws InterruptedException {
+        writer = new UrlMappingWriter(dslContext, partitions, true, 100, Duration.ofMillis(10), 100, 0, meterRegistry);
+
+        CompletableFuture<Void> queued = CompletableFuture.runAsync(
+                () -> writer.insert("14568", "https://www.google.com", null, OffsetDateTime.now()));
+        while (meterRegistry.get("urlMappingWriter.queue").gauge().value() == 0) {
+            Thread.sleep(10);
+        }
+        writer.close();
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> queued.orTimeout(5, TimeUnit.SECONDS).join());
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertThrows(IllegalStateException.class,
+                () -> writer.insert("14569", "https://www.google.com", null, OffsetDateTime.now()));
+    }
+
+    @Test
+    public void shouldInsertAllRowsInOneStatementAndReturnSkippedCodes() {
+        writer = new UrlMappingWriter(dslContext, partitions, false, 100, Duration.ofMillis(10), 100, 1, meterRegistry);
+        givenMultiRowInsert();
+        InsertValuesStep2<UrlMappingHashRecord, byte[], String> hashInsert = givenHashInsert(Set.of("1", "3"));
+
+        Set<String> skipped = writer.insertAll(IntStream.rangeClosed(1, 3)
+                .mapToObj(i -> new UrlMappingRow(String.valueOf(i), "https://www.google.com/" + i,
+                        new byte[16], OffsetDateTime.now()))
+                .collect(Collectors.toList()));
+
+        assertEquals(Set.of("2"), skipped);
+        verify(hashInsert, times(3)).values(any(byte[].class), any(String.class));
+        verify(insertValuesStep).values(eq(partitions.bucket("3")), eq("3"), eq("https://www.google.com/3"),
+                any(OffsetDateTime.class));
+        verify(insertValuesStep, times(2)).values(any(Short.class), any(String.class), any(String.class),
+                any(OffsetDateTime.class));
+        verify(insertValuesStep).execute();
+        assertEquals(3, meterRegistry.get("urlMappingWriter.batch").summary().totalAmount());
+    }
+
+    private void givenMultiRowInsert() {
+        when(dslContext.insertInto(eq(Tables.URL_MAPPING), eq(Tables.URL_MAPPING.BUCKET),
+                eq(Tables.URL_MAPPING.CODE), eq(Tables.URL_MAPPING.FULL_URL), eq(Tables.URL_MAPPING.CREATED_AT)))
+                .thenReturn(insertValuesStep);
+        when(insertValuesStep.values(any(Short.class), any(String.class), any(String.class), any(OffsetDateTime.class)))
+                .thenReturn(insertValuesStep);
+    }
+
+    private InsertValuesStep2<UrlMappingHashRecord, byte[], String> givenHashInsert(Set<String> inserted) {
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.dsl()).thenReturn(dslContext);
+        when(dslContext.transactionResult(any(TransactionalCallable.class)))
+                .thenAnswer(invocation -> invocation.<TransactionalCallable<?>>getArgument(0).run(configuration));
+
+        InsertValuesStep2<UrlMappingHashRecord, byte[], String> hashInsert =
+                mock(InsertValuesStep2.class, RETURNS_DEEP_STUBS);
+        when(dslContext.insertInto(eq(Tables.URL_MAPPING_HASH), eq(Tables.URL_MAPPING_HASH.FULL_URL_HASH),
+                eq(Tables.URL_MAPPING_HASH.CODE)))
+                .thenReturn(hashInsert);
+        when(hashInsert.values(any(byte[].class), any(String.class))).thenReturn(hashInsert);
+        when(hashInsert.onConflict(Tables.URL_MAPPING_HASH.FULL_URL_HASH).doNothing()
+                .returningResult(Tables.URL_MAPPING_HASH.CODE).fetch().intoSet(Tables.URL_MAPPING_HASH.CODE))
+                .thenReturn(inserted);
+        return hashInsert;
+    }
+}
@@ -0,0 +1,51 @@
+package com.bufferstack.tinyurl.store;
+
+import com.bufferstack.tinyurl.exception.DuplicateUrlException;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import com.bufferstack.tinyurl.utils.StageTimers;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TimedUrlMappingStoreTest {
+
+    private final UrlMappingStore delegate = mock(UrlMappingStore.class);
+    private final PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final TimedUrlMappingStore store = new TimedUrlMappingStore(delegate, meterRegistry);
+
+    @Test
+    public void shouldTimeSelectsWithHistogram() {
+        TinyUrlMapping mapping = new TinyUrlMapping("3my", "https://www.google.com", Instant.EPOCH);
+        when(delegate.find("3my")).thenReturn(mapping);
+
+        assertSame(mapping, store.find("3my"));
+        Timer timer = meterRegistry.get(StageTimers.NAME).tag("stage", "select").tag("operation", "find").timer();
+        assertEquals(1, timer.count());
+        assertTrue(meterRegistry.scrape().contains(
+                "urlMapping_stage_seconds_bucket{operation=\"find\",stage=\"select\",le=\"1.0E-6\",} 0.0"));
+        assertEquals(0, meterRegistry.get(StageTimers.NAME).tag("operation", "findByHash").timer().count());
+    }
+
+    @Test
+    public void shouldTimeFailedInserts() {
+        doThrow(new DuplicateUrlException("https://www.google.com"))
+                .when(delegate).insert(any(), any(), any(), any());
+
+        assertThrows(DuplicateUrlException.class,
+                () -> store.insert("3my", "https://www.google.com", new byte[16], OffsetDateTime.now()));
+        assertEquals(1, meterRegistry.get(StageTimers.NAME).tag("stage", "insert").tag("operation", "insert")
+                .timer().count());
+    }
+}
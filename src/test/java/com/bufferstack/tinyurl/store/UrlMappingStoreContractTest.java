@@ -0,0 +1,122 @@
+package com.bufferstack.tinyurl.store;
+
+import com.bufferstack.tinyurl.exception.DuplicateUrlException;
+import com.bufferstack.tinyurl.models.TinyUrlMapping;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Behaviour every {@link UrlMappingStore} has to share, run against each of them by a subclass.
+ */
+public abstract class UrlMappingStoreContractTest {
+
+    protected static final OffsetDateTime CREATED_AT =
+            OffsetDateTime.ofInstant(Instant.parse("2021-06-01T10:15:30.123456Z"), ZoneOffset.UTC);
+
+    /**
+     * Returns an empty store, which the test closes.
+     */
+    protected abstract UrlMappingStore newStore();
+
+    @Test
+    public void shouldFindInsertedMappings() {
+        UrlMappingStore store = newStore();
+        store.insert("3my", "https://www.google.com/søk", hash(1), CREATED_AT);
+        store.insert("3mz", "https://www.bing.com", null, CREATED_AT);
+
+        TinyUrlMapping mapping = store.find("3my");
+        assertEquals("https://www.google.com/søk", mapping.getFullUrl());
+        assertEquals(CREATED_AT.toInstant(), mapping.getCreatedAt());
+        assertEquals("3my", store.findByHash(hash(1), false).getCode());
+        assertEquals("3my", store.findByHash(hash(1), true).getCode());
+        assertNull(store.findByHash(hash(2), true));
+        assertNull(store.find("3n0"));
+        assertEquals(Set.of("3my", "3mz"), codes(store.findAll(List.of("3my", "3mz", "3n0"))));
+        store.close();
+    }
+
+    @Test
+    public void shouldRejectDuplicateHashes() {
+        UrlMappingStore store = newStore();
+        store.insert("3my", "https://www.google.com", hash(1), CREATED_AT);
+
+        assertThrows(DuplicateUrlException.class,
+                () -> store.insert("3mz", "https://www.google.com", hash(1), CREATED_AT));
+        assertNull(store.find("3mz"));
+        assertEquals("3my", store.findByHash(hash(1), true).getCode());
+        store.close();
+    }
+
+    @Test
+    public void shouldRefuseExistingCodes() {
+        UrlMappingStore store = newStore();
+        store.insert("3my", "https://www.google.com", null, CREATED_AT);
+
+        assertThrows(DuplicateKeyException.class, () -> store.insertAll(List.of(
+                new UrlMappingRow("3mz", "https://www.bing.com", null, CREATED_AT),
+                new UrlMappingRow("3my", "https://duckduckgo.com", null, CREATED_AT))));
+        assertEquals("https://www.google.com", store.find("3my").getFullUrl());
+        assertNull(store.find("3mz"));
+        store.close();
+    }
+
+    @Test
+    public void shouldSkipRowsWithDuplicateHashes() {
+        UrlMappingStore store = newStore();
+        store.insert("3my", "https://www.google.com", hash(1), CREATED_AT);
+
+        Set<String> skipped = store.insertAll(List.of(
+                new UrlMappingRow("3n0", "https://www.google.com", hash(1), CREATED_AT),
+                new UrlMappingRow("3n1", "https://www.bing.com", hash(2), CREATED_AT)));
+        assertEquals(Set.of("3n0"), skipped);
+        assertNull(store.find("3n0"));
+        assertEquals("3n1", store.findByHash(hash(2), true).getCode());
+        store.close();
+    }
+
+    @Test
+    public void shouldScanMappingsCreatedSince() {
+        UrlMappingStore store = newStore();
+        store.insertAll(List.of(
+                new UrlMappingRow("3my", "https://www.google.com", null, CREATED_AT),
+                new UrlMappingRow("3mz", "https://www.bing.com", null, CREATED_AT.plusMinutes(1)),
+                new UrlMappingRow("3n0", "https://duckduckgo.com", null, CREATED_AT.plusMinutes(2))));
+
+        List<TinyUrlMapping> all = new ArrayList<>();
+        store.scan(all::add);
+        assertEquals(Set.of("3my", "3mz", "3n0"), codes(all));
+        assertEquals(CREATED_AT.toInstant(), all.stream()
+                .filter(mapping -> mapping.getCode().equals("3my"))
+                .findFirst()
+                .orElseThrow()
+                .getCreatedAt());
+        List<TinyUrlMapping> recent = new ArrayList<>();
+        store.scanCreatedSince(CREATED_AT.plusMinutes(1).toInstant(), recent::add);
+        assertEquals(Set.of("3mz", "3n0"), codes(recent));
+        store.close();
+    }
+
+    protected static byte[] hash(int i) {
+        byte[] hash = new byte[16];
+        hash[0] = (byte) (i >>> 24);
+        hash[1] = (byte) (i >>> 16);
+        hash[2] = (byte) (i >>> 8);
+        hash[3] = (byte) i;
+        return hash;
+    }
+
+    private static Set<String> codes(List<TinyUrlMapping> mappings) {
+        return mappings.stream().map(TinyUrlMapping::getCode).collect(Collectors.toSet());
+    }
+}
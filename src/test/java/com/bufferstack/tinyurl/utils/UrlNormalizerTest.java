@@ -0,0 +1,33 @@
+package com.bufferstack.tinyurl.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class UrlNormalizerTest {
+
+    @Test
+    public void shouldLowerCaseSchemeAndHost() {
+        assertEquals("https://www.google.com/Search?q=TinyURL",
+                UrlNormalizer.normalize("HTTPS://WWW.Google.com/Search?q=TinyURL"));
+    }
+
+    @Test
+    public void shouldDropDefaultPortAndAddRootPath() {
+        assertEquals("https://www.google.com/", UrlNormalizer.normalize("https://www.google.com:443"));
+        assertEquals("http://www.google.com/", UrlNormalizer.normalize("http://www.google.com:80"));
+        assertEquals("http://www.google.com:8080/", UrlNormalizer.normalize("http://www.google.com:8080"));
+    }
+
+    @Test
+    public void shouldKeepUserInfoQueryAndFragment() {
+        assertEquals("https://user@www.google.com/a%20b?x=1#Top",
+                UrlNormalizer.normalize("https://user@WWW.GOOGLE.COM/a%20b?x=1#Top"));
+    }
+
+    @Test
+    public void shouldOnlyTrimUnparseableUrls() {
+        assertEquals("not a url", UrlNormalizer.normalize("  not a url "));
+        assertEquals("mailto:Someone@Example.com", UrlNormalizer.normalize("mailto:Someone@Example.com"));
+    }
+}
@@ -1,16 +1,53 @@
 package com.bufferstack.tinyurl.zookeeper;
 
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.WatcherRemoveCuratorFramework;
+import org.apache.curator.framework.listen.Listenable;
 import org.apache.curator.framework.recipes.atomic.AtomicStats;
 import org.apache.curator.framework.recipes.atomic.AtomicValue;
 import org.apache.curator.framework.recipes.atomic.DistributedAtomicInteger;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -22,7 +59,17 @@ public class ZkIdentiferStreamTest {
     private final CuratorFramework curatorFramework = mock(CuratorFramework.class);
     private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
-    private final ZkIdentifierStream identifierStream = spy(new ZkIdentifierStream(curatorFramework, 10, meterRegistry));
+    private final ZkIdentifierStream identifierStream = spy(new ZkIdentifierStream(curatorFramework, 10, 0, Runnable::run, meterRegistry));
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setUp() {
+        when(curatorFramework.getConnectionStateListenable()).thenReturn(mock(Listenable.class));
+        when(curatorFramework.newWatcherRemoveCuratorFramework())
+                .thenReturn(mock(WatcherRemoveCuratorFramework.class, RETURNS_DEEP_STUBS));
+    }
 
     @Test
     public void shouldInitializeIdentifierStream() throws Exception {
@@ -46,7 +93,7 @@ public class ZkIdentiferStreamTest {
 
         verify(distributedAtomicInteger, never()).initialize(any());
         verify(distributedAtomicInteger).compareAndSet(100, 110);
-        IntStream.range(101, 111).forEach(i -> assertEquals(String.valueOf(i), identifierStream.next()));
+        IntStream.range(101, 111).forEach(i -> assertEquals((long) i, identifierStream.next()));
     }
 
     @Test
@@ -59,7 +106,7 @@ public class ZkIdentiferStreamTest {
 
         verify(distributedAtomicInteger, never()).initialize(any());
         verify(distributedAtomicInteger).compareAndSet(100, 110);
-        IntStream.range(101, 111).forEach(i -> assertEquals(String.valueOf(i), identifierStream.next()));
+        IntStream.range(101, 111).forEach(i -> assertEquals((long) i, identifierStream.next()));
 
         DistributedAtomicInteger nextDistributedAtomicInteger = mock(DistributedAtomicInteger.class);
         when(identifierStream.aDistributedAtomicInteger()).thenReturn(nextDistributedAtomicInteger);
@@ -82,7 +129,7 @@ public class ZkIdentiferStreamTest {
 
         verify(distributedAtomicInteger, never()).initialize(any());
         verify(distributedAtomicInteger).compareAndSet(100, 110);
-        IntStream.range(101, 111).forEach(i -> assertEquals(String.valueOf(i), identifierStream.next()));
+        IntStream.range(101, 111).forEach(i -> assertEquals((long) i, identifierStream.next()));
 
         DistributedAtomicInteger nextDistributedAtomicInteger = mock(DistributedAtomicInteger.class);
         when(identifierStream.aDistributedAtomicInteger()).thenReturn(nextDistributedAtomicInteger);
@@ -107,7 +154,7 @@ public class ZkIdentiferStreamTest {
 
         verify(distributedAtomicInteger, never()).initialize(any());
         verify(distributedAtomicInteger).compareAndSet(100, 110);
-        IntStream.range(101, 111).forEach(i -> assertEquals(String.valueOf(i), identifierStream.next()));
+        IntStream.range(101, 111).forEach(i -> assertEquals((long) i, identifierStream.next()));
 
         DistributedAtomicInteger nextDistributedAtomicInteger = mock(DistributedAtomicInteger.class);
         when(identifierStream.aDistributedAtomicInteger()).thenReturn(nextDistributedAtomicInteger);
@@ -124,6 +171,357 @@ public class ZkIdentiferStreamTest {
         verify(nextDistributedAtomicInteger).compareAndSet(130, 140);
     }
 
+    @Test
+    public void shouldPrefetchNextBlockBelowLowWaterMark() throws Exception {
+        ZkIdentifierStream prefetchingStream =
+                spy(new ZkIdentifierStream(curatorFramework, 10, 5, Runnable::run, meterRegistry));
+        DistributedAtomicInteger distributedAtomicInteger = mock(DistributedAtomicInteger.class);
+        when(prefetchingStream.aDistributedAtomicInteger()).thenReturn(distributedAtomicInteger);
+        when(distributedAtomicInteger.get())
+                .thenReturn(new AtomicInteger(true, 100, null))
+                .thenReturn(new AtomicInteger(true, 110, null));
+        when(distributedAtomicInteger.compareAndSet(100, 110)).thenReturn(new AtomicInteger(true, 100, 110));
+        when(distributedAtomicInteger.compareAndSet(110, 120)).thenReturn(new AtomicInteger(true, 110, 120));
+        prefetchingStream.init();
+
+        IntStream.range(101, 106).forEach(i -> assertEquals((long) i, prefetchingStream.next()));
+        verify(distributedAtomicInteger, never()).compareAndSet(110, 120);
+
+        IntStream.range(106, 116).forEach(i -> assertEquals((long) i, prefetchingStream.next()));
+        verify(distributedAtomicInteger).compareAndSet(110, 120);
+        assertEquals(0, meterRegistry.get("identifierStream").tag("action", "stall").timer().count());
+    }
+
+    @Test
+    public void shouldReserveOnPrefetchExecutorWhenStalled() throws Exception {
+        Set<Thread> reservingThreads = ConcurrentHashMap.newKeySet();
+        Executor prefetchExecutor = command -> {
+            Thread thread = new Thread(() -> {
+                reservingThreads.add(Thread.currentThread());
+                command.run();
+            });
+            thread.start();
+        };
+        ZkIdentifierStream stallingStream =
+                spy(new ZkIdentifierStream(curatorFramework, 10, 0, prefetchExecutor, meterRegistry));
+        DistributedAtomicInteger distributedAtomicInteger = mock(DistributedAtomicInteger.class);
+        when(stallingStream.aDistributedAtomicInteger()).thenReturn(distributedAtomicInteger);
+        when(distributedAtomicInteger.get())
+                .thenReturn(new AtomicInteger(true, 100, null))
+                .thenReturn(new AtomicInteger(true, 110, null));
+        when(distributedAtomicInteger.compareAndSet(100, 110)).thenReturn(new AtomicInteger(true, 100, 110));
+        when(distributedAtomicInteger.compareAndSet(110, 120)).thenReturn(new AtomicInteger(true, 110, 120));
+        stallingStream.init();
+
+        FutureTask<List<Long>> issued = new FutureTask<>(
+                () -> IntStream.range(101, 116).mapToObj(i -> stallingStream.next()).collect(Collectors.toList()));
+        Thread caller = Thread.ofVirtual().start(issued);
+        assertEquals(LongStream.range(101, 116).boxed().collect(Collectors.toList()), issued.get());
+
+        verify(distributedAtomicInteger).compareAndSet(110, 120);
+        assertEquals(1, reservingThreads.size());
+        assertFalse(reservingThreads.contains(caller));
+        assertEquals(1, meterRegistry.get("identifierStream").tag("action", "stall").timer().count());
+    }
+
+    @Test
+    public void shouldCutLastBlockShortAndFailOnceCounterIsExhausted() throws Exception {
+        int last = Integer.MAX_VALUE - 1;
+        DistributedAtomicInteger distributedAtomicInteger = mock(DistributedAtomicInteger.class);
+        when(identifierStream.aDistributedAtomicInteger()).thenReturn(distributedAtomicInteger);
+        when(distributedAtomicInteger.get())
+                .thenReturn(new AtomicInteger(true, last - 4, null))
+                .thenReturn(new AtomicInteger(true, last, null));
+        when(distributedAtomicInteger.compareAndSet(last - 4, last))
+                .thenReturn(new AtomicInteger(true, last - 4, last));
+        identifierStream.init();
+
+        assertEquals(LongStream.rangeClosed(last - 3, last).boxed().collect(Collectors.toList()),
+                identifierStream.next(4));
+        assertThrows(RuntimeException.class, identifierStream::next);
+        verify(distributedAtomicInteger, never()).compareAndSet(eq(last), anyInt());
+    }
+
+    @Test
+    public void shouldClaimConsecutiveIdentifiersAcrossBlocks() throws Exception {
+        DistributedAtomicInteger distributedAtomicInteger = mock(DistributedAtomicInteger.class);
+        when(identifierStream.aDistributedAtomicInteger()).thenReturn(distributedAtomicInteger);
+        when(distributedAtomicInteger.get())
+                .thenReturn(new AtomicInteger(true, 100, null))
+                .thenReturn(new AtomicInteger(true, 110, null));
+        when(distributedAtomicInteger.compareAndSet(100, 110)).thenReturn(new AtomicInteger(true, 100, 110));
+        when(distributedAtomicInteger.compareAndSet(110, 120)).thenReturn(new AtomicInteger(true, 110, 120));
+        identifierStream.init();
+
+        assertEquals(LongStream.range(101, 105).boxed().collect(Collectors.toList()), identifierStream.next(4));
+        assertEquals(LongStream.range(105, 113).boxed().collect(Collectors.toList()), identifierStream.next(8));
+        assertEquals(113L, identifierStream.next());
+        verify(distributedAtomicInteger).compareAndSet(110, 120);
+    }
+
+    @Test
+    public void shouldSizeReservationsToHeadroomAtAllocationRate() throws Exception {
+        AtomicLong now = new AtomicLong();
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).thenAnswer(invocation -> now.get());
+        ZkIdentifierStream adaptiveStream = spy(new ZkIdentifierStream(curatorFramework, 10, 0, 10, 5000,
+                Duration.ofSeconds(1), clock, 0, null, Runnable::run, meterRegistry));
+        int[] counter = { 100 };
+        givenCounter(adaptiveStream, counter);
+        adaptiveStream.init();
+
+        // One identifier per millisecond for five seconds.
+        for (long i = 101; i < 5101; i++) {
+            assertEquals(i, adaptiveStream.next());
+            now.addAndGet(1);
+        }
+        assertEquals(1000, adaptiveStream.allocationRate(), 50);
+        DistributionSummary blockSize = meterRegistry.get("identifierStream.blockSize").summary();
+        assertTrue(blockSize.max() > 900 && blockSize.max() <= 1000, "max block size: " + blockSize.max());
+        assertTrue(blockSize.count() < 30, "reservations: " + blockSize.count());
+    }
+
+    @Test
+    public void shouldHandBackUnusedIdentifiersOnClose() throws Exception {
+        int[] counter = { 100 };
+        givenCounter(identifierStream, counter);
+        identifierStream.init();
+        IntStream.range(101, 104).forEach(i -> assertEquals((long) i, identifierStream.next()));
+
+        identifierStream.close();
+        assertEquals(103, counter[0]);
+        assertEquals(7, meterRegistry.get("identifierStream.unused").tag("result", "returned").counter().count());
+        assertEquals(0, meterRegistry.get("identifierStream.unused").tag("result", "wasted").counter().count());
+        assertEquals(104L, identifierStream.next());
+    }
+
+    @Test
+    public void shouldCountUnusedIdentifiersAsWastedWhenCounterMovedOn() throws Exception {
+        int[] counter = { 100 };
+        givenCounter(identifierStream, counter);
+        identifierStream.init();
+        IntStream.range(101, 104).forEach(i -> assertEquals((long) i, identifierStream.next()));
+        counter[0] = 120;
+
+        identifierStream.close();
+        assertEquals(120, counter[0]);
+        assertEquals(0, meterRegistry.get("identifierStream.unused").tag("result", "returned").counter().count());
+        assertEquals(7, meterRegistry.get("identifierStream.unused").tag("result", "wasted").counter().count());
+    }
+
+    @Test
+    public void shouldIssueBufferedBlocksWhileZooKeeperIsDown() throws Exception {
+        ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+        try (TestingServer zkServer = new TestingServer(true);
+             CuratorFramework client = CuratorFrameworkFactory.newClient(zkServer.getConnectString(), 5000, 1000,
+                     new RetryOneTime(100))) {
+            client.start();
+            ZkIdentifierStream bufferingStream = new ZkIdentifierStream(client, 10, 0, 10, 10, Duration.ZERO,
+                    Clock.systemUTC(), 2, null, prefetchExecutor, meterRegistry);
+            bufferingStream.init();
+            await(() -> bufferingStream.runway() == 30);
+            CountDownLatch disconnected = new CountDownLatch(1);
+            client.getConnectionStateListenable().addListener((c, state) -> {
+                if (!state.isConnected()) {
+                    disconnected.countDown();
+                }
+            });
+
+            zkServer.stop();
+            assertTrue(disconnected.await(10, TimeUnit.SECONDS));
+            assertTrue(bufferingStream.ready());
+            Set<Long> identifiers = new HashSet<>(bufferingStream.next(25));
+            for (int i = 0; i < 5; i++) {
+                identifiers.add(bufferingStream.next());
+            }
+            assertEquals(LongStream.range(1, 31).boxed().collect(Collectors.toSet()), identifiers);
+            assertEquals(0, bufferingStream.runway());
+            assertFalse(bufferingStream.ready());
+            assertEquals(0d, meterRegistry.get("identifierStream.runway").gauge().value());
+
+            zkServer.restart();
+            await(() -> bufferingStream.ready() && bufferingStream.runway() == 20);
+            assertEquals(31L, bufferingStream.next());
+        } finally {
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldStartFromBufferFileWithoutZooKeeper() throws Exception {
+        Path bufferFile = directory.resolve("identifier-blocks");
+        ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService restartedPrefetchExecutor = Executors.newSingleThreadExecutor();
+        try (TestingServer zkServer = new TestingServer(true);
+             CuratorFramework client = CuratorFrameworkFactory.newClient(zkServer.getConnectString(), 5000, 1000,
+                     new RetryOneTime(100))) {
+            client.start();
+            ZkIdentifierStream bufferingStream = new ZkIdentifierStream(client, 10, 0, 10, 10, Duration.ZERO,
+                    Clock.systemUTC(), 2, bufferFile, prefetchExecutor, meterRegistry);
+            bufferingStream.init();
+            await(() -> bufferingStream.runway() == 30 && readLines(bufferFile).equals(List.of("11 21", "21 31")));
+            assertEquals(List.of(1L, 2L, 3L), bufferingStream.next(3));
+
+            zkServer.stop();
+            bufferingStream.close();
+            assertEquals(List.of("4 11", "11 21", "21 31"), Files.readAllLines(bufferFile));
+            assertEquals(27, meterRegistry.get("identifierStream.unused").tag("result", "persisted").counter().count());
+
+            ZkIdentifierStream restartedStream = new ZkIdentifierStream(client, 10, 0, 10, 10, Duration.ZERO,
+                    Clock.systemUTC(), 2, bufferFile, restartedPrefetchExecutor, new SimpleMeterRegistry());
+            restartedStream.init();
+            assertTrue(restartedStream.ready());
+            assertEquals(27, restartedStream.runway());
+            assertEquals(List.of("11 21", "21 31"), Files.readAllLines(bufferFile));
+            assertEquals(4L, restartedStream.next());
+        } finally {
+            prefetchExecutor.shutdownNow();
+            restartedPrefetchExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldTakeBlocksOutOfBufferFileBeforeHandingThemBack() throws Exception {
+        Path bufferFile = directory.resolve("identifier-blocks");
+        ZkIdentifierStream bufferingStream = spy(new ZkIdentifierStream(curatorFramework, 10, 0, 10, 10, Duration.ZERO,
+                Clock.systemUTC(), 1, bufferFile, Runnable::run, meterRegistry));
+        int[] counter = { 100 };
+        givenCounter(bufferingStream, counter);
+        bufferingStream.init();
+        assertEquals(List.of("111 121"), Files.readAllLines(bufferFile));
+        assertEquals(List.of(101L, 102L, 103L), bufferingStream.next(3));
+
+        List<List<String>> linesOnHandBack = new ArrayList<>();
+        DistributedAtomicInteger distributedAtomicInteger = bufferingStream.aDistributedAtomicInteger();
+        when(distributedAtomicInteger.compareAndSet(anyInt(), anyInt())).thenAnswer(invocation -> {
+            linesOnHandBack.add(readLines(bufferFile));
+            counter[0] = invocation.getArgument(1);
+            return new AtomicInteger(true, invocation.getArgument(0), counter[0]);
+        });
+        bufferingStream.close();
+
+        assertEquals(103, counter[0]);
+        assertEquals(List.of(List.of(), List.of()), linesOnHandBack);
+        assertEquals(List.of(), Files.readAllLines(bufferFile));
+        assertEquals(17, meterRegistry.get("identifierStream.unused").tag("result", "returned").counter().count());
+    }
+
+    @Test
+    public void shouldKeepBlocksInBufferFileWhenCounterMovedOn() throws Exception {
+        Path bufferFile = directory.resolve("identifier-blocks");
+        ZkIdentifierStream bufferingStream = spy(new ZkIdentifierStream(curatorFramework, 10, 0, 10, 10, Duration.ZERO,
+                Clock.systemUTC(), 1, bufferFile, Runnable::run, meterRegistry));
+        int[] counter = { 100 };
+        givenCounter(bufferingStream, counter);
+        bufferingStream.init();
+        assertEquals(List.of(101L, 102L, 103L), bufferingStream.next(3));
+        counter[0] = 130;
+
+        bufferingStream.close();
+        assertEquals(130, counter[0]);
+        assertEquals(List.of("104 111", "111 121"), Files.readAllLines(bufferFile));
+        assertEquals(17, meterRegistry.get("identifierStream.unused").tag("result", "persisted").counter().count());
+    }
+
+    @Test
+    public void shouldSkipIdentifiersUpToOneAdvancedPast() throws Exception {
+        Path bufferFile = directory.resolve("identifier-blocks");
+        ZkIdentifierStream bufferingStream = spy(new ZkIdentifierStream(curatorFramework, 10, 0, 10, 10, Duration.ZERO,
+                Clock.systemUTC(), 1, bufferFile, Runnable::run, meterRegistry));
+        int[] counter = { 100 };
+        givenCounter(bufferingStream, counter);
+        doNothing().when(bufferingStream).announceAdvance(anyInt());
+        bufferingStream.init();
+        assertEquals(List.of(101L, 102L, 103L), bufferingStream.next(3));
+
+        bufferingStream.advancePast(114);
+        assertEquals(120, counter[0]);
+        assertEquals(List.of("115 121"), Files.readAllLines(bufferFile));
+        assertEquals(11, meterRegistry.get("identifierStream.unused").tag("result", "wasted").counter().count());
+        assertEquals(115L, bufferingStream.next());
+
+        bufferingStream.advancePast(150);
+        assertEquals(150, counter[0]);
+        assertEquals(151L, bufferingStream.next());
+        bufferingStream.advancePast(140);
+        assertEquals(170, counter[0]);
+        assertEquals(152L, bufferingStream.next());
+    }
+
+    @Test
+    public void shouldTrimBlocksOfOtherStreamsWhenAdvancedPast() throws Exception {
+        ExecutorService importingExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService otherExecutor = Executors.newSingleThreadExecutor();
+        try (TestingServer zkServer = new TestingServer(true);
+             CuratorFramework importingClient = client(zkServer);
+             CuratorFramework otherClient = client(zkServer)) {
+            ZkIdentifierStream importingStream = new ZkIdentifierStream(importingClient, 10, 0, 10, 10, Duration.ZERO,
+                    Clock.systemUTC(), 1, null, importingExecutor, meterRegistry);
+            importingStream.init();
+            await(() -> importingStream.runway() == 20);
+            ZkIdentifierStream otherStream = new ZkIdentifierStream(otherClient, 10, 0, 10, 10, Duration.ZERO,
+                    Clock.systemUTC(), 1, null, otherExecutor, new SimpleMeterRegistry());
+            otherStream.init();
+            await(() -> otherStream.runway() == 20);
+            assertEquals(21L, otherStream.next());
+
+            importingStream.advancePast(35);
+            await(() -> otherStream.runway() == 5);
+            assertEquals(36L, otherStream.next());
+            assertEquals(41L, importingStream.next());
+
+            importingStream.advancePast(30);
+            assertEquals("35", new String(importingClient.getData().forPath("/tinyurlIdAdvanced")));
+            importingStream.close();
+            otherStream.close();
+        } finally {
+            importingExecutor.shutdownNow();
+            otherExecutor.shutdownNow();
+        }
+    }
+
+    private static List<String> readLines(Path path) {
+        try {
+            return Files.exists(path) ? Files.readAllLines(path) : List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static CuratorFramework client(TestingServer zkServer) {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(zkServer.getConnectString(), 5000, 1000,
+                new RetryOneTime(100));
+        client.start();
+        return client;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Backs {@code stream} with a counter held in {@code counter[0]}.
+     */
+    private static void givenCounter(ZkIdentifierStream stream, int[] counter) throws Exception {
+        DistributedAtomicInteger distributedAtomicInteger = mock(DistributedAtomicInteger.class);
+        when(stream.aDistributedAtomicInteger()).thenReturn(distributedAtomicInteger);
+        when(distributedAtomicInteger.get()).thenAnswer(invocation -> new AtomicInteger(true, counter[0], null));
+        when(distributedAtomicInteger.compareAndSet(anyInt(), anyInt())).thenAnswer(invocation -> {
+            int expected = invocation.getArgument(0);
+            if (counter[0] != expected) {
+                return new AtomicInteger(false, counter[0], counter[0]);
+            }
+            counter[0] = invocation.getArgument(1);
+            return new AtomicInteger(true, expected, counter[0]);
+        });
+    }
+
     private static class AtomicInteger implements AtomicValue<Integer> {
 
         private final boolean succeeded;
@@ -0,0 +1,204 @@
+package com.bufferstack.tinyurl.zookeeper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.listen.Listenable;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.KillSession;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+public class ZkSnowflakeIdentifierStreamTest {
+
+    private static final long NOW = ZkSnowflakeIdentifierStream.EPOCH + 1_000_000L;
+
+    private final CuratorFramework curatorFramework = mock(CuratorFramework.class);
+    private final Clock clock = mock(Clock.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ZkSnowflakeIdentifierStream identifierStream =
+            spy(new ZkSnowflakeIdentifierStream(curatorFramework, clock, 10, meterRegistry));
+
+    @BeforeEach
+    public void setUp() {
+        when(curatorFramework.getConnectionStateListenable()).thenReturn(mock(Listenable.class));
+        when(clock.millis()).thenReturn(NOW);
+    }
+
+    @Test
+    public void shouldNotBeReadyBeforeLeasingWorkerId() {
+        assertFalse(identifierStream.ready());
+        assertThrows(RuntimeException.class, identifierStream::next);
+    }
+
+    @Test
+    public void shouldComposeTimestampWorkerAndSequence() {
+        doReturn(5).when(identifierStream).leaseWorkerId();
+        identifierStream.init();
+
+        assertTrue(identifierStream.ready());
+        long first = identifierStream.next();
+        long second = identifierStream.next();
+        assertEquals(NOW - ZkSnowflakeIdentifierStream.EPOCH,
+                first >>> (ZkSnowflakeIdentifierStream.WORKER_BITS + ZkSnowflakeIdentifierStream.SEQUENCE_BITS));
+        assertEquals(5, (first >>> ZkSnowflakeIdentifierStream.SEQUENCE_BITS)
+                & (ZkSnowflakeIdentifierStream.MAX_WORKERS - 1));
+        assertEquals(0, first & ZkSnowflakeIdentifierStream.SEQUENCE_MASK);
+        assertEquals(first + 1, second);
+    }
+
+    @Test
+    public void shouldBorrowNextMillisecondWhenSequenceIsExhausted() {
+        doReturn(1).when(identifierStream).leaseWorkerId();
+        identifierStream.init();
+
+        Set<Long> identifiers = new HashSet<>();
+        long previous = -1;
+        for (int i = 0; i < 3 * (ZkSnowflakeIdentifierStream.SEQUENCE_MASK + 1); i++) {
+            long identifier = identifierStream.next();
+            assertTrue(identifier > previous);
+            identifiers.add(identifier);
+            previous = identifier;
+        }
+        assertEquals(3 * (ZkSnowflakeIdentifierStream.SEQUENCE_MASK + 1), identifiers.size());
+        assertEquals(2, meterRegistry.get("identifierStream").tag("action", "sequence-exhausted").counter().count());
+    }
+
+    @Test
+    public void shouldRefuseToAdvancePastIdentifiersItMayStillIssue() {
+        doReturn(1).when(identifierStream).leaseWorkerId();
+        identifierStream.init();
+        long issued = identifierStream.next();
+        long timestampShift = ZkSnowflakeIdentifierStream.WORKER_BITS + ZkSnowflakeIdentifierStream.SEQUENCE_BITS;
+
+        assertThrows(IllegalArgumentException.class, () -> identifierStream.advancePast(issued));
+        identifierStream.advancePast(issued - (11L << timestampShift));
+    }
+
+    @Test
+    public void shouldFailWhenTimestampRunsTooFarAheadOfClock() {
+        doReturn(1).when(identifierStream).leaseWorkerId();
+        identifierStream.init();
+        identifierStream.next();
+
+        when(clock.millis()).thenReturn(NOW - 100);
+        assertThrows(RuntimeException.class, () -> {
+            for (int i = 0; i <= ZkSnowflakeIdentifierStream.SEQUENCE_MASK; i++) {
+                identifierStream.next();
+            }
+        });
+    }
+
+    @Test
+    public void shouldHoldEphemeralWorkerNodeUntilClosed() throws Exception {
+        try (TestingServer zkServer = new TestingServer(true);
+             CuratorFramework client = client(zkServer)) {
+            ZkSnowflakeIdentifierStream stream = stream(client);
+            stream.init();
+            String workerPath = "/tinyurlWorkers/" + workerId(stream.next());
+
+            Stat stat = client.checkExists().forPath(workerPath);
+            assertEquals(client.getZookeeperClient().getZooKeeper().getSessionId(), stat.getEphemeralOwner());
+            stream.close();
+            assertNull(client.checkExists().forPath(workerPath));
+        }
+    }
+
+    @Test
+    public void shouldNotLeaseWorkerIdHeldByAnotherWorker() throws Exception {
+        try (TestingServer zkServer = new TestingServer(true);
+             CuratorFramework holder = client(zkServer);
+             CuratorFramework first = client(zkServer);
+             CuratorFramework second = client(zkServer)) {
+            int free = 7;
+            for (int i = 0; i < ZkSnowflakeIdentifierStream.MAX_WORKERS; i++) {
+                if (i != free) {
+                    holder.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL)
+                            .forPath("/tinyurlWorkers/" + i);
+                }
+            }
+            ZkSnowflakeIdentifierStream firstStream = stream(first);
+            firstStream.init();
+            assertEquals(free, workerId(firstStream.next()));
+
+            ZkSnowflakeIdentifierStream secondStream = stream(second);
+            assertThrows(RuntimeException.class, secondStream::init);
+            assertFalse(secondStream.ready());
+
+            firstStream.close();
+            assertEquals(free, secondStream.leaseWorkerId());
+            secondStream.close();
+        }
+    }
+
+    @Test
+    public void shouldLeaseWorkerIdAgainAfterSessionLoss() throws Exception {
+        try (TestingServer zkServer = new TestingServer(true);
+             CuratorFramework client = client(zkServer)) {
+            ZkSnowflakeIdentifierStream stream = stream(client);
+            stream.init();
+            long lostSession = client.getZookeeperClient().getZooKeeper().getSessionId();
+
+            KillSession.kill(client.getZookeeperClient().getZooKeeper(), zkServer.getConnectString());
+            await(() -> stream.ready() && meterRegistry.get("identifierStream").tag("type", "snowflake")
+                    .tag("action", "lease").timer().count() == 2);
+            String workerPath = "/tinyurlWorkers/" + workerId(stream.next());
+            Stat stat = client.checkExists().forPath(workerPath);
+            assertNotEquals(lostSession, stat.getEphemeralOwner());
+            assertEquals(client.getZookeeperClient().getZooKeeper().getSessionId(), stat.getEphemeralOwner());
+            assertEquals(List.of(workerPath.substring("/tinyurlWorkers/".length())),
+                    client.getChildren().forPath("/tinyurlWorkers"));
+            stream.close();
+        }
+    }
+
+    private ZkSnowflakeIdentifierStream stream(CuratorFramework client) {
+        return new ZkSnowflakeIdentifierStream(client, Clock.systemUTC(), 10, meterRegistry);
+    }
+
+    private static CuratorFramework client(TestingServer zkServer) {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(zkServer.getConnectString(), 5000, 1000,
+                new RetryOneTime(100));
+        client.start();
+        return client;
+    }
+
+    private static long workerId(long identifier) {
+        return (identifier >>> ZkSnowflakeIdentifierStream.SEQUENCE_BITS)
+                & (ZkSnowflakeIdentifierStream.MAX_WORKERS - 1);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out");
+            }
+            Thread.sleep(10);
+        }
+    }
+}